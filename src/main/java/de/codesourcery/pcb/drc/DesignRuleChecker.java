@@ -0,0 +1,297 @@
+package de.codesourcery.pcb.drc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Model;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.PartInstance;
+import de.codesourcery.pcb.model.TransformedOutline;
+import de.codesourcery.pcb.utils.MathUtils;
+
+/**
+ * Checks a {@link Model} against design rules, using all available cores.
+ *
+ * A check runs in two phases:
+ * <ol>
+ * <li>Checks that only depend on a part (closed outline, ports inside the outline) are
+ * done once per distinct part, no matter how many instances of it are placed.</li>
+ * <li>Part instances are sorted by the left edge of their bounding box and the sorted range gets split
+ * across worker tasks. Each instance is only tested against instances further to the right
+ * whose bounding box (expanded by the clearance) overlaps its own.</li>
+ * </ol>
+ * Worker tasks collect violations in their own buffers and hand them to the listener in batches,
+ * so results arrive while the check is still running.
+ *
+ * The model must not be modified while a check is running.
+ */
+public class DesignRuleChecker
+{
+	// number of part instances below which a task no longer gets split
+	private static final int INSTANCES_PER_TASK = 64;
+
+	// number of parts below which a task no longer gets split
+	private static final int PARTS_PER_TASK = 8;
+
+	// number of violations a task collects before handing them to the listener
+	private static final int FLUSH_THRESHOLD = 256;
+
+	private final ForkJoinPool pool;
+
+	private float clearance;
+
+	public DesignRuleChecker() {
+		this( ForkJoinPool.commonPool() );
+	}
+
+	public DesignRuleChecker(ForkJoinPool pool)
+	{
+		Validate.notNull(pool, "pool must not be NULL");
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the minimum distance between the outlines of any two parts.
+	 *
+	 * @param clearance minimum distance, 0 only checks for overlapping parts
+	 */
+	public void setClearance(float clearance)
+	{
+		Validate.isTrue( clearance >= 0 , "clearance must not be negative");
+		this.clearance = clearance;
+	}
+
+	public float getClearance() {
+		return clearance;
+	}
+
+	/**
+	 * Checks a model.
+	 *
+	 * @param model
+	 * @param listener receives violations as they are found
+	 * @return total number of violations
+	 */
+	public int check(Model model,ViolationListener listener)
+	{
+		Validate.notNull(model, "model must not be NULL");
+		Validate.notNull(listener, "listener must not be NULL");
+
+		final Run run = new Run( model , listener );
+		pool.invoke( new PartCheckTask( run , 0 , run.parts.size() ) );
+		pool.invoke( new InstanceCheckTask( run , 0 , run.sorted.length ) );
+		return run.violationCount.get();
+	}
+
+	/**
+	 * State shared by all tasks of a single check.
+	 */
+	private final class Run
+	{
+		private final List<PartInstance> instances;
+		private final ViolationListener listener;
+		private final AtomicInteger violationCount = new AtomicInteger();
+
+		// distinct parts and their indices
+		private final List<Part> parts = new ArrayList<>();
+		private final Map<Part,Integer> partIndices = new IdentityHashMap<>();
+		private final int[] partIndex;
+		private final boolean[] outlineClosed;
+		private final boolean[] portsInside;
+
+		// indices of instances, sorted ascending by bounding box min x
+		private final int[] sorted;
+		private final float[] minX;
+		private final float[] minY;
+		private final float[] maxX;
+		private final float[] maxY;
+
+		public Run(Model model,ViolationListener listener)
+		{
+			this.listener = listener;
+			this.instances = model.getParts();
+
+			// calculate everything that gets lazily initialized up-front, tasks must only read from the model
+			model.updateTransforms();
+
+			final int len = instances.size();
+			partIndex = new int[ len ];
+			minX = new float[ len ];
+			minY = new float[ len ];
+			maxX = new float[ len ];
+			maxY = new float[ len ];
+			final long[] order = new long[ len ];
+			for ( int i = 0 ; i < len ; i++ )
+			{
+				final PartInstance instance = instances.get( i );
+				Integer idx = partIndices.get( instance.part );
+				if ( idx == null )
+				{
+					idx = parts.size();
+					parts.add( instance.part );
+					partIndices.put( instance.part , idx );
+					instance.part.outline.buildIndexes();
+				}
+				partIndex[i] = idx;
+
+				final TransformedOutline outline = instance.getOutline();
+				if ( outline.getLineCount() > 0 )
+				{
+					minX[i] = outline.getMinX();
+					minY[i] = outline.getMinY();
+					maxX[i] = outline.getMaxX();
+					maxY[i] = outline.getMaxY();
+				}
+				else
+				{
+					// empty outlines get sorted last and never overlap anything
+					minX[i] = minY[i] = Float.POSITIVE_INFINITY;
+					maxX[i] = maxY[i] = Float.NEGATIVE_INFINITY;
+				}
+				order[i] = ( (long) MathUtils.toSortableInt( minX[i] ) << 32 ) | i;
+			}
+			Arrays.sort( order );
+			sorted = new int[ len ];
+			for ( int i = 0 ; i < len ; i++ ) {
+				sorted[i] = (int) order[i];
+			}
+
+			outlineClosed = new boolean[ parts.size() ];
+			portsInside = new boolean[ parts.size() ];
+		}
+
+		public void report(List<Violation> violations)
+		{
+			if ( violations.isEmpty() ) {
+				return;
+			}
+			violationCount.addAndGet( violations.size() );
+			synchronized( listener )
+			{
+				for ( int i = 0 , len = violations.size() ; i < len ; i++ ) {
+					listener.violationFound( violations.get( i ) );
+				}
+			}
+			violations.clear();
+		}
+	}
+
+	/**
+	 * Runs checks that only depend on the part, once per distinct part.
+	 */
+	private final class PartCheckTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Run run;
+		private final int from;
+		private final int to;
+
+		public PartCheckTask(Run run,int from,int to)
+		{
+			this.run = run;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from > PARTS_PER_TASK )
+			{
+				final int mid = ( from + to ) >>> 1;
+				invokeAll( new PartCheckTask( run , from , mid ) , new PartCheckTask( run , mid , to ) );
+				return;
+			}
+			for ( int i = from ; i < to ; i++ )
+			{
+				final Part part = run.parts.get( i );
+				run.outlineClosed[i] = part.outline.isClosed();
+				run.portsInside[i] = part.allPortsWithinOutline();
+			}
+		}
+	}
+
+	/**
+	 * Checks a range of part instances (in sorted order).
+	 */
+	private final class InstanceCheckTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Run run;
+		private final int from;
+		private final int to;
+
+		public InstanceCheckTask(Run run,int from,int to)
+		{
+			this.run = run;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from > INSTANCES_PER_TASK )
+			{
+				final int mid = ( from + to ) >>> 1;
+				invokeAll( new InstanceCheckTask( run , from , mid ) , new InstanceCheckTask( run , mid , to ) );
+				return;
+			}
+
+			final List<Violation> buffer = new ArrayList<>();
+			final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+			final float distance = clearance;
+			final int[] sorted = run.sorted;
+			for ( int k = from ; k < to ; k++ )
+			{
+				final int i = sorted[k];
+				final PartInstance instance = run.instances.get( i );
+				final int part = run.partIndex[i];
+				if ( ! run.outlineClosed[ part ] ) {
+					buffer.add( new Violation( Violation.Type.OPEN_OUTLINE , instance ) );
+				}
+				if ( ! run.portsInside[ part ] ) {
+					buffer.add( new Violation( Violation.Type.PORT_OUTSIDE_OUTLINE , instance ) );
+				}
+
+				final TransformedOutline outline = instance.getOutline();
+				final int end = outline.getLineCount() > 0 ? sorted.length : k;
+				final float maxX = run.maxX[i] + distance;
+				final float minY = run.minY[i] - distance;
+				final float maxY = run.maxY[i] + distance;
+				for ( int l = k + 1 ; l < end ; l++ )
+				{
+					final int j = sorted[l];
+					if ( run.minX[j] > maxX ) {
+						break;
+					}
+					if ( run.maxY[j] < minY || run.minY[j] > maxY ) {
+						continue;
+					}
+					final PartInstance other = run.instances.get( j );
+					final TransformedOutline otherOutline = other.getOutline();
+					if ( outline.overlaps( otherOutline , scratch ) ) {
+						buffer.add( new Violation( Violation.Type.OVERLAP , instance , other ) );
+					}
+					else if ( distance > 0 && outline.isWithinDistance( otherOutline , distance , scratch ) ) {
+						buffer.add( new Violation( Violation.Type.CLEARANCE , instance , other ) );
+					}
+				}
+				if ( buffer.size() >= FLUSH_THRESHOLD ) {
+					run.report( buffer );
+				}
+			}
+			run.report( buffer );
+		}
+	}
+}
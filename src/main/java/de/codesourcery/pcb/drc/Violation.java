@@ -0,0 +1,68 @@
+package de.codesourcery.pcb.drc;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.PartInstance;
+
+/**
+ * A design rule violation.
+ */
+public final class Violation
+{
+	public static enum Type
+	{
+		/** Part outline is not closed. */
+		OPEN_OUTLINE,
+		/** Part has ports outside of its outline. */
+		PORT_OUTSIDE_OUTLINE,
+		/** Outlines of two parts overlap. */
+		OVERLAP,
+		/** Outlines of two parts are closer than the minimum clearance. */
+		CLEARANCE
+	}
+
+	private final Type type;
+	private final PartInstance first;
+	private final PartInstance second;
+
+	public Violation(Type type,PartInstance instance) {
+		this( type , instance , null );
+	}
+
+	public Violation(Type type,PartInstance first,PartInstance second)
+	{
+		Validate.notNull(type, "type must not be NULL");
+		Validate.notNull(first, "first must not be NULL");
+		this.type = type;
+		this.first = first;
+		this.second = second;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the part instance violating the rule.
+	 */
+	public PartInstance getFirst() {
+		return first;
+	}
+
+	/**
+	 * Returns the other part instance involved, <code>null</code> for
+	 * violations that only concern a single part.
+	 */
+	public PartInstance getSecond() {
+		return second;
+	}
+
+	@Override
+	public String toString()
+	{
+		if ( second == null ) {
+			return type + " @ " + first.position;
+		}
+		return type + " @ " + first.position + " <-> " + second.position;
+	}
+}
@@ -0,0 +1,12 @@
+package de.codesourcery.pcb.drc;
+
+/**
+ * Receives design rule violations while a check is still running.
+ *
+ * Gets invoked from worker threads but never concurrently.
+ */
+@FunctionalInterface
+public interface ViolationListener
+{
+	public void violationFound(Violation violation);
+}
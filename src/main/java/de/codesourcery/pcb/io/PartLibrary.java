@@ -0,0 +1,195 @@
+package de.codesourcery.pcb.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Part;
+
+/**
+ * A library of parts, backed by a file in the format described by {@link PcbFormat}.
+ *
+ * Opening a library only reads the part names. Parts themselves are read on first access
+ * and kept in a least-recently-used cache whose size is limited by the (estimated) memory
+ * used by the cached parts, so large libraries never need to be on the heap as a whole.
+ *
+ * Parts evicted from the cache are read again on their next access, callers that hold on to
+ * a part (for example because it is placed on a board) keep using their instance.
+ *
+ * This class is thread-safe.
+ */
+public final class PartLibrary implements AutoCloseable
+{
+	// rough per-object overhead of a part (ports, outline, indices)
+	private static final long PART_OVERHEAD = 512;
+	private static final long PORT_SIZE = 64;
+
+	private final PcbFile file;
+	private final long maxCacheSize;
+
+	private final List<String> names;
+	private final Map<String,Integer> indexByName = new HashMap<>();
+
+	// iteration order is least recently used first
+	private final LinkedHashMap<Integer,Part> cache = new LinkedHashMap<>( 16 , 0.75f , true );
+	private final Map<Integer,Long> cachedSizes = new HashMap<>();
+	private long cacheSize;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private PartLibrary(PcbFile file,long maxCacheSize) throws IOException
+	{
+		this.file = file;
+		this.maxCacheSize = maxCacheSize;
+
+		final List<String> tmp = new ArrayList<>( file.getPartCount() );
+		for ( int i = 0 , len = file.getPartCount() ; i < len ; i++ )
+		{
+			final String name = file.getPartName( i );
+			tmp.add( name );
+			if ( name != null && ! indexByName.containsKey( name ) ) {
+				indexByName.put( name , i );
+			}
+		}
+		this.names = Collections.unmodifiableList( tmp );
+	}
+
+	/**
+	 * Opens a library.
+	 *
+	 * @param file
+	 * @param maxCacheSize approximate number of bytes cached parts may occupy
+	 */
+	public static PartLibrary open(Path file,long maxCacheSize) throws IOException
+	{
+		Validate.isTrue( maxCacheSize > 0 , "maxCacheSize must be > 0");
+		final PcbFile pcbFile = PcbFile.open( file );
+		try {
+			return new PartLibrary( pcbFile , maxCacheSize );
+		}
+		catch(IOException | RuntimeException e)
+		{
+			pcbFile.close();
+			throw e;
+		}
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * Returns the names of all parts, in the order they are stored in the library.
+	 *
+	 * Parts without a name show up as <code>null</code>.
+	 */
+	public List<String> getPartNames() {
+		return names;
+	}
+
+	public boolean contains(String name) {
+		return indexByName.containsKey( name );
+	}
+
+	/**
+	 * Returns a part by name.
+	 *
+	 * @return part or <code>null</code> if the library contains no part with this name
+	 */
+	public Part getPart(String name) throws IOException
+	{
+		final Integer idx = indexByName.get( name );
+		return idx == null ? null : getPart( idx );
+	}
+
+	/**
+	 * Returns a part by its position in the library.
+	 */
+	public synchronized Part getPart(int partIdx) throws IOException
+	{
+		final Part cached = cache.get( partIdx );
+		if ( cached != null )
+		{
+			hits++;
+			return cached;
+		}
+		misses++;
+
+		final Part part = file.readPart( partIdx );
+		final long size = estimateSize( part );
+		cache.put( partIdx , part );
+		cachedSizes.put( partIdx , size );
+		cacheSize += size;
+
+		// evict least recently used parts, but always keep the one just loaded
+		final Iterator<Map.Entry<Integer,Part>> it = cache.entrySet().iterator();
+		while ( cacheSize > maxCacheSize && cache.size() > 1 )
+		{
+			final Integer eldest = it.next().getKey();
+			it.remove();
+			cacheSize -= cachedSizes.remove( eldest );
+			evictions++;
+		}
+		return part;
+	}
+
+	private static long estimateSize(Part part)
+	{
+		return PART_OVERHEAD +
+				12L * part.outline.getPointSlotCount() + // x, y, reference count
+				8L * part.outline.getLineCount() + // start, end
+				PORT_SIZE * part.getPortCount();
+	}
+
+	/**
+	 * Removes all parts from the cache.
+	 */
+	public synchronized void clearCache()
+	{
+		cache.clear();
+		cachedSizes.clear();
+		cacheSize = 0;
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	public synchronized int getCachedPartCount() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the estimated number of bytes used by cached parts.
+	 */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	public long getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,248 @@
+package de.codesourcery.pcb.io;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Model;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.PartInstance;
+import de.codesourcery.pcb.model.Port;
+
+/**
+ * A file in the format described by {@link PcbFormat}, mapped into memory.
+ *
+ * Opening a file only reads the header, parts are read on demand. Reading a part
+ * copies its vertex and segment tables in bulk straight from the mapped file.
+ *
+ * Reading is thread-safe.
+ */
+public final class PcbFile implements AutoCloseable
+{
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	private final int partCount;
+	private final int instanceCount;
+	private final int instanceTableOffset;
+
+	// parts that have been read already
+	private final Part[] parts;
+
+	private PcbFile(Path path,FileChannel channel,ByteBuffer buffer) throws IOException
+	{
+		this.path = path;
+		this.channel = channel;
+		this.buffer = buffer;
+
+		if ( buffer.limit() < PcbFormat.HEADER_SIZE || buffer.getInt( 0 ) != PcbFormat.MAGIC ) {
+			throw new IOException("Not a PCB file: "+path);
+		}
+		final int version = buffer.getInt( 4 );
+		if ( version != PcbFormat.VERSION ) {
+			throw new IOException("Unsupported file format version "+version+" in "+path);
+		}
+		partCount = buffer.getInt( 8 );
+		instanceCount = buffer.getInt( 12 );
+		final long tableEnd = PcbFormat.HEADER_SIZE + 8L * partCount + (long) PcbFormat.INSTANCE_SIZE * instanceCount;
+		if ( partCount < 0 || instanceCount < 0 || tableEnd > buffer.limit() ) {
+			throw new IOException("Corrupted file: "+path);
+		}
+		instanceTableOffset = PcbFormat.HEADER_SIZE + 8 * partCount;
+		parts = new Part[ partCount ];
+	}
+
+	/**
+	 * Opens a file for reading.
+	 *
+	 * @throws IOException if the file could not be read or is not a supported PCB file
+	 */
+	public static PcbFile open(Path file) throws IOException
+	{
+		Validate.notNull(file, "file must not be NULL");
+		final FileChannel channel = FileChannel.open( file , StandardOpenOption.READ );
+		try
+		{
+			final long size = channel.size();
+			if ( size > Integer.MAX_VALUE ) {
+				throw new IOException("File too large: "+file);
+			}
+			final ByteBuffer buffer = channel.map( MapMode.READ_ONLY , 0 , size ).order( PcbFormat.BYTE_ORDER );
+			return new PcbFile( file , channel , buffer );
+		}
+		catch(IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getPartCount() {
+		return partCount;
+	}
+
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	private int partOffset(int partIdx) throws IOException
+	{
+		Validate.isTrue( partIdx >= 0 && partIdx < partCount , "Part index out of range: "+partIdx);
+		final long offset = buffer.getLong( PcbFormat.HEADER_SIZE + 8 * partIdx );
+		if ( offset < 0 || offset >= buffer.limit() ) {
+			throw new IOException("Corrupted file: "+path);
+		}
+		return (int) offset;
+	}
+
+	/**
+	 * Returns a part's name without reading the part itself.
+	 */
+	public String getPartName(int partIdx) throws IOException
+	{
+		final int offset = partOffset( partIdx );
+		try {
+			return getString( view( offset ) );
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupted file: "+path,e);
+		}
+	}
+
+	/**
+	 * Returns a part, reading it on first access.
+	 *
+	 * Subsequent calls return the same instance.
+	 */
+	public Part getPart(int partIdx) throws IOException
+	{
+		Validate.isTrue( partIdx >= 0 && partIdx < partCount , "Part index out of range: "+partIdx);
+		synchronized( parts )
+		{
+			if ( parts[ partIdx ] == null ) {
+				parts[ partIdx ] = readPart( partIdx );
+			}
+			return parts[ partIdx ];
+		}
+	}
+
+	/**
+	 * Reads a part.
+	 *
+	 * Unlike {@link #getPart(int)}, this always returns a new instance.
+	 */
+	public Part readPart(int partIdx) throws IOException
+	{
+		final int offset = partOffset( partIdx );
+		try
+		{
+			final ByteBuffer in = view( offset );
+			final Part part = new Part();
+			part.setName( getString( in ) );
+			final float mergeTolerance = in.getFloat();
+			final int pointCount = in.getInt();
+			final int lineCount = in.getInt();
+			final int portCount = in.getInt();
+			if ( pointCount < 0 || lineCount < 0 || portCount < 0 || 
+				 8L * pointCount + 8L * lineCount + (long) PcbFormat.PORT_SIZE * portCount > in.remaining() ) 
+			{
+				throw new IOException("Corrupted file: "+path);
+			}
+
+			final float[] xs = new float[ pointCount ];
+			final float[] ys = new float[ pointCount ];
+			in.asFloatBuffer().get( xs );
+			in.position( in.position() + 4 * pointCount );
+			in.asFloatBuffer().get( ys );
+			in.position( in.position() + 4 * pointCount );
+
+			final int[] startPoints = new int[ lineCount ];
+			final int[] endPoints = new int[ lineCount ];
+			in.asIntBuffer().get( startPoints );
+			in.position( in.position() + 4 * lineCount );
+			in.asIntBuffer().get( endPoints );
+			in.position( in.position() + 4 * lineCount );
+
+			part.outline.setMergeTolerance( mergeTolerance );
+			part.outline.load( xs , ys , pointCount , startPoints , endPoints , lineCount );
+
+			for ( int i = 0 ; i < portCount ; i++ )
+			{
+				final Port port = new Port();
+				port.center.set( in.getFloat() , in.getFloat() );
+				port.bitWidth = in.getInt();
+				port.label = getString( in );
+				part.addPort( port );
+			}
+			return part;
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupted file: "+path,e);
+		}
+		catch(IllegalArgumentException e) {
+			throw new IOException("Corrupted file: "+path+" ("+e.getMessage()+")",e);
+		}
+	}
+
+	/**
+	 * Reads the board stored in this file.
+	 *
+	 * Parts are shared with {@link #getPart(int)}.
+	 */
+	public Model readModel() throws IOException
+	{
+		final Model model = new Model();
+		final ByteBuffer in = view( instanceTableOffset );
+		for ( int i = 0 ; i < instanceCount ; i++ )
+		{
+			final int partIdx = in.getInt();
+			if ( partIdx < 0 || partIdx >= partCount ) {
+				throw new IOException("Corrupted file: "+path);
+			}
+			final PartInstance instance = new PartInstance();
+			instance.part = getPart( partIdx );
+			instance.position.set( in.getFloat() , in.getFloat() );
+			instance.setRotation( in.getFloat() );
+			model.getParts().add( instance );
+		}
+		return model;
+	}
+
+	// independent view of the mapped file, so concurrent reads do not interfere
+	private ByteBuffer view(int offset)
+	{
+		final ByteBuffer result = buffer.duplicate().order( PcbFormat.BYTE_ORDER );
+		result.position( offset );
+		return result;
+	}
+
+	private static String getString(ByteBuffer in)
+	{
+		final int len = in.getInt();
+		if ( len < 0 ) {
+			return null;
+		}
+		if ( len > in.remaining() ) {
+			throw new BufferUnderflowException();
+		}
+		final byte[] bytes = new byte[ len ];
+		in.get( bytes );
+		return new String( bytes , PcbFormat.CHARSET );
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,73 @@
+package de.codesourcery.pcb.io;
+
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants of the binary file format for parts and boards.
+ *
+ * The layout mirrors the in-memory layout of outlines (separate coordinate arrays plus
+ * arrays of point indices per line) so that loading a part boils down to a few bulk copies.
+ * Part records can be located through an offset table in the header without reading
+ * any other records, so parts can be loaded individually and on demand.
+ *
+ * <pre>
+ * header
+ *   int     magic ('PCBF')
+ *   int     format version
+ *   int     part count
+ *   int     part instance count
+ *   long[]  offset of each part record from the start of the file
+ * part instances
+ *   int     index of part
+ *   float   x position
+ *   float   y position
+ *   float   rotation (degrees)
+ * part records
+ *   string  name
+ *   float   merge tolerance
+ *   int     point count
+ *   int     line count
+ *   int     port count
+ *   float[] x coordinates of points (vertex table)
+ *   float[] y coordinates of points
+ *   int[]   start point index of each line (segment table)
+ *   int[]   end point index of each line
+ *   ports   float x, float y, int bit width, string label
+ *
+ * string: int length in bytes (-1 for NULL) followed by UTF-8 bytes
+ * </pre>
+ *
+ * All values are little-endian. Part libraries are files without part instances.
+ */
+public final class PcbFormat
+{
+	public static final int MAGIC = 'P' << 24 | 'C' << 16 | 'B' << 8 | 'F';
+
+	public static final int VERSION = 1;
+
+	public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	// magic, version, part count, instance count
+	static final int HEADER_SIZE = 4 * 4;
+
+	// part index, x, y, rotation
+	static final int INSTANCE_SIZE = 4 * 4;
+
+	// x, y, bit width
+	static final int PORT_SIZE = 3 * 4;
+
+	private PcbFormat() {
+	}
+
+	static int stringSize(byte[] bytes) {
+		return 4 + ( bytes == null ? 0 : bytes.length );
+	}
+
+	static byte[] encode(String s) {
+		return s == null ? null : s.getBytes( CHARSET );
+	}
+}
@@ -0,0 +1,198 @@
+package de.codesourcery.pcb.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Model;
+import de.codesourcery.pcb.model.Outline;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.PartInstance;
+import de.codesourcery.pcb.model.Port;
+
+/**
+ * Writes parts and boards in the format described by {@link PcbFormat}.
+ */
+public final class PcbWriter
+{
+	private PcbWriter() {
+	}
+
+	/**
+	 * Writes a board, including all parts used by it.
+	 */
+	public static void write(Model model,Path file) throws IOException
+	{
+		Validate.notNull(model, "model must not be NULL");
+
+		final List<Part> parts = new ArrayList<>();
+		final Map<Part,Integer> partIndices = new IdentityHashMap<>();
+		for ( PartInstance instance : model.getParts() )
+		{
+			if ( ! partIndices.containsKey( instance.part ) )
+			{
+				partIndices.put( instance.part , parts.size() );
+				parts.add( instance.part );
+			}
+		}
+		write( parts , model.getParts() , partIndices , file );
+	}
+
+	/**
+	 * Writes a part library.
+	 */
+	public static void write(List<Part> parts,Path file) throws IOException
+	{
+		Validate.notNull(parts, "parts must not be NULL");
+		write( parts , Collections.emptyList() , Collections.emptyMap() , file );
+	}
+
+	private static void write(List<Part> parts,List<PartInstance> instances,Map<Part,Integer> partIndices,Path file) throws IOException
+	{
+		Validate.notNull(file, "file must not be NULL");
+
+		// calculate layout
+		final PartLayout[] layouts = new PartLayout[ parts.size() ];
+		long size = PcbFormat.HEADER_SIZE + 8L * parts.size() + (long) PcbFormat.INSTANCE_SIZE * instances.size();
+		for ( int i = 0 ; i < layouts.length ; i++ )
+		{
+			layouts[i] = new PartLayout( parts.get( i ) , size );
+			size += layouts[i].size;
+		}
+		if ( size > Integer.MAX_VALUE ) {
+			throw new IOException("File too large: "+size+" bytes");
+		}
+
+		try ( FileChannel channel = FileChannel.open( file , StandardOpenOption.CREATE , StandardOpenOption.TRUNCATE_EXISTING ,
+				StandardOpenOption.READ , StandardOpenOption.WRITE ) )
+		{
+			final MappedByteBuffer buffer = channel.map( MapMode.READ_WRITE , 0 , size );
+			buffer.order( PcbFormat.BYTE_ORDER );
+
+			buffer.putInt( PcbFormat.MAGIC );
+			buffer.putInt( PcbFormat.VERSION );
+			buffer.putInt( parts.size() );
+			buffer.putInt( instances.size() );
+			for ( PartLayout layout : layouts ) {
+				buffer.putLong( layout.offset );
+			}
+			for ( PartInstance instance : instances )
+			{
+				buffer.putInt( partIndices.get( instance.part ) );
+				buffer.putFloat( instance.position.x );
+				buffer.putFloat( instance.position.y );
+				buffer.putFloat( instance.rotation );
+			}
+			for ( PartLayout layout : layouts ) {
+				layout.write( buffer );
+			}
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Size and contents of a part record.
+	 */
+	private static final class PartLayout
+	{
+		private final Part part;
+		private final long offset;
+		private final long size;
+
+		private final byte[] name;
+		private final List<Port> ports = new ArrayList<>();
+		private final List<byte[]> labels = new ArrayList<>();
+
+		// maps point slots to point indices in the file, skipping deleted points
+		private final int[] remap;
+		private final int pointCount;
+
+		public PartLayout(Part part,long offset)
+		{
+			this.part = part;
+			this.offset = offset;
+			this.name = PcbFormat.encode( part.getName() );
+
+			final Outline outline = part.outline;
+			remap = new int[ outline.getPointSlotCount() ];
+			int count = 0;
+			for ( int i = 0 ; i < remap.length ; i++ ) {
+				remap[i] = outline.isDeleted( i ) ? -1 : count++;
+			}
+			pointCount = count;
+
+			part.visitPorts( port ->
+			{
+				ports.add( port );
+				labels.add( PcbFormat.encode( port.label ) );
+			});
+
+			long s = PcbFormat.stringSize( name ) + 4 + 4 + 4 + 4; // name, merge tolerance, counts
+			s += 8L * pointCount + 8L * outline.getLineCount();
+			for ( byte[] label : labels ) {
+				s += PcbFormat.PORT_SIZE + PcbFormat.stringSize( label );
+			}
+			this.size = s;
+		}
+
+		public void write(ByteBuffer buffer)
+		{
+			final Outline outline = part.outline;
+			final int lineCount = outline.getLineCount();
+
+			putString( buffer , name );
+			buffer.putFloat( outline.getMergeTolerance() );
+			buffer.putInt( pointCount );
+			buffer.putInt( lineCount );
+			buffer.putInt( ports.size() );
+
+			for ( int i = 0 ; i < remap.length ; i++ )
+			{
+				if ( remap[i] != -1 ) {
+					buffer.putFloat( outline.x( i ) );
+				}
+			}
+			for ( int i = 0 ; i < remap.length ; i++ )
+			{
+				if ( remap[i] != -1 ) {
+					buffer.putFloat( outline.y( i ) );
+				}
+			}
+			for ( int i = 0 ; i < lineCount ; i++ ) {
+				buffer.putInt( remap[ outline.startIndex( i ) ] );
+			}
+			for ( int i = 0 ; i < lineCount ; i++ ) {
+				buffer.putInt( remap[ outline.endIndex( i ) ] );
+			}
+			for ( int i = 0 ; i < ports.size() ; i++ )
+			{
+				final Port port = ports.get( i );
+				buffer.putFloat( port.center.x );
+				buffer.putFloat( port.center.y );
+				buffer.putInt( port.bitWidth );
+				putString( buffer , labels.get( i ) );
+			}
+		}
+
+		private static void putString(ByteBuffer buffer,byte[] bytes)
+		{
+			if ( bytes == null ) {
+				buffer.putInt( -1 );
+			} else {
+				buffer.putInt( bytes.length );
+				buffer.put( bytes );
+			}
+		}
+	}
+}
@@ -0,0 +1,373 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Acceleration structure for point-in-polygon tests.
+ *
+ * Splits the vertical extent of all lines into horizontal slabs and stores a copy
+ * of each (non-horizontal) line's coordinates in every slab the line overlaps.
+ * A containment query then only has to cast its ray against the lines
+ * in the slab the query point falls into.
+ *
+ * To keep tall lines from being copied into hundreds of slabs, slabs are organized in levels:
+ * each level merges pairs of slabs of the level below and every line is stored in the 
+ * finest level where it overlaps only a few slabs. Queries check one slab per level. 
+ *
+ * Instances are immutable snapshots, they need to be rebuilt whenever the geometry changes.
+ */
+final class ContainmentIndex
+{
+	private static final int MAX_SLABS = 4096;
+
+	// maximum number of slabs a line gets copied into
+	private static final int MAX_SLABS_PER_LINE = 4;
+
+	private final float minY;
+	private final float maxY;
+	private final float invSlabHeight;
+	private final int slabCount;
+
+	// number of levels holding lines, slab s of the finest level (0) lies within slab (s >> l) of level l
+	private final int levelCount;
+	// index of the first slab of each level in slabStart
+	private final int[] levelStart;
+
+	// slab i (counted across all levels) holds edges slabStart[i] (inclusive) to slabStart[i+1] (exclusive)
+	private final int[] slabStart;
+	private final float[] x0;
+	private final float[] y0;
+	private final float[] x1;
+	private final float[] y1;
+
+	public ContainmentIndex(float[] xs,float[] ys,int[] startPoints,int[] endPoints,int lineCount)
+	{
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		int edgeCount = 0;
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			final float ya = ys[ startPoints[i] ];
+			final float yb = ys[ endPoints[i] ];
+			if ( ya != yb ) // horizontal lines never cross a horizontal ray
+			{
+				min = Math.min( min , Math.min( ya , yb ) );
+				max = Math.max( max , Math.max( ya , yb ) );
+				edgeCount++;
+			}
+		}
+
+		if ( edgeCount == 0 )
+		{
+			minY = maxY = invSlabHeight = 0;
+			slabCount = levelCount = 0;
+			levelStart = new int[0];
+			slabStart = new int[1];
+			x0 = y0 = x1 = y1 = new float[0];
+			return;
+		}
+
+		this.minY = min;
+		this.maxY = max;
+		this.slabCount = Math.max( 1 , Math.min( MAX_SLABS , (int) Math.sqrt( edgeCount ) * 2 ) );
+		this.invSlabHeight = slabCount / ( max - min );
+
+		int levels = 1;
+		while ( ( ( slabCount - 1 ) >> ( levels - 1 ) ) > 0 ) {
+			levels++;
+		}
+		levelStart = new int[ levels ];
+		int totalSlabs = 0;
+		for ( int l = 0 ; l < levels ; l++ )
+		{
+			levelStart[l] = totalSlabs;
+			totalSlabs += ( ( slabCount - 1 ) >> l ) + 1;
+		}
+
+		// pass 1: count edges per slab
+		slabStart = new int[ totalSlabs + 1 ];
+		int usedLevels = 0;
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			final float ya = ys[ startPoints[i] ];
+			final float yb = ys[ endPoints[i] ];
+			if ( ya != yb )
+			{
+				final int first = slab( Math.min( ya , yb ) );
+				final int last = slab( Math.max( ya , yb ) );
+				final int l = level( first , last );
+				for ( int s = first >> l ; s <= last >> l ; s++ ) {
+					slabStart[ levelStart[l] + s + 1 ]++;
+				}
+				usedLevels = Math.max( usedLevels , l + 1 );
+			}
+		}
+		this.levelCount = usedLevels;
+		for ( int s = 0 ; s < totalSlabs ; s++ ) {
+			slabStart[ s + 1 ] += slabStart[ s ];
+		}
+
+		// pass 2: copy coordinates
+		final int total = slabStart[ totalSlabs ];
+		x0 = new float[ total ];
+		y0 = new float[ total ];
+		x1 = new float[ total ];
+		y1 = new float[ total ];
+		final int[] fill = new int[ totalSlabs ];
+		System.arraycopy( slabStart , 0 , fill , 0 , totalSlabs );
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			final float ya = ys[ startPoints[i] ];
+			final float yb = ys[ endPoints[i] ];
+			if ( ya != yb )
+			{
+				final float xa = xs[ startPoints[i] ];
+				final float xb = xs[ endPoints[i] ];
+				final int first = slab( Math.min( ya , yb ) );
+				final int last = slab( Math.max( ya , yb ) );
+				final int l = level( first , last );
+				for ( int s = first >> l ; s <= last >> l ; s++ )
+				{
+					final int idx = fill[ levelStart[l] + s ]++;
+					x0[idx] = xa;
+					y0[idx] = ya;
+					x1[idx] = xb;
+					y1[idx] = yb;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the finest level where a line overlapping the given range of slabs 
+	 * covers at most {@link #MAX_SLABS_PER_LINE} slabs.
+	 */
+	private static int level(int firstSlab,int lastSlab)
+	{
+		int l = 0;
+		while ( ( lastSlab >> l ) - ( firstSlab >> l ) >= MAX_SLABS_PER_LINE ) {
+			l++;
+		}
+		return l;
+	}
+
+	private int slab(float y)
+	{
+		final int s = (int) ( ( y - minY ) * invSlabHeight );
+		return s < 0 ? 0 : s >= slabCount ? slabCount - 1 : s;
+	}
+
+	/**
+	 * Returns the number of stored line copies.
+	 */
+	int size() {
+		return x0.length;
+	}
+
+	/**
+	 * Checks whether a point is inside, using the even-odd rule.
+	 */
+	public boolean contains(float px,float py)
+	{
+		if ( slabCount == 0 || py < minY || py > maxY ) {
+			return false;
+		}
+		return ( crossings( px , py , slab( py ) ) & 1 ) != 0;
+	}
+
+	/**
+	 * Counts the crossings of a ray cast from the given point towards positive infinity
+	 * with the edges of all slabs containing the given slab of the finest level.
+	 */
+	private int crossings(float px,float py,int slab)
+	{
+		int count = 0;
+		for ( int l = 0 ; l < levelCount ; l++ )
+		{
+			final int s = levelStart[l] + ( slab >> l );
+			count += crossings( px , py , slabStart[s] , slabStart[s+1] );
+		}
+		return count;
+	}
+
+	/**
+	 * Checks a batch of points, using the even-odd rule.
+	 * 
+	 * Points are grouped by slab first so that each slab's edges only need to be 
+	 * scanned once for all points falling into it.
+	 * 
+	 * @param px x coordinates
+	 * @param py y coordinates
+	 * @param count number of points to check
+	 * @param result receives <code>true</code> for every point that is inside
+	 * @param parallel whether to distribute slabs across multiple threads
+	 */
+	public void contains(float[] px,float[] py,int count,boolean[] result,boolean parallel)
+	{
+		if ( slabCount == 0 ) 
+		{
+			Arrays.fill( result , 0 , count , false );
+			return;
+		}
+		
+		final int[] bucketStart = new int[ slabCount + 1 ];
+		final int[] order = sortBySlab( px , py , count , bucketStart , result );
+		if ( parallel ) 
+		{
+			IntStream.range( 0 , slabCount ).parallel().forEach( s -> 
+				contains( s , px , py , bucketStart , order , result ) 
+			);
+		} 
+		else 
+		{
+			for ( int s = 0 ; s < slabCount ; s++ ) {
+				contains( s , px , py , bucketStart , order , result );
+			}
+		}
+	}
+	
+	private void contains(int slab,float[] px,float[] py,int[] bucketStart,int[] order,boolean[] result) 
+	{
+		for ( int j = bucketStart[slab] , end = bucketStart[slab+1] ; j < end ; j++ ) 
+		{
+			final int i = order[j];
+			result[i] = ( crossings( px[i] , py[i] , slab ) & 1 ) != 0;
+		}
+	}
+	
+	/**
+	 * Checks whether all points of a batch are inside.
+	 * 
+	 * @param px x coordinates
+	 * @param py y coordinates
+	 * @param count number of points to check
+	 * @param parallel whether to distribute slabs across multiple threads
+	 * @see #contains(float[], float[], int, boolean[], boolean)
+	 */
+	public boolean containsAll(float[] px,float[] py,int count,boolean parallel) 
+	{
+		if ( count == 0 ) {
+			return true;
+		}
+		if ( slabCount == 0 ) {
+			return false;
+		}
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			if ( py[i] < minY || py[i] > maxY ) {
+				return false;
+			}
+		}
+		
+		final int[] bucketStart = new int[ slabCount + 1 ];
+		final int[] order = sortBySlab( px , py , count , bucketStart , null );
+		if ( parallel ) 
+		{
+			return IntStream.range( 0 , slabCount ).parallel().allMatch( s -> 
+				containsAll( s , px , py , bucketStart , order ) 
+			);
+		} 
+		for ( int s = 0 ; s < slabCount ; s++ ) 
+		{
+			if ( ! containsAll( s , px , py , bucketStart , order ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean containsAll(int slab,float[] px,float[] py,int[] bucketStart,int[] order) 
+	{
+		for ( int j = bucketStart[slab] , end = bucketStart[slab+1] ; j < end ; j++ ) 
+		{
+			final int i = order[j];
+			if ( ( crossings( px[i] , py[i] , slab ) & 1 ) == 0 ) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Counting sort of point indices by slab.
+	 * 
+	 * Points outside of the vertical extent are not assigned to any slab but get 
+	 * flagged as being outside right away.
+	 * 
+	 * @param bucketStart receives the range of points for each slab, points of slab i are 
+	 * found at bucketStart[i] (inclusive) to bucketStart[i+1] (exclusive) in the returned array 
+	 * @return point indices ordered by slab
+	 */
+	private int[] sortBySlab(float[] px,float[] py,int count,int[] bucketStart,boolean[] result) 
+	{
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			final float y = py[i];
+			if ( y < minY || y > maxY ) 
+			{
+				if ( result != null ) {
+					result[i] = false;
+				}
+			} 
+			else 
+			{
+				final int s = slab( y );
+				if ( s + 1 < slabCount ) {
+					bucketStart[ s + 1 ]++;
+				}
+			}
+		}
+		for ( int s = 1 ; s < slabCount ; s++ ) {
+			bucketStart[s] += bucketStart[s-1];
+		}
+		final int[] fill = Arrays.copyOf( bucketStart , slabCount );
+		final int[] order = new int[ count ];
+		int inRange = 0;
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			final float y = py[i];
+			if ( y >= minY && y <= maxY ) {
+				order[ fill[ slab( y ) ]++ ] = i;
+				inRange++;
+			}
+		}
+		bucketStart[ slabCount ] = inRange;
+		return order;
+	}
+	
+	/**
+	 * Counts the crossings of a ray cast from the given point towards positive infinity
+	 * with the edges in a given range.
+	 *
+	 * Edges are treated as half-open in y, so a ray passing exactly through a shared vertex
+	 * is counted only once.
+	 */
+	private int crossings(float px,float py,int from,int to)
+	{
+		int count = 0;
+		for ( int i = from ; i < to ; i++ )
+		{
+			if ( crosses( px , py , x0[i] , y0[i] , x1[i] , y1[i] ) ) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Checks whether a ray cast from a point towards positive infinity crosses a line.
+	 * 
+	 * Lines are treated as half-open in y, so a ray passing exactly through a shared vertex
+	 * crosses only one of the two lines.
+	 */
+	static boolean crosses(float px,float py,float xa,float ya,float xb,float yb) 
+	{
+		if ( ( ya > py ) != ( yb > py ) )
+		{
+			final float x = xa + ( py - ya ) * ( xb - xa ) / ( yb - ya );
+			return px < x;
+		}
+		return false;
+	}
+}
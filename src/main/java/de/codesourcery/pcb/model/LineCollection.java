@@ -1,5 +1,7 @@
 package de.codesourcery.pcb.model;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -8,156 +10,1489 @@ import org.apache.commons.lang3.Validate;
 import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Vector2;
 
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.LongIntHashMap;
 import de.codesourcery.pcb.utils.MathUtils;
+import de.codesourcery.pcb.utils.SpatialGrid;
 
 public class LineCollection 
 {
+	private static final boolean DEBUG = false;
+	
 	private int[] startPoints=new int[10];
 	private int[] endPoints=new int[10];
-	private Vector2[] points = new Vector2[100];
 	
+	// point coordinates, stored as primitives to keep memory usage low
+	// and make scanning all points cache-friendly
+	private float[] xs = new float[100];
+	private float[] ys = new float[100];
+	
+	// number of lines using each point, FREE for deleted points 
+	private int[] refCounts = new int[100];
+	private static final int FREE = -1;
+	
+	// deleted point slots available for re-use
+	private final IntList freePoints = new IntList();
+	
+	// number of point slots in use, including deleted ones
 	private int pointCount;
 	private int lineCount;
 	
-	public interface LineVisitor<T>
+	// spatial index used by proximity queries, (re-)built lazily
+	private static final float INDEX_CELL_SIZE = 16;
+	
+	private final SpatialGrid pointIndex = new SpatialGrid( INDEX_CELL_SIZE );
+	private final SpatialGrid lineIndex = new SpatialGrid( INDEX_CELL_SIZE );
+	private boolean indexValid;
+	
+	private final IntList candidates = new IntList();
+	private final IntList touchedLines = new IntList();
+	
+	// line coordinates as start point and direction, for scanning all lines without 
+	// looking up their points, (re-)built lazily
+	private float[] lineX0 = new float[0];
+	private float[] lineY0 = new float[0];
+	private float[] lineDX = new float[0];
+	private float[] lineDY = new float[0];
+	// 1 / squared length, 0 for lines of length 0
+	private float[] lineInvLength2 = new float[0];
+	private boolean lineCoordsValid;
+	private int lineCoordsModCount;
+	
+	// squared distances calculated by a scan
+	private float[] distances = new float[0];
+	
+	// hash lookups for merging points with (almost) the same coordinates 
+	// and detecting duplicate lines, (re-)built lazily
+	private final LongIntHashMap pointLookup = new LongIntHashMap();
+	private final LongIntHashMap lineLookup = new LongIntHashMap();
+	private boolean lookupValid;
+	
+	// points closer than this get merged, 0 means only points with identical coordinates
+	private float mergeTolerance;
+	
+	// incremented on every change
+	private int modCount;
+	
+	// point degrees and connected groups of lines, rebuilt lazily after restore()
+	private final OutlineTopology topology = new OutlineTopology();
+	private boolean topologyValid = true;
+	
+	// acceleration structure for isPointInside(), (re-)built lazily
+	private ContainmentIndex containmentIndex;
+	private int containmentIndexModCount;
+	
+	// batches of points at least this large are checked using multiple threads
+	private static final int PARALLEL_BATCH_SIZE = 8192;
+	
+	// snapshots store data in chunks of this size, sharing unchanged chunks with the previous snapshot
+	private static final int SNAPSHOT_CHUNK_BITS = 8;
+	private static final int SNAPSHOT_CHUNK_SIZE = 1 << SNAPSHOT_CHUNK_BITS;
+	
+	private Snapshot lastSnapshot;
+	private int lastSnapshotModCount;
+	
+	// number of nested beginBatch() calls
+	private int batchDepth;
+	// number of lines added or removed in the current batch
+	private int batchEdits;
+	
+	// chunks changed since the last snapshot, only tracked while there is one
+	private final BitSet changedPointChunks = new BitSet();
+	private final BitSet changedLineChunks = new BitSet();
+	
+	/**
+	 * Immutable copy of a collection's state.
+	 * 
+	 * @see LineCollection#snapshot()
+	 * @see LineCollection#restore(Snapshot)
+	 */
+	public static final class Snapshot 
+	{
+		private final float[][] xs;
+		private final float[][] ys;
+		private final int[][] refCounts;
+		private final int[][] startPoints;
+		private final int[][] endPoints;
+		private final int pointCount;
+		private final int lineCount;
+		private final int[] freePoints;
+		private final float mergeTolerance;
+		
+		private Snapshot(float[][] xs,float[][] ys,int[][] refCounts,int[][] startPoints,int[][] endPoints,
+				int pointCount,int lineCount,int[] freePoints,float mergeTolerance) 
+		{
+			this.xs = xs;
+			this.ys = ys;
+			this.refCounts = refCounts;
+			this.startPoints = startPoints;
+			this.endPoints = endPoints;
+			this.pointCount = pointCount;
+			this.lineCount = lineCount;
+			this.freePoints = freePoints;
+			this.mergeTolerance = mergeTolerance;
+		}
+		
+		public int getLineCount() {
+			return lineCount;
+		}
+		
+		public int getPointCount() {
+			return pointCount - freePoints.length;
+		}
+	}
+	
+	public interface LineVisitor<T>
+	{
+		public boolean visit(Line line);
+		
+		public T getResult();
+	}
+	
+	public int addPoint(Vector2 p) 
+	{
+		return addPoint( p.x , p.y );
+	}
+	
+	public int addPoint(float x,float y) 
+	{
+		final int pointIdx;
+		if ( ! freePoints.isEmpty() ) {
+			pointIdx = freePoints.removeLast();
+		} 
+		else 
+		{
+			if ( pointCount == xs.length ) 
+			{
+				xs = copyAndResize( xs );
+				ys = copyAndResize( ys );
+				refCounts = copyAndResize( refCounts );
+			}
+			pointIdx = pointCount++;
+		}
+		xs[ pointIdx ] = x;
+		ys[ pointIdx ] = y;
+		refCounts[ pointIdx ] = 0;
+		pointChanged( pointIdx );
+		topology.ensureCapacity( pointIdx+1 );
+		modCount++;
+		if ( lookupValid ) {
+			pointLookup.putIfAbsent( pointKey( x , y ) , pointIdx );
+		}
+		if ( indexValid ) {
+			pointIndex.add( pointIdx , x , y );
+		}
+		return pointIdx;
+	}
+	
+	private void freePoint(int pointIdx) 
+	{
+		final float x = xs[ pointIdx ];
+		final float y = ys[ pointIdx ];
+		if ( lookupValid ) 
+		{
+			final long key = pointKey( x , y );
+			if ( pointLookup.get( key ) == pointIdx ) {
+				pointLookup.remove( key );
+			}
+		}
+		if ( indexValid ) {
+			pointIndex.remove( pointIdx , x , y );
+		}
+		refCounts[ pointIdx ] = FREE;
+		pointChanged( pointIdx );
+		freePoints.add( pointIdx );
+		modCount++;
+	}
+	
+	private void releasePoint(int pointIdx) 
+	{
+		final int degree = refCounts[ pointIdx ]--;
+		pointChanged( pointIdx );
+		if ( topologyValid ) {
+			topology.degreeChanged( pointIdx , degree , degree-1 );
+		}
+		if ( degree == 1 ) {
+			freePoint( pointIdx );
+		}
+	}
+	
+	private void retainPoint(int pointIdx) 
+	{
+		final int degree = refCounts[ pointIdx ]++;
+		pointChanged( pointIdx );
+		if ( topologyValid ) {
+			topology.degreeChanged( pointIdx , degree , degree+1 );
+		}
+	}
+	
+	private void pointChanged(int pointIdx) 
+	{
+		if ( lastSnapshot != null ) {
+			changedPointChunks.set( pointIdx >>> SNAPSHOT_CHUNK_BITS );
+		}
+	}
+	
+	private void lineChanged(int lineIdx) 
+	{
+		if ( lastSnapshot != null ) {
+			changedLineChunks.set( lineIdx >>> SNAPSHOT_CHUNK_BITS );
+		}
+	}
+	
+	private void allChanged() {
+		lastSnapshot = null;
+	}
+	
+	/**
+	 * Sets the distance below which points are considered to be the same.
+	 * 
+	 * Coordinates are quantized to a grid of this size, so only points
+	 * within the same grid cell get merged. 
+	 * 
+	 * @param tolerance tolerance, 0 to only merge points with identical coordinates 
+	 */
+	public void setMergeTolerance(float tolerance) 
+	{
+		if ( tolerance < 0 ) {
+			throw new IllegalArgumentException("Tolerance must be >= 0, was: "+tolerance);
+		}
+		this.mergeTolerance = tolerance;
+		lookupValid = false;
+	}
+	
+	public float getMergeTolerance() {
+		return mergeTolerance;
+	}
+	
+	private long pointKey(float x,float y) 
+	{
+		if ( mergeTolerance > 0 ) {
+			return key( Math.round( x / mergeTolerance ) , Math.round( y / mergeTolerance ) ); 
+		}
+		// adding 0 turns -0.0f into 0.0f
+		return key( Float.floatToIntBits( x + 0.0f ) , Float.floatToIntBits( y + 0.0f ) );
+	}
+	
+	private static long key(int a,int b) {
+		return ((long) a << 32) | ( b & 0xffffffffL );
+	}
+	
+	private void ensureLookup() 
+	{
+		if ( lookupValid ) {
+			return;
+		}
+		pointLookup.clear();
+		lineLookup.clear();
+		for ( int i = 0 ; i < pointCount ; i++ ) 
+		{
+			if ( refCounts[i] != FREE ) {
+				pointLookup.putIfAbsent( pointKey( xs[i] , ys[i] ) , i );
+			}
+		}
+		for ( int i = 0 ; i < lineCount ; i++ ) {
+			lineLookup.putIfAbsent( key( startPoints[i] , endPoints[i] ) , i );
+		}
+		lookupValid = true;
+	}
+	
+	private void ensureIndex() 
+	{
+		if ( indexValid ) {
+			return;
+		}
+		pointIndex.clear();
+		lineIndex.clear();
+		for ( int i = 0 ; i < pointCount ; i++ ) 
+		{
+			if ( refCounts[i] != FREE ) {
+				pointIndex.add( i , xs[i] , ys[i] );
+			}
+		}
+		for ( int i = 0 ; i < lineCount ; i++ ) {
+			addToIndex( i );
+		}
+		indexValid = true;
+	}
+	
+	private OutlineTopology ensureTopology() 
+	{
+		if ( ! topologyValid ) 
+		{
+			topology.rebuild( pointCount , startPoints , endPoints , lineCount );
+			topologyValid = true;
+		}
+		return topology;
+	}
+	
+	private void addToIndex(int lineIdx) 
+	{
+		final int start = startPoints[lineIdx];
+		final int end = endPoints[lineIdx];
+		lineIndex.add( lineIdx , xs[start] , ys[start] , xs[end] , ys[end] );
+	}
+	
+	private void removeFromIndex(int lineIdx) 
+	{
+		final int start = startPoints[lineIdx];
+		final int end = endPoints[lineIdx];
+		lineIndex.remove( lineIdx , xs[start] , ys[start] , xs[end] , ys[end] );
+	}
+	
+	/**
+	 * Returns the point closest to a given location.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param radius only points with a distance less than this are considered
+	 * @param ignoredPoint index of a point to skip, -1 if none 
+	 * @return point index or -1 if no point is within the radius
+	 * @see #distanceToPoint(int, float, float)
+	 */
+	public int findNearestPoint(float x,float y,float radius,int ignoredPoint) 
+	{
+		ensureIndex();
+		if ( pointIndex.getCellCount( x - radius , y - radius , x + radius , y + radius ) >= pointCount ) 
+		{
+			// circle covers more cells than there are points
+			final float[] d = distances( pointCount );
+			distancesToPoints( x , y , xs , ys , pointCount , d );
+			for ( int i = 0 , len = freePoints.size() ; i < len ; i++ ) {
+				d[ freePoints.get( i ) ] = Float.POSITIVE_INFINITY;
+			}
+			if ( ignoredPoint != -1 ) {
+				d[ ignoredPoint ] = Float.POSITIVE_INFINITY;
+			}
+			return indexOfMinimum( d , pointCount , radius*radius );
+		}
+		
+		candidates.clear();
+		pointIndex.query( x - radius , y - radius , x + radius , y + radius , candidates );
+		
+		int result = -1;
+		float minDistance = radius*radius;
+		for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
+		{
+			final int idx = candidates.get( i );
+			if ( idx != ignoredPoint ) 
+			{
+				final float dx = xs[idx] - x;
+				final float dy = ys[idx] - y;
+				final float d = dx*dx + dy*dy;
+				if ( d < minDistance ) {
+					minDistance = d;
+					result = idx;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the line closest to a given location.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param radius only lines with a distance less than this are considered
+	 * @return line index or -1 if no line is within the radius
+	 * @see #distanceToLine(int, float, float)
+	 */
+	public int findNearestLine(float x,float y,float radius) 
+	{
+		ensureIndex();
+		if ( lineIndex.getCellCount( x - radius , y - radius , x + radius , y + radius ) >= lineCount ) 
+		{
+			// circle covers more cells than there are lines
+			ensureLineCoords();
+			final float[] d = distances( lineCount );
+			distancesToLines( x , y , lineX0 , lineY0 , lineDX , lineDY , lineInvLength2 , lineCount , d );
+			return indexOfMinimum( d , lineCount , radius*radius );
+		}
+		
+		candidates.clear();
+		lineIndex.query( x - radius , y - radius , x + radius , y + radius , candidates );
+		
+		int result = -1;
+		float minDistance = radius*radius;
+		for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
+		{
+			final int idx = candidates.get( i );
+			final int start = startPoints[idx];
+			final int end = endPoints[idx];
+			final float d = MathUtils.distanceSquared( x , y , xs[start] , ys[start] , xs[end] , ys[end] );
+			if ( d < minDistance ) {
+				minDistance = d;
+				result = idx;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the distance between a location and a point.
+	 */
+	public float distanceToPoint(int pointIdx,float x,float y) 
+	{
+		final float dx = xs[pointIdx] - x;
+		final float dy = ys[pointIdx] - y;
+		return (float) Math.sqrt( dx*dx + dy*dy );
+	}
+	
+	/**
+	 * Returns the distance between a location and a line.
+	 */
+	public float distanceToLine(int lineIdx,float x,float y) 
+	{
+		final int start = startPoints[lineIdx];
+		final int end = endPoints[lineIdx];
+		return (float) Math.sqrt( MathUtils.distanceSquared( x , y , xs[start] , ys[start] , xs[end] , ys[end] ) );
+	}
+	
+	private float[] distances(int count) 
+	{
+		if ( distances.length < count ) {
+			distances = new float[ Math.max( count , 2 * distances.length ) ];
+		}
+		return distances;
+	}
+	
+	private void ensureLineCoords() 
+	{
+		if ( lineCoordsValid && lineCoordsModCount == modCount ) {
+			return;
+		}
+		if ( lineX0.length < lineCount ) 
+		{
+			final int capacity = startPoints.length;
+			lineX0 = new float[ capacity ];
+			lineY0 = new float[ capacity ];
+			lineDX = new float[ capacity ];
+			lineDY = new float[ capacity ];
+			lineInvLength2 = new float[ capacity ];
+		}
+		for ( int i = 0 ; i < lineCount ; i++ ) 
+		{
+			final int start = startPoints[i];
+			final int end = endPoints[i];
+			final float dx = xs[end] - xs[start];
+			final float dy = ys[end] - ys[start];
+			final float length2 = dx*dx + dy*dy;
+			lineX0[i] = xs[start];
+			lineY0[i] = ys[start];
+			lineDX[i] = dx;
+			lineDY[i] = dy;
+			lineInvLength2[i] = length2 == 0 ? 0 : 1 / length2;
+		}
+		lineCoordsValid = true;
+		lineCoordsModCount = modCount;
+	}
+	
+	/*
+	 * The scan kernels below only do arithmetic on primitive arrays, without branches or 
+	 * method calls (Math.min()/max() are intrinsics), so HotSpot can compile them to SIMD 
+	 * instructions. Finding the minimum is done in a separate loop because the JIT 
+	 * does not vectorize loops that track an index.
+	 */
+	
+	private static void distancesToPoints(float px,float py,float[] xs,float[] ys,int count,float[] result) 
+	{
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			final float dx = xs[i] - px;
+			final float dy = ys[i] - py;
+			result[i] = dx*dx + dy*dy;
+		}
+	}
+	
+	private static void distancesToLines(float px,float py,float[] x0,float[] y0,float[] dx,float[] dy,float[] invLength2,int count,float[] result) 
+	{
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			final float rx = px - x0[i];
+			final float ry = py - y0[i];
+			// position of the closest point along the line, lines of length 0 yield 0
+			final float t = Math.max( 0f , Math.min( 1f , ( rx*dx[i] + ry*dy[i] ) * invLength2[i] ) );
+			final float ex = rx - t*dx[i];
+			final float ey = ry - t*dy[i];
+			result[i] = ex*ex + ey*ey;
+		}
+	}
+	
+	/**
+	 * Returns the index of the smallest value below a limit, -1 if there is none.
+	 */
+	private static int indexOfMinimum(float[] values,int count,float limit) 
+	{
+		int result = -1;
+		float min = limit;
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			if ( values[i] < min ) 
+			{
+				min = values[i];
+				result = i;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Looks up all lines connected to a point.
+	 * 
+	 * @param pointIdx
+	 * @param result list to append line indices to, not cleared by this method
+	 */
+	public void findLines(int pointIdx,IntList result) 
+	{
+		ensureIndex();
+		// lines connected to this point necessarily pass through the cell the point is in
+		candidates.clear();
+		lineIndex.query( xs[pointIdx] , ys[pointIdx] , xs[pointIdx] , ys[pointIdx] , candidates );
+		for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = candidates.get( i );
+			if ( startPoints[ lineIdx ] == pointIdx || endPoints[ lineIdx ] == pointIdx ) {
+				result.add( lineIdx );
+			}
+		}
+	}
+	
+	/**
+	 * Looks up all lines passing through a rectangle.
+	 * 
+	 * Lines that only pass close by may get reported as well, 
+	 * but only lines whose bounding box overlaps the rectangle.
+	 * 
+	 * This method does not use any internal buffers, once the spatial index has been built 
+	 * it only reads from the collection.
+	 * 
+	 * @param result list to append line indices to, not cleared by this method
+	 * @param scratch scratch buffer
+	 */
+	public void findLines(float minX,float minY,float maxX,float maxY,IntList result,IntList scratch) 
+	{
+		ensureIndex();
+		if ( lineIndex.getCellCount( minX , minY , maxX , maxY ) >= lineCount ) 
+		{
+			// rectangle covers more cells than there are lines
+			scanLines( minX , minY , maxX , maxY , result );
+			return;
+		}
+		
+		scratch.clear();
+		lineIndex.query( minX , minY , maxX , maxY , scratch );
+		// lines get reported once per cell, sorting puts duplicates next to each other
+		scratch.sort();
+		int previous = -1;
+		for ( int i = 0 , len = scratch.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = scratch.get( i );
+			if ( lineIdx != previous ) 
+			{
+				previous = lineIdx;
+				if ( overlaps( lineIdx , minX , minY , maxX , maxY ) ) {
+					result.add( lineIdx );
+				}
+			}
+		}
+	}
+	
+	private void scanLines(float minX,float minY,float maxX,float maxY,IntList result) 
+	{
+		for ( int i = 0 ; i < lineCount ; i++ ) 
+		{
+			if ( overlaps( i , minX , minY , maxX , maxY ) ) {
+				result.add( i );
+			}
+		}
+	}
+	
+	private boolean overlaps(int lineIdx,float minX,float minY,float maxX,float maxY) 
+	{
+		final float x0 = xs[ startPoints[ lineIdx ] ];
+		final float y0 = ys[ startPoints[ lineIdx ] ];
+		final float x1 = xs[ endPoints[ lineIdx ] ];
+		final float y1 = ys[ endPoints[ lineIdx ] ];
+		return Math.min( x0 , x1 ) <= maxX && Math.max( x0 , x1 ) >= minX &&
+				Math.min( y0 , y1 ) <= maxY && Math.max( y0 , y1 ) >= minY;
+	}
+	
+	/**
+	 * Moves a point (and thus all lines connected to it).
+	 * 
+	 * Points must only be moved through this method, otherwise 
+	 * the spatial index gets out of sync.
+	 */
+	public void translatePoint(int pointIdx,float dx,float dy) 
+	{
+		final float x = xs[ pointIdx ];
+		final float y = ys[ pointIdx ];
+		modCount++;
+		pointChanged( pointIdx );
+		
+		if ( lookupValid ) 
+		{
+			final long oldKey = pointKey( x , y );
+			if ( pointLookup.get( oldKey ) == pointIdx ) {
+				pointLookup.remove( oldKey );
+			}
+			// point might end up on top of another one, compact() takes care of merging them 
+			pointLookup.putIfAbsent( pointKey( x + dx , y + dy ) , pointIdx );
+		}
+		
+		if ( ! indexValid ) 
+		{
+			xs[ pointIdx ] = x + dx;
+			ys[ pointIdx ] = y + dy;
+			return;
+		}
+		
+		// lines connected to this point necessarily pass through the cell the point is in
+		candidates.clear();
+		lineIndex.query( x , y , x , y , candidates );
+		touchedLines.clear();
+		for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = candidates.get( i );
+			if ( startPoints[ lineIdx ] == pointIdx || endPoints[ lineIdx ] == pointIdx ) 
+			{
+				touchedLines.add( lineIdx );
+				removeFromIndex( lineIdx );
+			}
+		}
+		pointIndex.remove( pointIdx , x , y );
+		
+		xs[ pointIdx ] = x + dx;
+		ys[ pointIdx ] = y + dy;
+		
+		pointIndex.add( pointIdx , x + dx , y + dy );
+		for ( int i = 0 , len = touchedLines.size() ; i < len ; i++ ) {
+			addToIndex( touchedLines.get( i ) );
+		}
+	}
+	
+	/**
+	 * Moves both end points of a line.
+	 * 
+	 * @see #translatePoint(int, float, float)
+	 */
+	public void translateLine(int lineIdx,float dx,float dy) 
+	{
+		translatePoint( startPoints[ lineIdx ] , dx , dy );
+		translatePoint( endPoints[ lineIdx ] , dx , dy );
+	}
+	
+	/**
+	 * Returns whether all lines form closed loops.
+	 * 
+	 * This is the case if every point is connected to an even number of lines.
+	 */
+	public boolean isClosedOutline() 
+	{
+		return lineCount >= 3 && ensureTopology().getOddDegreeCount() == 0;
+	}
+	
+	/**
+	 * Returns the number of points connected to only one line.
+	 */
+	public int getDanglingPointCount() 
+	{
+		return ensureTopology().getDanglingCount();
+	}
+	
+	/**
+	 * Returns the number of separate groups of connected lines.
+	 */
+	public int getComponentCount() 
+	{
+		return ensureTopology().getComponentCount();
+	}
+	
+	/**
+	 * Returns the number of separate groups of connected lines that form closed loops.
+	 */
+	public int getLoopCount() 
+	{
+		return ensureTopology().getClosedComponentCount();
+	}
+	
+	public boolean isPointInside(Vector2 p) 
+	{
+		return isPointInside( p.x , p.y );
+	}
+	
+	public boolean isPointInside(float x,float y) 
+	{
+		return getContainmentIndex().contains( x , y );
+	}
+	
+	/**
+	 * Checks a batch of points.
+	 * 
+	 * Large batches are processed using multiple threads.
+	 * 
+	 * @param x x coordinates
+	 * @param y y coordinates
+	 * @param count number of points to check
+	 * @param result receives <code>true</code> for every point that is inside
+	 */
+	public void isPointInside(float[] x,float[] y,int count,boolean[] result) 
+	{
+		getContainmentIndex().contains( x , y , count , result , count >= PARALLEL_BATCH_SIZE );
+	}
+	
+	/**
+	 * Checks whether all points of a batch are inside.
+	 * 
+	 * @see #isPointInside(float[], float[], int, boolean[])
+	 */
+	public boolean isAllPointsInside(float[] x,float[] y,int count) 
+	{
+		return getContainmentIndex().containsAll( x , y , count , count >= PARALLEL_BATCH_SIZE );
+	}
+	
+	private ContainmentIndex getContainmentIndex() 
+	{
+		if ( containmentIndex == null || containmentIndexModCount != modCount ) 
+		{
+			containmentIndex = new ContainmentIndex( xs , ys , startPoints , endPoints , lineCount );
+			containmentIndexModCount = modCount;
+		}
+		return containmentIndex;
+	}
+	
+	/**
+	 * Builds all lazily created acceleration structures right away.
+	 * 
+	 * Afterwards, queries do not modify this collection anymore (until it gets changed)
+	 * and may be issued from multiple threads concurrently.
+	 */
+	public void buildIndexes() 
+	{
+		ensureIndex();
+		ensureLookup();
+		getContainmentIndex();
+	}
+	
+	/**
+	 * Returns a counter that gets incremented whenever this collection changes.
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+	
+	/**
+	 * Visits all lines.
+	 * 
+	 * The visitor gets passed the same {@link Line} instance (holding copies of the coordinates) on each invocation,
+	 * modifying it has no effect on this collection.
+	 */
+	public void visitLines(Consumer<Line> visitor) 
+	{
+		final Line tmp = new Line();
+		for ( int i = 0 ; i < lineCount ; i++ ) {
+			start( i , tmp.start );
+			end( i , tmp.end );
+			visitor.accept( tmp );
+		}
+	}
+	
+	/**
+	 * Visits lines until the visitor returns <code>false</code>.
+	 * 
+	 * @see #visitLines(Consumer)
+	 */
+	public <T> T visitLines(LineVisitor<T> visitor)
+	{
+		final Line tmp = new Line();
+		for ( int i = 0 ; i < lineCount ; i++ ) 
+		{
+			start( i , tmp.start );
+			end( i , tmp.end );
+			if ( ! visitor.visit( tmp ) ) {
+				break;
+			}
+		}
+		return visitor.getResult();
+	}
+	
+	/**
+	/**
+	 * Merges a single point into another point with the same coordinates (or within the merge tolerance), if there is one.
+	 * 
+	 * Lines connected to the point get connected to the other point instead, lines that collapse into a single
+	 * point or become duplicates of other lines in the process are removed (see {@link #removeLine(int)}).
+	 * Unlike {@link #compact()}, this only touches the lines connected to the point and keeps all 
+	 * other point indices valid.
+	 * 
+	 * @param pointIdx
+	 * @return index of the point that has been merged into, <code>pointIdx</code> if there was none
+	 * or the point has been deleted
+	 */
+	public int mergePoint(int pointIdx) 
+	{
+		if ( refCounts[ pointIdx ] <= 0 ) {
+			return pointIdx;
+		}
+		final float x = xs[ pointIdx ];
+		final float y = ys[ pointIdx ];
+		final long pointKey = pointKey( x , y );
+		
+		// points with the same key are at most one merge tolerance apart
+		ensureIndex();
+		candidates.clear();
+		pointIndex.query( x - mergeTolerance , y - mergeTolerance , x + mergeTolerance , y + mergeTolerance , candidates );
+		int target = -1;
+		for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
+		{
+			final int idx = candidates.get( i );
+			if ( idx != pointIdx && ( target == -1 || idx < target ) && pointKey( xs[idx] , ys[idx] ) == pointKey ) {
+				target = idx;
+			}
+		}
+		if ( target == -1 ) {
+			return pointIdx;
+		}
+		
+		touchedLines.clear();
+		findLines( pointIdx , touchedLines );
+		final int[] connected = new int[ touchedLines.size() ];
+		for ( int i = 0 ; i < connected.length ; i++ ) {
+			connected[i] = touchedLines.get( i );
+		}
+		// highest index first, so that the last line taking the place of a removed one is never a line still to be processed
+		Arrays.sort( connected );
+		
+		ensureLookup();
+		// keep the target alive while a line connecting it to the merged point collapses
+		retainPoint( target );
+		for ( int i = connected.length - 1 ; i >= 0 ; i-- ) 
+		{
+			final int lineIdx = connected[i];
+			final int start = startPoints[ lineIdx ] == pointIdx ? target : startPoints[ lineIdx ];
+			final int end = endPoints[ lineIdx ] == pointIdx ? target : endPoints[ lineIdx ];
+			if ( start == end || lineLookup.get( key( start , end ) ) != -1 ) 
+			{
+				removeLine( lineIdx );
+				continue;
+			}
+			lineBatchEdit();
+			if ( indexValid ) {
+				removeFromIndex( lineIdx );
+			}
+			removeFromLookup( lineIdx );
+			final int oldStart = startPoints[ lineIdx ];
+			final int oldEnd = endPoints[ lineIdx ];
+			startPoints[ lineIdx ] = start;
+			endPoints[ lineIdx ] = end;
+			lineChanged( lineIdx );
+			if ( indexValid ) {
+				addToIndex( lineIdx );
+			}
+			lineLookup.putIfAbsent( key( start , end ) , lineIdx );
+			
+			// connect first, so the component usually stays connected while the old line gets removed
+			retainPoint( target );
+			if ( topologyValid ) 
+			{
+				topology.connect( start , end );
+				topology.disconnect( oldStart , oldEnd );
+			}
+			releasePoint( pointIdx );
+			modCount++;
+		}
+		releasePoint( target );
+		return target;
+	}
+	
+	/**
+	 * Merges points with same coordinates (or within the merge tolerance).
+	 * 
+	 * Lines that collapse into a single point or become duplicates
+	 * of other lines in the process are removed.
+	 * 
+	 * @see #setMergeTolerance(float)
+	 */
+	public void compact() 
+	{
+		compact( true );
+		debug("after compact():" );
+	}
+	
+	/**
+	 * Removes deleted points from storage, renumbering all points.
+	 * 
+	 * Deleted slots are reused by new points, so this is only needed to release memory
+	 * after removing many lines.
+	 */
+	public void trimToSize() 
+	{
+		compact( false );
+	}
+	
+	private void compact(boolean mergePoints) 
+	{
+		// move surviving points to the front, optionally mapping 
+		// each point to the first point with the same key
+		final int[] remap = new int[ pointCount ];
+		if ( mergePoints ) {
+			pointLookup.clear();
+		}
+		int newPointCount = 0;
+		for ( int i = 0 ; i < pointCount ; i++ ) 
+		{
+			if ( refCounts[i] == FREE ) {
+				continue;
+			}
+			if ( mergePoints ) 
+			{
+				final int existing = pointLookup.putIfAbsent( pointKey( xs[i] , ys[i] ) , newPointCount );
+				if ( existing != -1 ) {
+					remap[i] = existing;
+					continue;
+				}
+			}
+			if ( newPointCount != i ) 
+			{
+				xs[ newPointCount ] = xs[i];
+				ys[ newPointCount ] = ys[i];
+				pointChanged( newPointCount );
+			}
+			refCounts[ newPointCount ] = 0;
+			remap[i] = newPointCount++;
+		}
+		
+		if ( mergePoints ) {
+			lineLookup.clear();
+		}
+		int newLineCount = 0;
+		for ( int i = 0 ; i < lineCount ; i++ ) 
+		{
+			final int start = remap[ startPoints[i] ];
+			final int end = remap[ endPoints[i] ];
+			if ( ! mergePoints || ( start != end && lineLookup.putIfAbsent( key( start , end ) , newLineCount ) == -1 ) ) 
+			{
+				// points that lines got moved to have a different reference count now
+				if ( start != startPoints[i] ) {
+					pointChanged( start );
+				}
+				if ( end != endPoints[i] ) {
+					pointChanged( end );
+				}
+				if ( newLineCount != i || start != startPoints[i] || end != endPoints[i] ) 
+				{
+					startPoints[ newLineCount ] = start;
+					endPoints[ newLineCount ] = end;
+					lineChanged( newLineCount );
+				}
+				refCounts[ start ]++;
+				refCounts[ end ]++;
+				newLineCount++;
+			} 
+			else 
+			{
+				// line got dropped, so its end points lose a reference
+				pointChanged( start );
+				pointChanged( end );
+			}
+		}
+		
+		// points whose lines all got dropped are not used anymore
+		int unusedPoints = 0;
+		for ( int i = 0 ; i < newPointCount ; i++ ) 
+		{
+			if ( refCounts[i] == 0 ) {
+				unusedPoints++;
+			}
+		}
+		if ( unusedPoints > 0 ) 
+		{
+			final int[] remapUsed = new int[ newPointCount ];
+			int usedCount = 0;
+			for ( int i = 0 ; i < newPointCount ; i++ ) 
+			{
+				if ( refCounts[i] == 0 ) {
+					continue;
+				}
+				if ( usedCount != i ) 
+				{
+					xs[ usedCount ] = xs[i];
+					ys[ usedCount ] = ys[i];
+					refCounts[ usedCount ] = refCounts[i];
+					pointChanged( usedCount );
+				}
+				remapUsed[i] = usedCount++;
+			}
+			for ( int i = 0 ; i < newLineCount ; i++ ) 
+			{
+				final int start = remapUsed[ startPoints[i] ];
+				final int end = remapUsed[ endPoints[i] ];
+				if ( start != startPoints[i] || end != endPoints[i] ) 
+				{
+					startPoints[i] = start;
+					endPoints[i] = end;
+					lineChanged( i );
+				}
+			}
+			newPointCount = usedCount;
+		}
+		
+		if ( newPointCount == pointCount && newLineCount == lineCount ) 
+		{
+			// nothing got merged, dropped or moved, reference counts got recalculated to the same values
+			lookupValid |= mergePoints;
+			return;
+		}
+		
+		freePoints.clear();
+		pointCount = newPointCount;
+		lineCount = newLineCount;
+		topology.rebuild( pointCount , startPoints , endPoints , lineCount );
+		topologyValid = true;
+		// the lookup refers to the point indices from before unused points got removed
+		lookupValid = mergePoints && unusedPoints == 0;
+		indexValid = false;
+		modCount++;
+	}
+	
+	public LineCollection copy() 
 	{
-		public boolean visit(Line line);
+		final LineCollection result = new LineCollection ();
+		result.pointCount = pointCount;
+		result.lineCount = lineCount;
 		
-		public T getResult();
+		result.startPoints = Arrays.copyOf( this.startPoints , Math.max( 1 , lineCount ) );
+		result.endPoints = Arrays.copyOf( this.endPoints , Math.max( 1 , lineCount ) );
+		result.xs = Arrays.copyOf( this.xs , Math.max( 1 , pointCount ) );
+		result.ys = Arrays.copyOf( this.ys , Math.max( 1 , pointCount ) );
+		result.refCounts = Arrays.copyOf( this.refCounts , Math.max( 1 , pointCount ) );
+		result.mergeTolerance = mergeTolerance;
+		for ( int i = 0 ; i < freePoints.size() ; i++ ) {
+			result.freePoints.add( freePoints.get( i ) );
+		}
+		result.topology.rebuild( pointCount , result.startPoints , result.endPoints , lineCount );
+		
+		return result;
 	}
 	
-	public int addPoint(Vector2 p) 
+	/**
+	 * Replaces this collection's contents.
+	 * 
+	 * The arrays are copied. Points not used by any line are treated as deleted, 
+	 * their slots get reused by {@link #addPoint(float, float)}.
+	 * 
+	 * @param xs x coordinates of points
+	 * @param ys y coordinates of points
+	 * @param pointCount number of points
+	 * @param startPoints index of each line's start point
+	 * @param endPoints index of each line's end point
+	 * @param lineCount number of lines
+	 */
+	public void load(float[] xs,float[] ys,int pointCount,int[] startPoints,int[] endPoints,int lineCount) 
 	{
-		if ( pointCount == points.length ) 
+		Validate.isTrue( xs.length >= pointCount && ys.length >= pointCount , "Too few point coordinates");
+		Validate.isTrue( startPoints.length >= lineCount && endPoints.length >= lineCount , "Too few line end points");
+		
+		final int[] newRefCounts = new int[ Math.max( 1 , pointCount ) ];
+		for ( int i = 0 ; i < lineCount ; i++ ) 
+		{
+			final int start = startPoints[i];
+			final int end = endPoints[i];
+			if ( start < 0 || start >= pointCount || end < 0 || end >= pointCount || start == end ) {
+				throw new IllegalArgumentException("Invalid line #"+i+": "+start+" -> "+end);
+			}
+			newRefCounts[ start ]++;
+			newRefCounts[ end ]++;
+		}
+		freePoints.clear();
+		for ( int i = pointCount - 1 ; i >= 0 ; i-- ) 
 		{
-			final int newSize = points.length + 1 + points.length/2;
-			final Vector2[] tmp = new Vector2[ newSize ];
-			System.arraycopy( points , 0 , tmp , 0 , points.length );
-			points = tmp;
+			if ( newRefCounts[i] == 0 ) 
+			{
+				newRefCounts[i] = FREE;
+				freePoints.add( i );
+			}
 		}
-		points[ pointCount++ ] = p;
-		return pointCount-1;
+		this.xs = Arrays.copyOf( xs , Math.max( 1 , pointCount ) );
+		this.ys = Arrays.copyOf( ys , Math.max( 1 , pointCount ) );
+		this.refCounts = newRefCounts;
+		this.startPoints = Arrays.copyOf( startPoints , Math.max( 1 , lineCount ) );
+		this.endPoints = Arrays.copyOf( endPoints , Math.max( 1 , lineCount ) );
+		this.pointCount = pointCount;
+		this.lineCount = lineCount;
+		topology.rebuild( pointCount , this.startPoints , this.endPoints , lineCount );
+		topologyValid = true;
+		lookupValid = false;
+		indexValid = false;
+		modCount++;
+		allChanged();
 	}
 	
-	public boolean isClosedOutline() 
+	/**
+	 * Starts a batch of edits.
+	 * 
+	 * Within a batch, adding or removing many lines discards the spatial index instead of 
+	 * updating it (it gets rebuilt once by the next query that needs it).
+	 * 
+	 * Batches may be nested, each call must be matched by a call to {@link #endBatch()}.
+	 */
+	public void beginBatch() 
+	{
+		if ( batchDepth++ == 0 ) {
+			batchEdits = 0;
+		}
+	}
+	
+	private void lineBatchEdit() 
+	{
+		// once a large part of the lines changed, rebuilding the index 
+		// after the batch is cheaper than updating it line by line
+		if ( batchDepth > 0 && ++batchEdits > lineCount / 4 ) {
+			indexValid = false;
+		}
+	}
+	
+	/**
+	 * Ends a batch of edits.
+	 * 
+	 * @see #beginBatch()
+	 */
+	public void endBatch() 
+	{
+		if ( batchDepth == 0 ) {
+			throw new IllegalStateException("endBatch() without beginBatch()");
+		}
+		batchDepth--;
+	}
+	
+	public boolean isInBatch() {
+		return batchDepth > 0;
+	}
+	
+	/**
+	 * Returns an immutable snapshot of this collection's current state.
+	 * 
+	 * Data is split into fixed-size chunks and only chunks that changed since the 
+	 * previous snapshot get copied, all others are shared with it. Taking a snapshot
+	 * after a local edit (moving a point, adding or removing a line) therefore only copies 
+	 * a few chunks instead of the whole collection, so keeping a long history of 
+	 * snapshots is cheap.
+	 * 
+	 * @see #restore(Snapshot)
+	 */
+	public Snapshot snapshot() 
 	{
-		if ( lineCount < 3 || pointCount < 3) {
-			return false;
+		final Snapshot previous = lastSnapshot;
+		if ( previous != null && lastSnapshotModCount == modCount && previous.mergeTolerance == mergeTolerance ) {
+			return previous;
 		}
-		for ( int i = 1 ; i < lineCount ; i++ ) 
+		
+		final int pointChunks = chunkCount( pointCount );
+		final float[][] sx = new float[ pointChunks ][];
+		final float[][] sy = new float[ pointChunks ][];
+		final int[][] sRefCounts = new int[ pointChunks ][];
+		for ( int c = 0 ; c < pointChunks ; c++ ) 
 		{
-			int start1 = startPoints[ i-1 ];
-			int end1= endPoints[ i-1 ];
-			
-			int start2 = startPoints[ i ];
-			if ( start2 == end1 ) {
-				continue;
+			if ( previous != null && c < previous.xs.length && ! changedPointChunks.get( c ) ) 
+			{
+				sx[c] = previous.xs[c];
+				sy[c] = previous.ys[c];
+				sRefCounts[c] = previous.refCounts[c];
+			} 
+			else 
+			{
+				final int from = c << SNAPSHOT_CHUNK_BITS;
+				sx[c] = Arrays.copyOfRange( xs , from , from + SNAPSHOT_CHUNK_SIZE );
+				sy[c] = Arrays.copyOfRange( ys , from , from + SNAPSHOT_CHUNK_SIZE );
+				sRefCounts[c] = Arrays.copyOfRange( refCounts , from , from + SNAPSHOT_CHUNK_SIZE );
 			}
-			if ( start2 == start1 ) 
+		}
+		
+		final int lineChunks = chunkCount( lineCount );
+		final int[][] sStart = new int[ lineChunks ][];
+		final int[][] sEnd = new int[ lineChunks ][];
+		for ( int c = 0 ; c < lineChunks ; c++ ) 
+		{
+			if ( previous != null && c < previous.startPoints.length && ! changedLineChunks.get( c ) ) 
 			{
-				continue;
+				sStart[c] = previous.startPoints[c];
+				sEnd[c] = previous.endPoints[c];
+			} 
+			else 
+			{
+				final int from = c << SNAPSHOT_CHUNK_BITS;
+				sStart[c] = Arrays.copyOfRange( startPoints , from , from + SNAPSHOT_CHUNK_SIZE );
+				sEnd[c] = Arrays.copyOfRange( endPoints , from , from + SNAPSHOT_CHUNK_SIZE );
 			}
 		}
-		return true;
+		
+		final int[] free = new int[ freePoints.size() ];
+		for ( int i = 0 ; i < free.length ; i++ ) {
+			free[i] = freePoints.get( i );
+		}
+		
+		lastSnapshot = new Snapshot( sx , sy , sRefCounts , sStart , sEnd , pointCount , lineCount , free , mergeTolerance );
+		lastSnapshotModCount = modCount;
+		changedPointChunks.clear();
+		changedLineChunks.clear();
+		return lastSnapshot;
 	}
 	
-	public boolean isPointInside(Vector2 p) 
+	private static int chunkCount(int elements) {
+		return ( elements + SNAPSHOT_CHUNK_SIZE - 1 ) >>> SNAPSHOT_CHUNK_BITS;
+	}
+	
+	/**
+	 * Replaces this collection's state with the state stored in a snapshot.
+	 * 
+	 * If the collection's state is derived from a snapshot that shares chunks with the one being 
+	 * restored (because it was restored from or taken from it), only the chunks that differ get copied 
+	 * and the spatial index is updated for the points and lines in these chunks. Restoring snapshots 
+	 * taken after local edits is therefore cheap, even for large collections. 
+	 * 
+	 * @see #snapshot()
+	 */
+	public void restore(Snapshot snapshot) 
 	{
-		final Vector2 lineEnd = new Vector2( 100000 , p.y );
+		Validate.notNull(snapshot, "snapshot must not be NULL");
 		
-		int intersectCount = 0;
-		for ( int i = 0 ; i <lineCount;i++ ) 
+		// changedPointChunks/changedLineChunks hold the chunks changed since lastSnapshot, 
+		// add the ones where lastSnapshot and the snapshot being restored differ
+		final Snapshot previous = lastSnapshot;
+		if ( previous == null ) 
 		{
-			if ( MathUtils.intersect( p , lineEnd , points[ startPoints[i] ] , points[ endPoints[i] ] ) ) 
-			{
-				intersectCount++;
+			changedPointChunks.set( 0 , Math.max( chunkCount( pointCount ) , snapshot.xs.length ) );
+			changedLineChunks.set( 0 , Math.max( chunkCount( lineCount ) , snapshot.startPoints.length ) );
+			indexValid = false;
+		} 
+		else 
+		{
+			markDifferentChunks( previous.xs , snapshot.xs , changedPointChunks );
+			markDifferentChunks( previous.refCounts , snapshot.refCounts , changedPointChunks );
+			markDifferentChunks( previous.startPoints , snapshot.startPoints , changedLineChunks );
+			markDifferentChunks( previous.endPoints , snapshot.endPoints , changedLineChunks );
+			// chunks where the number of elements changes
+			markChunks( pointCount , snapshot.pointCount , changedPointChunks );
+			markChunks( lineCount , snapshot.lineCount , changedLineChunks );
+			// once a large part of the collection changed, rebuilding the index is cheaper than updating it
+			final int chunks = Math.max( previous.xs.length , snapshot.xs.length ) + Math.max( previous.startPoints.length , snapshot.startPoints.length );
+			if ( changedPointChunks.cardinality() + changedLineChunks.cardinality() > chunks / 4 ) {
+				indexValid = false;
 			}
 		}
-		return (intersectCount&1) != 0;
+		if ( indexValid ) {
+			removeChangedChunksFromIndex();
+		}
+		
+		final int pointCapacity = Math.max( 1 , snapshot.xs.length << SNAPSHOT_CHUNK_BITS );
+		if ( xs.length < pointCapacity ) 
+		{
+			xs = Arrays.copyOf( xs , pointCapacity );
+			ys = Arrays.copyOf( ys , pointCapacity );
+			refCounts = Arrays.copyOf( refCounts , pointCapacity );
+		}
+		for ( int c = changedPointChunks.nextSetBit( 0 ) ; c >= 0 && c < snapshot.xs.length ; c = changedPointChunks.nextSetBit( c+1 ) ) 
+		{
+			final int to = c << SNAPSHOT_CHUNK_BITS;
+			final int len = Math.min( SNAPSHOT_CHUNK_SIZE , snapshot.pointCount - to );
+			System.arraycopy( snapshot.xs[c] , 0 , xs , to , len );
+			System.arraycopy( snapshot.ys[c] , 0 , ys , to , len );
+			System.arraycopy( snapshot.refCounts[c] , 0 , refCounts , to , len );
+		}
+		
+		final int lineCapacity = Math.max( 1 , snapshot.startPoints.length << SNAPSHOT_CHUNK_BITS );
+		if ( startPoints.length < lineCapacity ) 
+		{
+			startPoints = Arrays.copyOf( startPoints , lineCapacity );
+			endPoints = Arrays.copyOf( endPoints , lineCapacity );
+		}
+		for ( int c = changedLineChunks.nextSetBit( 0 ) ; c >= 0 && c < snapshot.startPoints.length ; c = changedLineChunks.nextSetBit( c+1 ) ) 
+		{
+			final int to = c << SNAPSHOT_CHUNK_BITS;
+			final int len = Math.min( SNAPSHOT_CHUNK_SIZE , snapshot.lineCount - to );
+			System.arraycopy( snapshot.startPoints[c] , 0 , startPoints , to , len );
+			System.arraycopy( snapshot.endPoints[c] , 0 , endPoints , to , len );
+		}
+		
+		pointCount = snapshot.pointCount;
+		lineCount = snapshot.lineCount;
+		mergeTolerance = snapshot.mergeTolerance;
+		freePoints.clear();
+		for ( int pointIdx : snapshot.freePoints ) {
+			freePoints.add( pointIdx );
+		}
+		if ( indexValid ) {
+			addChangedChunksToIndex();
+		}
+		topologyValid = false;
+		lookupValid = false;
+		modCount++;
+		
+		// state is identical to the snapshot now, so the next snapshot can share all its chunks
+		lastSnapshot = snapshot;
+		lastSnapshotModCount = modCount;
+		changedPointChunks.clear();
+		changedLineChunks.clear();
 	}
 	
-	public void visitLines(Consumer<Line> visitor) 
+	private static void markDifferentChunks(Object[] chunks1,Object[] chunks2,BitSet result) 
 	{
-		final Line tmp = new Line();
-		for ( int i = 0 ; i < lineCount ; i++ ) {
-			tmp.start = start( i );
-			tmp.end = end( i );
-			visitor.accept( tmp );
+		final int common = Math.min( chunks1.length , chunks2.length );
+		for ( int c = 0 ; c < common ; c++ ) 
+		{
+			if ( chunks1[c] != chunks2[c] ) {
+				result.set( c );
+			}
 		}
+		result.set( common , Math.max( chunks1.length , chunks2.length ) );
 	}
 	
-	public <T> T visitLines(LineVisitor<T> visitor)
+	private static void markChunks(int count1,int count2,BitSet result) 
 	{
-		final Line tmp = new Line();
-		for ( int i = 0 ; i < lineCount ; i++ ) 
-		{
-			tmp.start = start( i );
-			tmp.end = end( i );
-			if ( ! visitor.visit( tmp ) ) {
-				break;
-			}
+		if ( count1 != count2 ) {
+			result.set( Math.min( count1 , count2 ) >>> SNAPSHOT_CHUNK_BITS , chunkCount( Math.max( count1 , count2 ) ) );
 		}
-		return visitor.getResult();
 	}
 	
 	/**
-	 * Merges points with same coordinates.
+	 * Removes points in changed chunks and all lines that might change along with them from the spatial index.
+	 * 
+	 * The lines get collected in touchedLines. 
 	 */
-	public void compact() 
+	private void removeChangedChunksFromIndex() 
 	{
-		for ( int i = 0 ; i < pointCount ; i++ ) 
+		touchedLines.clear();
+		for ( int c = changedPointChunks.nextSetBit( 0 ) ; c >= 0 ; c = changedPointChunks.nextSetBit( c+1 ) ) 
 		{
-again:			
-			for ( int j = i+1 ; j < pointCount ; j++ ) 
+			final int end = Math.min( pointCount , ( c+1 ) << SNAPSHOT_CHUNK_BITS );
+			for ( int pointIdx = c << SNAPSHOT_CHUNK_BITS ; pointIdx < end ; pointIdx++ ) 
 			{
-				if ( points[i].equals( points[j] ) ) 
+				if ( refCounts[ pointIdx ] == FREE ) {
+					continue;
+				}
+				final float x = xs[ pointIdx ];
+				final float y = ys[ pointIdx ];
+				// lines connected to this point necessarily pass through the cell the point is in
+				candidates.clear();
+				lineIndex.query( x , y , x , y , candidates );
+				for ( int i = 0 , len = candidates.size() ; i < len ; i++ ) 
 				{
-					for ( int k = 0 ; k < lineCount ; k++ ) 
-					{
-						if ( startPoints[k] == j ) {
-							System.out.println("Fixing starting point of line "+k);
-							startPoints[k] = i;
-						}
-						if ( endPoints[k] == j ) {
-							System.out.println("Fixing end point of line "+k);
-							endPoints[k] = i;
-						}						
+					final int lineIdx = candidates.get( i );
+					if ( startPoints[ lineIdx ] == pointIdx || endPoints[ lineIdx ] == pointIdx ) {
+						touchedLines.add( lineIdx );
 					}
-					
-					System.out.println("Points are equal: "+points[i]+" ("+i+") <-> "+points[j]+" ("+j+")");
-					deletePoint( j );
-					System.out.println("Deleted point at "+j);
-
-					continue again;
 				}
+				pointIndex.remove( pointIdx , x , y );
+			}
+		}
+		addChangedLines( lineCount );
+		for ( int i = 0 , len = touchedLines.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = touchedLines.get( i );
+			if ( lineIdx < lineCount ) {
+				removeFromIndex( lineIdx );
 			}
 		}
-		debug("after compact():" );
 	}
 	
-	public LineCollection copy() 
+	/**
+	 * Adds points in changed chunks and the lines collected by {@link #removeChangedChunksFromIndex()} 
+	 * back to the spatial index.
+	 */
+	private void addChangedChunksToIndex() 
 	{
-		final LineCollection result = new LineCollection ();
-		result.pointCount = pointCount;
-		result.lineCount = lineCount;
-		
-		result.startPoints = new int[ lineCount ];
-		result.endPoints = new int[ lineCount ];
-		result.points = new Vector2[ pointCount ];
-		
-		System.arraycopy( this.startPoints , 0 , result.startPoints , 0 , lineCount );
-		System.arraycopy( this.endPoints , 0 , result.endPoints , 0 , lineCount );
-		System.arraycopy( this.points, 0 , result.points , 0 , pointCount );
-		
-		return result;
+		for ( int c = changedPointChunks.nextSetBit( 0 ) ; c >= 0 ; c = changedPointChunks.nextSetBit( c+1 ) ) 
+		{
+			final int end = Math.min( pointCount , ( c+1 ) << SNAPSHOT_CHUNK_BITS );
+			for ( int pointIdx = c << SNAPSHOT_CHUNK_BITS ; pointIdx < end ; pointIdx++ ) 
+			{
+				if ( refCounts[ pointIdx ] != FREE ) {
+					pointIndex.add( pointIdx , xs[ pointIdx ] , ys[ pointIdx ] );
+				}
+			}
+		}
+		addChangedLines( lineCount );
+		for ( int i = 0 , len = touchedLines.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = touchedLines.get( i );
+			if ( lineIdx < lineCount ) {
+				addToIndex( lineIdx );
+			}
+		}
+	}
+	
+	/**
+	 * Adds all lines in changed chunks to touchedLines and removes duplicates.
+	 */
+	private void addChangedLines(int count) 
+	{
+		for ( int c = changedLineChunks.nextSetBit( 0 ) ; c >= 0 ; c = changedLineChunks.nextSetBit( c+1 ) ) 
+		{
+			final int end = Math.min( count , ( c+1 ) << SNAPSHOT_CHUNK_BITS );
+			for ( int lineIdx = c << SNAPSHOT_CHUNK_BITS ; lineIdx < end ; lineIdx++ ) {
+				touchedLines.add( lineIdx );
+			}
+		}
+		touchedLines.sort();
+		int size = 0;
+		for ( int i = 0 , len = touchedLines.size() ; i < len ; i++ ) 
+		{
+			final int lineIdx = touchedLines.get( i );
+			if ( size == 0 || touchedLines.get( size-1 ) != lineIdx ) {
+				touchedLines.set( size++ , lineIdx );
+			}
+		}
+		while ( touchedLines.size() > size ) {
+			touchedLines.removeLast();
+		}
+	}
+	
+	/**
+	 * Applies a transformation to all points, writing the results to the given arrays
+	 * instead of modifying this collection.
+	 * 
+	 * @param mat
+	 * @param resultX receives transformed x coordinates, must be able to hold {@link #getPointSlotCount()} elements
+	 * @param resultY receives transformed y coordinates, must be able to hold {@link #getPointSlotCount()} elements
+	 */
+	public void transform(Matrix3 mat,float[] resultX,float[] resultY) 
+	{
+		final float[] m = mat.val;
+		transform( m[Matrix3.M00] , m[Matrix3.M01] , m[Matrix3.M02] , m[Matrix3.M10] , m[Matrix3.M11] , m[Matrix3.M12] , resultX , resultY );
+	}
+	
+	/**
+	 * Applies an affine transformation to all points, writing the results to the given arrays
+	 * instead of modifying this collection.
+	 * 
+	 * @see #transform(Matrix3, float[], float[])
+	 */
+	public void transform(float m00,float m01,float m02,float m10,float m11,float m12,float[] resultX,float[] resultY) 
+	{
+		for ( int i = 0 ; i < pointCount ; i++ ) 
+		{
+			final float x = xs[i];
+			final float y = ys[i];
+			resultX[i] = x * m00 + y * m01 + m02;
+			resultY[i] = x * m10 + y * m11 + m12;
+		}
 	}
 	
 	public void transform(Matrix3 mat) 
 	{
-		for ( Vector2 p : points ) 
+		final float[] m = mat.val;
+		for ( int i = 0 ; i < pointCount ; i++ ) 
 		{
-			p.mul( mat );
+			final float x = xs[i];
+			final float y = ys[i];
+			xs[i] = x * m[Matrix3.M00] + y * m[Matrix3.M01] + m[Matrix3.M02];
+			ys[i] = x * m[Matrix3.M10] + y * m[Matrix3.M11] + m[Matrix3.M12];
 		}
+		lookupValid = false;
+		indexValid = false;
+		modCount++;
+		allChanged();
 	}
 	
 	public void addLine(Vector2 start,Vector2 end) 
@@ -169,29 +1504,22 @@ again:
 			throw new IllegalArgumentException("Line must not have length 0 (start == end)");
 		}
 		
-		int startIdx = -1;
-		int endIdx = -1;
-		for (int i = 0; i < points.length; i++) 
-		{
-			Vector2 p = points[i];
-			if ( startIdx == -1 && p == start ) {
-				startIdx = i;
-			}
-			if ( endIdx == -1 && p == end ) {
-				endIdx = i;
-			}
+		final long startKey = pointKey( start.x , start.y );
+		final long endKey = pointKey( end.x , end.y );
+		if ( startKey == endKey ) {
+			throw new IllegalArgumentException("Line must not have length 0 (start and end are within merge tolerance)");
 		}
 		
-		if ( startIdx != -1 && endIdx != -1 ) 
-		{
-			for ( int i =0 ; i < lineCount ; i++ ) {
-				
-				if ( startPoints[i] == startIdx && endPoints[i] == endIdx ) {
-					return; // line already added
-				}
-			}
+		ensureLookup();
+		int startIdx = pointLookup.get( startKey );
+		int endIdx = pointLookup.get( endKey );
+		
+		if ( startIdx != -1 && endIdx != -1 && lineLookup.get( key( startIdx , endIdx ) ) != -1 ) {
+			return; // line already added
 		}
 		
+		lineBatchEdit();
+		
 		if ( startIdx == -1 ) {
 			startIdx = addPoint( start );
 		}
@@ -206,7 +1534,18 @@ again:
 		}
 		startPoints[ lineCount ] = startIdx;
 		endPoints[ lineCount ] = endIdx;
+		lineChanged( lineCount );
+		retainPoint( startIdx );
+		retainPoint( endIdx );
+		if ( topologyValid ) {
+			topology.connect( startIdx , endIdx );
+		}
 		lineCount++;
+		modCount++;
+		lineLookup.putIfAbsent( key( startIdx , endIdx ) , lineCount-1 );
+		if ( indexValid ) {
+			addToIndex( lineCount-1 );
+		}
 	}
 	
 	private int[] copyAndResize(int[] input) 
@@ -217,111 +1556,198 @@ again:
 		return tmp;
 	}
 	
+	private float[] copyAndResize(float[] input) 
+	{
+		final int newLen = input.length+1+input.length/2;
+		final float[] tmp = new float[ newLen ];
+		System.arraycopy(input, 0 , tmp , 0 , input.length );
+		return tmp;
+	}
+	
+	public int getLineCount() {
+		return lineCount;
+	}
+	
+	/**
+	 * Returns the number of points, not including deleted ones.
+	 */
+	public int getPointCount() {
+		return pointCount - freePoints.size();
+	}
+	
+	/**
+	 * Returns the number of point slots, point indices range from 0 to this value (exclusive).
+	 * 
+	 * @see #isDeleted(int)
+	 */
+	public int getPointSlotCount() {
+		return pointCount;
+	}
+	
+	/**
+	 * Returns whether a point slot is unused because the point got deleted.
+	 */
+	public boolean isDeleted(int pointIdx) {
+		return refCounts[ pointIdx ] == FREE;
+	}
+	
+	public float x(int pointIdx) {
+		return xs[ pointIdx ];
+	}
+	
+	public float y(int pointIdx) {
+		return ys[ pointIdx ];
+	}
+	
+	public float startX(int lineIdx) {
+		return xs[ startPoints[ lineIdx ] ];
+	}
+	
+	public float startY(int lineIdx) {
+		return ys[ startPoints[ lineIdx ] ];
+	}
+	
+	public float endX(int lineIdx) {
+		return xs[ endPoints[ lineIdx ] ];
+	}
+	
+	public float endY(int lineIdx) {
+		return ys[ endPoints[ lineIdx ] ];
+	}
+	
+	/**
+	 * Returns a copy of a line's start point.
+	 */
 	public Vector2 start(int lineIdx) {
-		return points[ startPoints[lineIdx] ];
+		return point( startPoints[ lineIdx ] );
 	}
 	
+	/**
+	 * Returns a copy of a line's end point.
+	 */
 	public Vector2 end(int lineIdx) {
-		return points[ endPoints[ lineIdx ] ];
+		return point( endPoints[ lineIdx ] );
+	}
+	
+	/**
+	 * Returns a copy of a point.
+	 */
+	public Vector2 point(int pointIdx) {
+		return new Vector2( xs[ pointIdx ] , ys[ pointIdx ] );
+	}
+	
+	public Vector2 start(int lineIdx,Vector2 result) {
+		return point( startPoints[ lineIdx ] , result );
+	}
+	
+	public Vector2 end(int lineIdx,Vector2 result) {
+		return point( endPoints[ lineIdx ] , result );
+	}
+	
+	public Vector2 point(int pointIdx,Vector2 result) {
+		return result.set( xs[ pointIdx ] , ys[ pointIdx ] );
+	}
+	
+	public int startIndex(int lineIdx) {
+		return startPoints[ lineIdx ];
+	}
+	
+	public int endIndex(int lineIdx) {
+		return endPoints[ lineIdx ];
 	}
 
 	public void removeLine(Line line) 
 	{
-		for ( int i = 0 ; i < lineCount ; i++ ) 
+		ensureLookup();
+		final int start = pointLookup.get( pointKey( line.start.x , line.start.y ) );
+		final int end = pointLookup.get( pointKey( line.end.x , line.end.y ) );
+		if ( start != -1 && end != -1 ) 
 		{
-			Vector2 start = points[ startPoints[i]];
-			Vector2 end = points[ endPoints[i]];
-			
-			if ( start.equals( line.start ) && end.equals( line.end ) ) 
-			{
-				removeLine( i );
-				return;
-			}			
+			final int lineIdx = lineLookup.get( key( start , end ) );
+			if ( lineIdx != -1 ) {
+				removeLine( lineIdx );
+			}
 		}
 	}	
 	
-	private void removeLine(int lineIdx) 
+	/**
+	 * Removes a line, deleting end points that are no longer used by any other line.
+	 * 
+	 * The last line takes the place of the removed one, so this invalidates the index of the last line.
+	 * Point indices stay valid, deleted points are only removed from storage by {@link #compact()}
+	 * and {@link #trimToSize()}.
+	 */
+	public void removeLine(int lineIdx) 
 	{
-		debug("About to remove line with idx "+lineIdx);
-		
 		final int startIdx = startPoints[lineIdx];
 		final int endIdx = endPoints[lineIdx];
-		for ( int i = lineIdx + 1 ; i < lineCount ; i++ ) 
-		{
-			startPoints[i-1] = startPoints[i]; 
-			endPoints[i-1] = endPoints[i]; 
+		
+		lineBatchEdit();
+		if ( indexValid ) {
+			removeFromIndex( lineIdx );
+		}
+		if ( lookupValid ) {
+			removeFromLookup( lineIdx );
 		}
-		lineCount--;
 		
-		// remove unreferenced points
-		boolean startReferenced = false;
-		boolean endReferenced = false;
-		for ( int i = 0 ; i < lineCount ; i++ ) 
+		final int lastIdx = lineCount-1;
+		if ( lineIdx != lastIdx ) 
 		{
-			int start = startPoints[i];
-			int end = endPoints[i];
-			if ( start == startIdx || end == startIdx ) {
-				startReferenced = true;
+			if ( indexValid ) {
+				removeFromIndex( lastIdx );
+			}
+			if ( lookupValid ) {
+				removeFromLookup( lastIdx );
+			}
+			startPoints[ lineIdx ] = startPoints[ lastIdx ];
+			endPoints[ lineIdx ] = endPoints[ lastIdx ];
+			lineChanged( lineIdx );
+			if ( indexValid ) {
+				addToIndex( lineIdx );
+			}
+			if ( lookupValid ) {
+				lineLookup.putIfAbsent( key( startPoints[ lineIdx ] , endPoints[ lineIdx ] ) , lineIdx );
 			}
-			if ( start == endIdx || end == endIdx ) {
-				endReferenced = true;
-			}			
 		}
+		lineCount--;
+		modCount++;
 		
-		if ( startReferenced && ! endReferenced ) 
-		{
-			// end point is no longer referenced
-			deletePoint(endIdx);
-		} 
-		else if ( ! startReferenced && endReferenced ) 
-		{
-			// start point is no longer referenced
-			deletePoint(startIdx);			
-		} 
-		else if ( ! startReferenced && ! endReferenced ) 
-		{
-			// both start and end point are no longer referenced
-			if ( startIdx < endIdx ) 
-			{
-				deletePoint( startIdx );
-				deletePoint( endIdx-1 );
-			} 
-			else if ( startIdx > endIdx ) 
-			{
-				deletePoint( endIdx );
-				deletePoint( startIdx-1 );				
-			} else {
-				throw new IllegalStateException("Start == end ??");
-			}
+		if ( topologyValid ) {
+			topology.disconnect( startIdx , endIdx );
+		}
+		releasePoint( startIdx );
+		releasePoint( endIdx );
+	}
+	
+	private void removeFromLookup(int lineIdx) 
+	{
+		final long key = key( startPoints[ lineIdx ] , endPoints[ lineIdx ] );
+		if ( lineLookup.get( key ) == lineIdx ) {
+			lineLookup.remove( key );
 		}
-		debug("After line removal");
 	}
 	
 	private void debug(String message) 
 	{
+		if ( ! DEBUG ) {
+			return;
+		}
 		System.out.println("\n############################\n# "+message+"\n#######################\n");
 		System.out.println("Line count: "+lineCount+" / point count: "+pointCount);
 		System.out.println("Start points: "+ArrayUtils.toString( ArrayUtils.subarray( startPoints , 0  , lineCount ) ) );
 		System.out.println("End   points: "+ArrayUtils.toString( ArrayUtils.subarray( endPoints , 0  , lineCount ) ) );
-		System.out.println("Points      : "+ArrayUtils.toString( ArrayUtils.subarray( points , 0  , pointCount ) ) );
-	}
-	
-	private void deletePoint(final int pointIdxToDelete) 
-	{
-		for ( int i = pointIdxToDelete+1 ; i < pointCount ; i++ ) {
-			points[i-1] = points[i];
-		}
-		
-		// fix lines
-		for ( int i = 0 ; i < lineCount ; i++ ) 
+		final StringBuilder buffer = new StringBuilder();
+		for ( int i = 0 ; i < pointCount ; i++ ) 
 		{
-			if ( startPoints[i] >= pointIdxToDelete ) {
-				startPoints[i]--;
+			if ( i > 0 ) {
+				buffer.append(",");
 			}
-			if ( endPoints[i] >= pointIdxToDelete ) {
-				endPoints[i]--;
-			}				
+			buffer.append( refCounts[i] == FREE ? "<deleted>" : pointToString( i ) );
 		}
-		pointCount--;
-	} 
+		System.out.println("Points      : {"+buffer+"}");
+	}
+	
+	private String pointToString(int pointIdx) {
+		return "("+xs[pointIdx]+","+ys[pointIdx]+")";
+	}
 }
\ No newline at end of file
@@ -2,12 +2,114 @@ package de.codesourcery.pcb.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-public class Model 
+import org.apache.commons.lang3.Validate;
+
+public class Model
 {
 	private final List<PartInstance> parts = new ArrayList<>();
-	
+
+	private final OverlapDetector overlapDetector = new OverlapDetector();
+
 	public List<PartInstance> getParts() {
 		return parts;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Recalculates board coordinates of all part instances that
+	 * were moved, rotated or whose part changed since the last call.
+	 *
+	 * @return number of part instances that were updated
+	 */
+	public int updateTransforms()
+	{
+		int updated = 0;
+		for ( int i = 0 , len = parts.size() ; i < len ; i++ )
+		{
+			if ( parts.get( i ).updateBoardCoordinates() ) {
+				updated++;
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * Moves a group of part instances.
+	 */
+	public static void translate(List<PartInstance> instances,float dx,float dy)
+	{
+		for ( int i = 0 , len = instances.size() ; i < len ; i++ ) {
+			instances.get( i ).translate( dx , dy );
+		}
+	}
+
+	/**
+	 * Rotates a group of part instances around a common pivot point.
+	 *
+	 * @param instances
+	 * @param degrees rotation angle, counter-clockwise
+	 * @param pivotX
+	 * @param pivotY
+	 */
+	public static void rotate(List<PartInstance> instances,float degrees,float pivotX,float pivotY)
+	{
+		final double rad = Math.toRadians( degrees );
+		final float cos = (float) Math.cos( rad );
+		final float sin = (float) Math.sin( rad );
+		for ( int i = 0 , len = instances.size() ; i < len ; i++ )
+		{
+			final PartInstance instance = instances.get( i );
+			final float x = instance.position.x - pivotX;
+			final float y = instance.position.y - pivotY;
+			instance.position.set( pivotX + x * cos - y * sin , pivotY + x * sin + y * cos );
+			instance.setRotation( instance.rotation + degrees );
+		}
+	}
+
+	/**
+	 * Invokes the consumer once for every pair of part instances whose outlines overlap.
+	 *
+	 * Runs in O(n log n) for boards where most parts do not overlap.
+	 */
+	public void findOverlaps(BiConsumer<PartInstance,PartInstance> consumer) {
+		overlapDetector.findOverlaps( parts , consumer );
+	}
+
+	/**
+	 * Invokes the consumer for every part instance on this board whose outline overlaps the given one.
+	 *
+	 * The instance itself does not need to be part of this board (useful to check a placement before
+	 * actually adding a part) and is skipped if it is.
+	 */
+	public void findOverlaps(PartInstance instance,Consumer<PartInstance> consumer)
+	{
+		Validate.notNull(instance, "instance must not be NULL");
+		Validate.notNull(consumer, "consumer must not be NULL");
+
+		final TransformedOutline outline = instance.getOutline();
+		if ( outline.getLineCount() == 0 ) {
+			return;
+		}
+		final float minX = outline.getMinX();
+		final float minY = outline.getMinY();
+		final float maxX = outline.getMaxX();
+		final float maxY = outline.getMaxY();
+		for ( int i = 0 , len = parts.size() ; i < len ; i++ )
+		{
+			final PartInstance other = parts.get( i );
+			if ( other == instance ) {
+				continue;
+			}
+			final TransformedOutline otherOutline = other.getOutline();
+			if ( otherOutline.getLineCount() > 0 &&
+				 otherOutline.getMaxX() >= minX && otherOutline.getMinX() <= maxX &&
+				 otherOutline.getMaxY() >= minY && otherOutline.getMinY() <= maxY &&
+				 outline.overlaps( otherOutline ) )
+			{
+				consumer.accept( other );
+			}
+		}
+	}
+}
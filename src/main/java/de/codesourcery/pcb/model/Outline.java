@@ -6,10 +6,16 @@ import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Vector2;
 
 import de.codesourcery.pcb.model.LineCollection.LineVisitor;
+import de.codesourcery.pcb.utils.IntList;
 
 public class Outline 
 {
 	private LineCollection lines = new LineCollection();
+	private final IntList scratch = new IntList();
+	
+	LineCollection lines() {
+		return lines;
+	}
 	
 	public Outline copy() {
 		final Outline result = new Outline();
@@ -17,11 +23,101 @@ public class Outline
 		return result;
 	}
 	
+	/**
+	 * @see LineCollection#beginBatch()
+	 */
+	public void beginBatch() {
+		lines.beginBatch();
+	}
+	
+	/**
+	 * @see LineCollection#endBatch()
+	 */
+	public void endBatch() {
+		lines.endBatch();
+	}
+	
+	/**
+	 * Adds several lines at once.
+	 */
+	public void addLines(Iterable<Line> lines) 
+	{
+		beginBatch();
+		try 
+		{
+			for ( Line line : lines ) {
+				addLine( line );
+			}
+		} 
+		finally {
+			endBatch();
+		}
+	}
+	
+	/**
+	 * @see LineCollection#snapshot()
+	 */
+	public LineCollection.Snapshot snapshot() {
+		return lines.snapshot();
+	}
+	
+	/**
+	 * @see LineCollection#restore(LineCollection.Snapshot)
+	 */
+	public void restore(LineCollection.Snapshot snapshot) {
+		lines.restore( snapshot );
+	}
+	
+	/**
+	 * @see LineCollection#load(float[], float[], int, int[], int[], int)
+	 */
+	public void load(float[] xs,float[] ys,int pointCount,int[] startPoints,int[] endPoints,int lineCount) {
+		lines.load( xs , ys , pointCount , startPoints , endPoints , lineCount );
+	}
+	
+	public int getLineCount() {
+		return lines.getLineCount();
+	}
+	
+	/**
+	 * @see LineCollection#getPointSlotCount()
+	 */
+	public int getPointSlotCount() {
+		return lines.getPointSlotCount();
+	}
+	
+	public boolean isDeleted(int pointIdx) {
+		return lines.isDeleted( pointIdx );
+	}
+	
+	public float x(int pointIdx) {
+		return lines.x( pointIdx );
+	}
+	
+	public float y(int pointIdx) {
+		return lines.y( pointIdx );
+	}
+	
+	public float getMergeTolerance() {
+		return lines.getMergeTolerance();
+	}
+	
+	public void setMergeTolerance(float tolerance) {
+		lines.setMergeTolerance( tolerance );
+	}
+	
 	public void transform(Matrix3 mat) 
 	{
 		lines.transform( mat );
 	}
 	
+	/**
+	 * Returns a counter that gets incremented whenever this outline changes.
+	 */
+	public int getModificationCount() {
+		return lines.getModificationCount();
+	}
+	
 	public void visitLines(Consumer<Line> visitor) {
 		lines.visitLines( visitor );
 	}
@@ -44,12 +140,92 @@ public class Outline
 		lines.compact();
 	}
 	
+	/**
+	 * @see LineCollection#mergePoint(int)
+	 */
+	public int mergePoint(int pointIdx) {
+		return lines.mergePoint( pointIdx );
+	}
+	
 	public boolean isClosed() {
 		return lines.isClosedOutline();
 	}
 	
+	/**
+	 * @see LineCollection#buildIndexes()
+	 */
+	public void buildIndexes() {
+		lines.buildIndexes();
+	}
+	
+	public int getLoopCount() {
+		return lines.getLoopCount();
+	}
+	
+	public int getDanglingPointCount() {
+		return lines.getDanglingPointCount();
+	}
+	
 	public boolean contains(Vector2 p) 
 	{
 		return lines.isPointInside( p );
 	}
+	
+	public boolean contains(float x,float y) 
+	{
+		return lines.isPointInside( x , y );
+	}
+	
+	public void contains(float[] x,float[] y,int count,boolean[] result) 
+	{
+		lines.isPointInside( x , y , count , result );
+	}
+	
+	public boolean containsAll(float[] x,float[] y,int count) 
+	{
+		return lines.isAllPointsInside( x , y , count );
+	}
+	
+	public int findNearestPoint(float x,float y,float radius,int ignoredPoint) {
+		return lines.findNearestPoint( x , y , radius , ignoredPoint );
+	}
+	
+	public int findNearestLine(float x,float y,float radius) {
+		return lines.findNearestLine( x , y , radius );
+	}
+	
+	public void findLines(int pointIdx,IntList result) {
+		lines.findLines( pointIdx , result );
+	}
+	
+	/**
+	 * @see LineCollection#findLines(float, float, float, float, IntList, IntList)
+	 */
+	public void findLines(float minX,float minY,float maxX,float maxY,IntList result) {
+		lines.findLines( minX , minY , maxX , maxY , result , scratch );
+	}
+	
+	public Vector2 point(int pointIdx) {
+		return lines.point( pointIdx );
+	}
+	
+	public Line line(int lineIdx) {
+		return new Line( lines.start( lineIdx ) , lines.end( lineIdx ) );
+	}
+	
+	public int startIndex(int lineIdx) {
+		return lines.startIndex( lineIdx );
+	}
+	
+	public int endIndex(int lineIdx) {
+		return lines.endIndex( lineIdx );
+	}
+	
+	public void translatePoint(int pointIdx,float dx,float dy) {
+		lines.translatePoint( pointIdx , dx , dy );
+	}
+	
+	public void translateLine(int lineIdx,float dx,float dy) {
+		lines.translateLine( lineIdx , dx , dy );
+	}
 }
\ No newline at end of file
@@ -0,0 +1,411 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+
+import de.codesourcery.pcb.utils.IntList;
+
+/**
+ * Connectivity information for the points and lines of a {@link LineCollection}.
+ *
+ * Keeps counts of points with an odd degree (number of connected lines) and of dangling end points (degree 1),
+ * the neighbours of each point and a component label per point. Each component tracks how many of its points have an
+ * odd degree, a component without any of them is a closed loop.
+ *
+ * Connecting two components relabels the points of the smaller one. Removing a line searches both of its end points'
+ * surroundings at the same time and stops as soon as the two searches meet, only when they don't the smaller of the two
+ * parts gets a new label. Either way the work is limited to the component the line belonged to.
+ */
+final class OutlineTopology
+{
+	private static final int NONE = -1;
+
+	// neighbours of each point, a neighbour connected through n lines is listed n times
+	private int[][] neighbours = new int[0][];
+	private int[] degrees = new int[0];
+
+	// component of each point, NONE for points without lines
+	private int[] labels = new int[0];
+
+	// number of points and number of points with odd degree of each component
+	private int[] componentSizes = new int[0];
+	private int[] componentOddPoints = new int[0];
+	private final IntList freeComponents = new IntList();
+	private int componentSlots;
+
+	private int oddDegreeCount;
+	private int danglingCount;
+	private int componentCount;
+	private int closedComponentCount;
+
+	// search state used when removing lines
+	private int[] marks = new int[0];
+	private int mark;
+	private final IntList queueA = new IntList();
+	private final IntList queueB = new IntList();
+
+	public void ensureCapacity(int pointSlots)
+	{
+		if ( degrees.length < pointSlots )
+		{
+			final int oldLen = degrees.length;
+			final int newLen = Math.max( pointSlots , oldLen + 1 + oldLen/2 );
+			neighbours = Arrays.copyOf( neighbours , newLen );
+			degrees = Arrays.copyOf( degrees , newLen );
+			labels = Arrays.copyOf( labels , newLen );
+			Arrays.fill( labels , oldLen , newLen , NONE );
+			marks = Arrays.copyOf( marks , newLen );
+		}
+	}
+
+	/**
+	 * Notifies this instance that the number of lines using a point has changed.
+	 */
+	public void degreeChanged(int pointIdx,int oldDegree,int newDegree)
+	{
+		if ( ( oldDegree & 1 ) != ( newDegree & 1 ) ) {
+			oddDegreeCount += ( newDegree & 1 ) != 0 ? 1 : -1;
+		}
+		if ( oldDegree == 1 ) {
+			danglingCount--;
+		}
+		if ( newDegree == 1 ) {
+			danglingCount++;
+		}
+	}
+
+	/**
+	 * Notifies this instance that two points got connected by a line.
+	 */
+	public void connect(int pointA,int pointB)
+	{
+		int a = labels[ pointA ];
+		int b = labels[ pointB ];
+		uncount( a );
+		if ( b != a ) {
+			uncount( b );
+		}
+		if ( a == NONE ) {
+			a = newComponent( pointA );
+		}
+		if ( b == NONE ) {
+			b = newComponent( pointB );
+		}
+		addNeighbour( pointA , pointB );
+		addNeighbour( pointB , pointA );
+		componentOddPoints[ a ] += ( degrees[ pointA ] & 1 ) != 0 ? 1 : -1;
+		componentOddPoints[ b ] += ( degrees[ pointB ] & 1 ) != 0 ? 1 : -1;
+
+		if ( a != b )
+		{
+			// relabel the smaller component
+			if ( componentSizes[ a ] < componentSizes[ b ] ) {
+				relabel( pointA , a , b );
+				a = b;
+			} else {
+				relabel( pointB , b , a );
+			}
+		}
+		count( a );
+	}
+
+	/**
+	 * Notifies this instance that a line connecting two points got removed.
+	 */
+	public void disconnect(int pointA,int pointB)
+	{
+		final int component = labels[ pointA ];
+		uncount( component );
+		removeNeighbour( pointA , pointB );
+		removeNeighbour( pointB , pointA );
+		componentOddPoints[ component ] += ( degrees[ pointA ] & 1 ) != 0 ? 1 : -1;
+		componentOddPoints[ component ] += ( degrees[ pointB ] & 1 ) != 0 ? 1 : -1;
+
+		if ( degrees[ pointA ] == 0 ) {
+			removeFromComponent( pointA , component );
+		}
+		if ( degrees[ pointB ] == 0 ) {
+			removeFromComponent( pointB , component );
+		}
+		if ( componentSizes[ component ] == 0 )
+		{
+			freeComponents.add( component );
+			return;
+		}
+		if ( degrees[ pointA ] == 0 || degrees[ pointB ] == 0 )
+		{
+			// the line was a dangling end, whatever is left is still connected
+			count( component );
+			return;
+		}
+
+		final IntList split = findSmallerPart( pointA , pointB );
+		if ( split != null )
+		{
+			final int other = newComponent( split.get( 0 ) );
+			componentSizes[ other ] = 0;
+			for ( int i = 0 , len = split.size() ; i < len ; i++ )
+			{
+				final int p = split.get( i );
+				labels[ p ] = other;
+				componentSizes[ other ]++;
+				if ( ( degrees[ p ] & 1 ) != 0 ) {
+					componentOddPoints[ other ]++;
+				}
+			}
+			componentSizes[ component ] -= componentSizes[ other ];
+			componentOddPoints[ component ] -= componentOddPoints[ other ];
+			count( other );
+		}
+		count( component );
+	}
+
+	/**
+	 * Searches the points connected to two points at the same time, one step each in turn.
+	 *
+	 * @return the points connected to one of the two points (the side that ran out of points first)
+	 * if they are no longer connected to each other, <code>null</code> if they still are
+	 */
+	private IntList findSmallerPart(int pointA,int pointB)
+	{
+		if ( mark >= Integer.MAX_VALUE - 2 )
+		{
+			Arrays.fill( marks , 0 );
+			mark = 0;
+		}
+		final int markA = ++mark;
+		final int markB = ++mark;
+		queueA.clear();
+		queueB.clear();
+		queueA.add( pointA );
+		queueB.add( pointB );
+		marks[ pointA ] = markA;
+		marks[ pointB ] = markB;
+
+		int headA = 0;
+		int headB = 0;
+		while ( true )
+		{
+			if ( headA == queueA.size() ) {
+				return queueA;
+			}
+			if ( visitNext( queueA.get( headA++ ) , queueA , markA , markB ) ) {
+				return null;
+			}
+			if ( headB == queueB.size() ) {
+				return queueB;
+			}
+			if ( visitNext( queueB.get( headB++ ) , queueB , markB , markA ) ) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if a point marked by the other search was reached
+	 */
+	private boolean visitNext(int point,IntList queue,int ownMark,int otherMark)
+	{
+		final int[] list = neighbours[ point ];
+		for ( int i = 0 , len = degrees[ point ] ; i < len ; i++ )
+		{
+			final int n = list[i];
+			if ( marks[n] == otherMark ) {
+				return true;
+			}
+			if ( marks[n] != ownMark )
+			{
+				marks[n] = ownMark;
+				queue.add( n );
+			}
+		}
+		return false;
+	}
+
+	private void relabel(int start,int from,int to)
+	{
+		queueA.clear();
+		queueA.add( start );
+		labels[ start ] = to;
+		for ( int head = 0 ; head < queueA.size() ; head++ )
+		{
+			final int point = queueA.get( head );
+			final int[] list = neighbours[ point ];
+			for ( int i = 0 , len = degrees[ point ] ; i < len ; i++ )
+			{
+				final int n = list[i];
+				if ( labels[n] == from )
+				{
+					labels[n] = to;
+					queueA.add( n );
+				}
+			}
+		}
+		componentSizes[ to ] += componentSizes[ from ];
+		componentOddPoints[ to ] += componentOddPoints[ from ];
+		freeComponents.add( from );
+	}
+
+	private int newComponent(int pointIdx)
+	{
+		final int component;
+		if ( ! freeComponents.isEmpty() ) {
+			component = freeComponents.removeLast();
+		}
+		else
+		{
+			if ( componentSlots == componentSizes.length )
+			{
+				final int newLen = componentSlots + 1 + componentSlots/2;
+				componentSizes = Arrays.copyOf( componentSizes , newLen );
+				componentOddPoints = Arrays.copyOf( componentOddPoints , newLen );
+			}
+			component = componentSlots++;
+		}
+		labels[ pointIdx ] = component;
+		componentSizes[ component ] = 1;
+		componentOddPoints[ component ] = 0;
+		return component;
+	}
+
+	private void removeFromComponent(int pointIdx,int component)
+	{
+		labels[ pointIdx ] = NONE;
+		componentSizes[ component ]--;
+	}
+
+	private void count(int component)
+	{
+		componentCount++;
+		if ( componentOddPoints[ component ] == 0 ) {
+			closedComponentCount++;
+		}
+	}
+
+	private void uncount(int component)
+	{
+		if ( component != NONE )
+		{
+			componentCount--;
+			if ( componentOddPoints[ component ] == 0 ) {
+				closedComponentCount--;
+			}
+		}
+	}
+
+	private void addNeighbour(int pointIdx,int neighbour)
+	{
+		int[] list = neighbours[ pointIdx ];
+		final int degree = degrees[ pointIdx ];
+		if ( list == null ) {
+			list = neighbours[ pointIdx ] = new int[2];
+		}
+		else if ( degree == list.length )
+		{
+			list = neighbours[ pointIdx ] = Arrays.copyOf( list , degree * 2 );
+		}
+		list[ degree ] = neighbour;
+		degrees[ pointIdx ] = degree + 1;
+	}
+
+	private void removeNeighbour(int pointIdx,int neighbour)
+	{
+		final int[] list = neighbours[ pointIdx ];
+		final int last = degrees[ pointIdx ] - 1;
+		for ( int i = 0 ; i <= last ; i++ )
+		{
+			if ( list[i] == neighbour )
+			{
+				list[i] = list[ last ];
+				degrees[ pointIdx ] = last;
+				return;
+			}
+		}
+		throw new IllegalStateException("Point "+pointIdx+" is not connected to "+neighbour);
+	}
+
+	/**
+	 * Recalculates everything from scratch.
+	 *
+	 * @param pointSlots number of point slots
+	 * @param startPoints
+	 * @param endPoints
+	 * @param lineCount
+	 */
+	public void rebuild(int pointSlots,int[] startPoints,int[] endPoints,int lineCount)
+	{
+		ensureCapacity( pointSlots );
+		Arrays.fill( degrees , 0 );
+		Arrays.fill( labels , NONE );
+		freeComponents.clear();
+		componentSlots = 0;
+		oddDegreeCount = danglingCount = componentCount = closedComponentCount = 0;
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			addNeighbour( startPoints[i] , endPoints[i] );
+			addNeighbour( endPoints[i] , startPoints[i] );
+		}
+		for ( int i = 0 ; i < pointSlots ; i++ )
+		{
+			final int degree = degrees[i];
+			oddDegreeCount += degree & 1;
+			if ( degree == 1 ) {
+				danglingCount++;
+			}
+			if ( degree > 0 && labels[i] == NONE )
+			{
+				// label everything connected to this point
+				final int component = newComponent( i );
+				componentSizes[ component ] = 0;
+				queueA.clear();
+				queueA.add( i );
+				for ( int head = 0 ; head < queueA.size() ; head++ )
+				{
+					final int point = queueA.get( head );
+					componentSizes[ component ]++;
+					if ( ( degrees[ point ] & 1 ) != 0 ) {
+						componentOddPoints[ component ]++;
+					}
+					final int[] list = neighbours[ point ];
+					for ( int j = 0 , len = degrees[ point ] ; j < len ; j++ )
+					{
+						final int n = list[j];
+						if ( labels[n] == NONE )
+						{
+							labels[n] = component;
+							queueA.add( n );
+						}
+					}
+				}
+				count( component );
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points connected to an odd number of lines.
+	 */
+	public int getOddDegreeCount() {
+		return oddDegreeCount;
+	}
+
+	/**
+	 * Returns the number of points connected to exactly one line.
+	 */
+	public int getDanglingCount() {
+		return danglingCount;
+	}
+
+	/**
+	 * Returns the number of connected groups of lines.
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns the number of connected groups of lines that form closed loops.
+	 */
+	public int getClosedComponentCount() {
+		return closedComponentCount;
+	}
+}
@@ -0,0 +1,95 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.MathUtils;
+
+/**
+ * Finds overlapping part instances using sweep-and-prune.
+ *
+ * Bounding boxes (in board coordinates) are sorted by their minimum x coordinate and swept from left to right
+ * while keeping a list of boxes that are still open. Only pairs whose boxes overlap get the exact (and much
+ * more expensive) outline-vs-outline test.
+ *
+ * Buffers are kept between calls, instances are not thread-safe.
+ */
+final class OverlapDetector
+{
+	// bounding boxes, indexed like the list of part instances
+	private float[] minX = new float[0];
+	private float[] minY = new float[0];
+	private float[] maxX = new float[0];
+	private float[] maxY = new float[0];
+
+	// (sortable minX << 32 | instance index)
+	private long[] order = new long[0];
+
+	// instances whose bounding box may still overlap the current one
+	private final IntList active = new IntList();
+
+	private final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+
+	/**
+	 * Invokes the consumer once for every pair of overlapping part instances.
+	 *
+	 * @see TransformedOutline#overlaps(TransformedOutline)
+	 */
+	public void findOverlaps(List<PartInstance> instances,BiConsumer<PartInstance,PartInstance> consumer)
+	{
+		Validate.notNull(consumer, "consumer must not be NULL");
+
+		final int len = instances.size();
+		if ( minX.length < len )
+		{
+			minX = new float[ len ];
+			minY = new float[ len ];
+			maxX = new float[ len ];
+			maxY = new float[ len ];
+			order = new long[ len ];
+		}
+
+		int count = 0;
+		for ( int i = 0 ; i < len ; i++ )
+		{
+			final TransformedOutline outline = instances.get( i ).getOutline();
+			if ( outline.getLineCount() > 0 )
+			{
+				minX[i] = outline.getMinX();
+				minY[i] = outline.getMinY();
+				maxX[i] = outline.getMaxX();
+				maxY[i] = outline.getMaxY();
+				order[ count++ ] = ( (long) MathUtils.toSortableInt( minX[i] ) << 32 ) | i;
+			}
+		}
+		Arrays.sort( order , 0 , count );
+
+		active.clear();
+		for ( int k = 0 ; k < count ; k++ )
+		{
+			final int current = (int) order[k];
+			final float x = minX[ current ];
+			for ( int j = active.size() - 1 ; j >= 0 ; j-- )
+			{
+				final int other = active.get( j );
+				if ( maxX[ other ] < x ) {
+					// boxes are sorted by minX, so no later box can overlap this one either
+					active.swapRemove( j );
+				}
+				else if ( maxY[ other ] >= minY[ current ] && minY[ other ] <= maxY[ current ] )
+				{
+					final PartInstance a = instances.get( other );
+					final PartInstance b = instances.get( current );
+					if ( a.getOutline().overlaps( b.getOutline() , scratch ) ) {
+						consumer.accept( a , b );
+					}
+				}
+			}
+			active.add( current );
+		}
+	}
+}
@@ -6,8 +6,12 @@ import java.util.function.Consumer;
 
 import org.apache.commons.lang3.Validate;
 
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.collision.BoundingBox;
 
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.SpatialGrid;
+
 public class Part 
 {
 	public final BoundingBox bounds = new BoundingBox();
@@ -16,11 +20,226 @@ public class Part
 	private String name;
 	
 	public final Outline outline = new Outline();
+	
+	// scratch buffers for checking all ports at once
+	private float[] portXs = new float[0];
+	private float[] portYs = new float[0];
+	
+	// incremented whenever ports are added or moved
+	private int portModCount;
+	
+	// modification count the bounds were calculated for
+	private int boundsModCount = -1;
+	
+	// spatial index over port centers, (re-)built lazily
+	private static final float PORT_INDEX_CELL_SIZE = 64;
+	private final SpatialGrid portIndex = new SpatialGrid( PORT_INDEX_CELL_SIZE );
+	private final IntList portCandidates = new IntList();
+	private int portIndexModCount = -1;
+	
+	/**
+	 * Immutable copy of a part's outline and ports.
+	 * 
+	 * @see Part#snapshot()
+	 */
+	public static final class Snapshot 
+	{
+		private final LineCollection.Snapshot outline;
+		private final Port[] ports;
+		
+		private Snapshot(LineCollection.Snapshot outline,Port[] ports) 
+		{
+			this.outline = outline;
+			this.ports = ports;
+		}
+	}
 
+	public String getName() {
+		return name;
+	}
+	
+	public void setName(String name) {
+		this.name = name;
+	}
+	
 	public void addPort(Port port) 
 	{
 		Validate.notNull(port, "port must not be NULL");
 		this.ports.add( port );
+		portModCount++;
+	}
+	
+	/**
+	 * Moves a port.
+	 * 
+	 * Ports should always be moved through this method so that 
+	 * cached data derived from the part gets updated.
+	 */
+	public void movePort(Port port,float dx,float dy) 
+	{
+		Validate.notNull(port, "port must not be NULL");
+		port.center.add( dx , dy );
+		portModCount++;
+	}
+	
+	/**
+	 * A group of edits that gets committed or rolled back as a whole.
+	 * 
+	 * While a transaction is active, derived data (spatial index, bounds) 
+	 * is not updated after every single edit but once when the data is needed after the 
+	 * transaction ended. Meant to be used with try-with-resources, closing a transaction
+	 * that has not been committed rolls it back:
+	 * <pre>
+	 * try ( Part.Transaction tx = part.beginTransaction() ) {
+	 *     ...
+	 *     tx.commit();
+	 * }
+	 * </pre>
+	 * Transactions may be nested.
+	 */
+	public final class Transaction implements AutoCloseable 
+	{
+		private final Snapshot initialState;
+		private final int initialModCount;
+		private boolean done;
+		
+		private Transaction() 
+		{
+			initialState = snapshot();
+			initialModCount = getModificationCount();
+			outline.beginBatch();
+		}
+		
+		/**
+		 * Returns the part's state from before this transaction.
+		 */
+		public Snapshot getInitialState() {
+			return initialState;
+		}
+		
+		/**
+		 * Returns whether the part has been modified since this transaction started.
+		 */
+		public boolean isModified() {
+			return getModificationCount() != initialModCount;
+		}
+		
+		public void commit() 
+		{
+			assertNotDone();
+			done = true;
+			outline.endBatch();
+		}
+		
+		/**
+		 * Reverts all changes made since this transaction started.
+		 */
+		public void rollback() 
+		{
+			assertNotDone();
+			done = true;
+			if ( isModified() ) {
+				restore( initialState );
+			}
+			outline.endBatch();
+		}
+		
+		private void assertNotDone() 
+		{
+			if ( done ) {
+				throw new IllegalStateException("Transaction already committed or rolled back");
+			}
+		}
+		
+		public boolean isDone() {
+			return done;
+		}
+		
+		@Override
+		public void close() 
+		{
+			if ( ! done ) {
+				rollback();
+			}
+		}
+	}
+	
+	public Transaction beginTransaction() {
+		return new Transaction();
+	}
+	
+	/**
+	 * Returns a snapshot of the part's current outline and ports.
+	 * 
+	 * Snapshots share unchanged data with each other, see {@link LineCollection#snapshot()}.
+	 */
+	public Snapshot snapshot() 
+	{
+		final Port[] copies = new Port[ ports.size() ];
+		for ( int i = 0 ; i < copies.length ; i++ ) {
+			copies[i] = ports.get( i ).copy();
+		}
+		return new Snapshot( outline.snapshot() , copies );
+	}
+	
+	/**
+	 * Replaces the part's outline and ports with those stored in a snapshot.
+	 */
+	public void restore(Snapshot snapshot) 
+	{
+		Validate.notNull(snapshot, "snapshot must not be NULL");
+		outline.restore( snapshot.outline );
+		ports.clear();
+		for ( Port port : snapshot.ports ) {
+			ports.add( port.copy() );
+		}
+		portModCount++;
+	}
+	
+	/**
+	 * Returns a number that changes whenever the outline or the ports change.
+	 */
+	public int getModificationCount() {
+		return outline.getModificationCount() + portModCount;
+	}
+	
+	/**
+	 * Returns the bounding box of the part's outline.
+	 * 
+	 * The bounding box is recalculated whenever the outline changed.
+	 */
+	public BoundingBox getBounds() 
+	{
+		final LineCollection lines = outline.lines();
+		if ( boundsModCount != lines.getModificationCount() ) 
+		{
+			bounds.inf();
+			for ( int i = 0 , len = lines.getPointSlotCount() ; i < len ; i++ ) 
+			{
+				if ( ! lines.isDeleted( i ) ) {
+					bounds.ext( lines.x( i ) , lines.y( i ) , 0 );
+				}
+			}
+			boundsModCount = lines.getModificationCount();
+		}
+		return bounds;
+	}
+	
+	/**
+	 * Copies port positions to the given arrays.
+	 * 
+	 * @return number of ports
+	 */
+	public int getPortPositions(float[] xs,float[] ys) 
+	{
+		final int count = ports.size();
+		for ( int i = 0 ; i < count ; i++ ) 
+		{
+			final Port port = ports.get( i );
+			xs[i] = port.center.x;
+			ys[i] = port.center.y;
+		}
+		return count;
 	}
 	
 	public void visitPorts(Consumer<Port> visitor) 
@@ -28,12 +247,94 @@ public class Part
 		ports.forEach( visitor );
 	}
 	
+	/**
+	 * Visits all ports whose center lies within a rectangle.
+	 */
+	public void visitPorts(float minX,float minY,float maxX,float maxY,Consumer<Port> visitor) 
+	{
+		if ( portIndex.getCellCount( minX , minY , maxX , maxY ) >= ports.size() ) 
+		{
+			for ( int i = 0 , len = ports.size() ; i < len ; i++ ) 
+			{
+				final Port port = ports.get( i );
+				if ( contains( port , minX , minY , maxX , maxY ) ) {
+					visitor.accept( port );
+				}
+			}
+			return;
+		}
+		
+		if ( portIndexModCount != portModCount ) 
+		{
+			portIndex.clear();
+			for ( int i = 0 , len = ports.size() ; i < len ; i++ ) {
+				portIndex.add( i , ports.get( i ).center.x , ports.get( i ).center.y );
+			}
+			portIndexModCount = portModCount;
+		}
+		portCandidates.clear();
+		portIndex.query( minX , minY , maxX , maxY , portCandidates );
+		for ( int i = 0 , len = portCandidates.size() ; i < len ; i++ ) 
+		{
+			final Port port = ports.get( portCandidates.get( i ) );
+			if ( contains( port , minX , minY , maxX , maxY ) ) {
+				visitor.accept( port );
+			}
+		}
+	}
+	
+	private static boolean contains(Port port,float minX,float minY,float maxX,float maxY) 
+	{
+		return minX <= port.center.x && port.center.x <= maxX && 
+				minY <= port.center.y && port.center.y <= maxY;
+	}
+	
+	/**
+	 * Returns the port closest to a location.
+	 * 
+	 * @return index of the port or -1 if no port's center is within the given radius
+	 * @see #getPort(int)
+	 */
+	public int findNearestPort(float x,float y,float radius) 
+	{
+		int result = -1;
+		float bestDistance = radius * radius;
+		for ( int i = 0 , len = ports.size() ; i < len ; i++ ) 
+		{
+			final Vector2 center = ports.get( i ).center;
+			final float dx = center.x - x;
+			final float dy = center.y - y;
+			final float distance = dx*dx + dy*dy;
+			if ( distance < bestDistance || ( result == -1 && distance == bestDistance ) ) 
+			{
+				result = i;
+				bestDistance = distance;
+			}
+		}
+		return result;
+	}
+	
+	public Port getPort(int portIdx) {
+		return ports.get( portIdx );
+	}
+	
 	public boolean hasPorts() {
 		return ! ports.isEmpty();
 	}
 	
+	public int getPortCount() {
+		return ports.size();
+	}
+	
 	public boolean allPortsWithinOutline() 
 	{
-		return ports.stream().allMatch( port -> outline.contains( port.center ) );
+		final int count = ports.size();
+		if ( portXs.length < count ) 
+		{
+			portXs = new float[ count ];
+			portYs = new float[ count ];
+		}
+		getPortPositions( portXs , portYs );
+		return outline.containsAll( portXs , portYs , count );
 	}
 }
\ No newline at end of file
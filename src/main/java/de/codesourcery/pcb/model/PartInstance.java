@@ -1,25 +1,194 @@
 package de.codesourcery.pcb.model;
 
+import org.apache.commons.lang3.Validate;
+
 import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Vector2;
 
-public class PartInstance 
+public class PartInstance
 {
 	public Part part;
 	public final Vector2 position = new Vector2();
 	public float rotation = 0;
-	
+
+	// part -> board coordinates: x' = m00*x + m01*y + m02 , y' = m10*x + m11*y + m12
+	private float m00=1,m01,m02;
+	private float m10,m11=1,m12;
+
 	private final Matrix3 matrix = new Matrix3();
-	
+
+	// view of the part's outline in board coordinates, shares geometry with the part
+	private TransformedOutline outline;
+
+	// port positions in board coordinates
+	private float[] portXs = new float[0];
+	private float[] portYs = new float[0];
+	private int portCount;
+
+	// whether board coordinates need to be recalculated
+	private boolean dirty = true;
+	private Part cachedPart;
+	private int cachedModCount;
+
 	public PartInstance() {
 		updateTransform();
 	}
-	
-	public void updateTransform() 
+
+	/**
+	 * Recalculates the transformation after {@link #position} or {@link #rotation} have been changed.
+	 *
+	 * The part is rotated around its origin and then moved to {@link #position}.
+	 */
+	public void updateTransform()
+	{
+		final double rad = Math.toRadians( rotation );
+		final float cos = (float) Math.cos( rad );
+		final float sin = (float) Math.sin( rad );
+		m00 = cos;
+		m01 = -sin;
+		m10 = sin;
+		m11 = cos;
+		m02 = position.x;
+		m12 = position.y;
+		transformChanged();
+	}
+
+	public void setPosition(float x,float y)
+	{
+		position.set( x , y );
+		m02 = x;
+		m12 = y;
+		transformChanged();
+	}
+
+	public void translate(float dx,float dy) {
+		setPosition( position.x + dx , position.y + dy );
+	}
+
+	public void setRotation(float degrees)
+	{
+		rotation = degrees;
+		updateTransform();
+	}
+
+	private void transformChanged()
+	{
+		dirty = true;
+		if ( outline != null ) {
+			outline.setTransform( m00 , m01 , m02 , m10 , m11 , m12 );
+		}
+	}
+
+	/**
+	 * Returns the transformation from part to board coordinates.
+	 *
+	 * The returned matrix is owned by this instance and must not be modified.
+	 */
+	public Matrix3 getTransform()
+	{
+		final float[] m = matrix.val;
+		m[Matrix3.M00] = m00;
+		m[Matrix3.M01] = m01;
+		m[Matrix3.M02] = m02;
+		m[Matrix3.M10] = m10;
+		m[Matrix3.M11] = m11;
+		m[Matrix3.M12] = m12;
+		m[Matrix3.M20] = 0;
+		m[Matrix3.M21] = 0;
+		m[Matrix3.M22] = 1;
+		return matrix;
+	}
+
+	/**
+	 * Returns the part's outline in board coordinates.
+	 *
+	 * The returned view does not copy the part's geometry,
+	 * changes to the part's outline are visible immediately.
+	 */
+	public TransformedOutline getOutline()
+	{
+		Validate.notNull(part, "part must not be NULL");
+		if ( outline == null || outline.getOutline() != part.outline )
+		{
+			outline = new TransformedOutline( part.outline );
+			outline.setTransform( m00 , m01 , m02 , m10 , m11 , m12 );
+		}
+		return outline;
+	}
+
+	/**
+	 * Returns whether board coordinates are out of date, either because
+	 * the transformation or the part changed.
+	 */
+	public boolean isDirty() {
+		return dirty || part != cachedPart || part.getModificationCount() != cachedModCount;
+	}
+
+	/**
+	 * Recalculates outline and port positions in board coordinates if they are out of date.
+	 *
+	 * Buffers are reused, so this method does not allocate unless the part grew.
+	 *
+	 * @return <code>true</code> if anything needed to be recalculated
+	 */
+	public boolean updateBoardCoordinates()
+	{
+		Validate.notNull(part, "part must not be NULL");
+		if ( ! isDirty() ) {
+			return false;
+		}
+		getOutline().update();
+
+		final int count = part.getPortCount();
+		if ( portXs.length < count )
+		{
+			portXs = new float[ count ];
+			portYs = new float[ count ];
+		}
+		part.getPortPositions( portXs , portYs );
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			final float x = portXs[i];
+			final float y = portYs[i];
+			portXs[i] = x * m00 + y * m01 + m02;
+			portYs[i] = x * m10 + y * m11 + m12;
+		}
+		portCount = count;
+
+		cachedPart = part;
+		cachedModCount = part.getModificationCount();
+		dirty = false;
+		return true;
+	}
+
+	/**
+	 * Returns the number of ports, as of the last {@link #updateBoardCoordinates()}.
+	 */
+	public int getPortCount() {
+		return portCount;
+	}
+
+	/**
+	 * Returns a port's x coordinate on the board, as of the last {@link #updateBoardCoordinates()}.
+	 */
+	public float portX(int portIdx) {
+		return portXs[portIdx];
+	}
+
+	/**
+	 * Returns a port's y coordinate on the board, as of the last {@link #updateBoardCoordinates()}.
+	 */
+	public float portY(int portIdx) {
+		return portYs[portIdx];
+	}
+
+	/**
+	 * Converts a point from part to board coordinates.
+	 */
+	public Vector2 toBoard(Vector2 partCoordinates,Vector2 result)
 	{
-		Matrix3 tmp = new Matrix3();
-		tmp.setToRotation( rotation );
-		tmp.mul( new Matrix3().setToTranslation( position ) );
-		matrix.set( tmp );
+		final float x = partCoordinates.x;
+		final float y = partCoordinates.y;
+		return result.set( x * m00 + y * m01 + m02 , x * m10 + y * m11 + m12 );
 	}
 }
@@ -7,4 +7,13 @@ public class Port
 	public final Vector2 center = new Vector2();
 	public String label;
 	public int bitWidth;
+	
+	public Port copy() 
+	{
+		final Port result = new Port();
+		result.center.set( this.center );
+		result.label = this.label;
+		result.bitWidth = this.bitWidth;
+		return result;
+	}
 }
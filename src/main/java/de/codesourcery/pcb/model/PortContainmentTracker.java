@@ -0,0 +1,183 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.MathUtils;
+
+/**
+ * Keeps track of whether a part's ports are inside its outline while some of the outline's points are being moved.
+ *
+ * Each port is inside if a ray cast from it crosses the outline an odd number of times. Moving
+ * points only changes the lines connected to them, so instead of re-checking all ports against
+ * the whole outline this class only re-tests those lines, and only for the ports whose ray could
+ * actually hit them (ports within the vertical extent of the lines, before and after the move).
+ * A port's inside/outside state flips whenever the number of crossings with these lines changed by
+ * an odd amount.
+ *
+ * Lines and ports must not be added or removed while a tracker is in use.
+ */
+public final class PortContainmentTracker
+{
+	private final LineCollection lines;
+
+	// lines connected to the moved points
+	private final int[] trackedLines;
+
+	// coordinates of the tracked lines as of the last update
+	private final float[] x0;
+	private final float[] y0;
+	private final float[] x1;
+	private final float[] y1;
+
+	// port positions, sorted ascending by y
+	private final float[] portX;
+	private final float[] portY;
+	private final boolean[] inside;
+	private int outsideCount;
+
+	/**
+	 * Create instance.
+	 *
+	 * @param part
+	 * @param movedPoints indices of the outline points that are going to be moved
+	 */
+	public PortContainmentTracker(Part part,int... movedPoints)
+	{
+		this.lines = part.outline.lines();
+
+		final IntList connected = new IntList();
+		final IntList tmp = new IntList();
+		for ( int pointIdx : movedPoints )
+		{
+			tmp.clear();
+			lines.findLines( pointIdx , tmp );
+			for ( int i = 0 ; i < tmp.size() ; i++ )
+			{
+				if ( ! connected.contains( tmp.get( i ) ) ) {
+					connected.add( tmp.get( i ) );
+				}
+			}
+		}
+		trackedLines = new int[ connected.size() ];
+		for ( int i = 0 ; i < trackedLines.length ; i++ ) {
+			trackedLines[i] = connected.get( i );
+		}
+		x0 = new float[ trackedLines.length ];
+		y0 = new float[ trackedLines.length ];
+		x1 = new float[ trackedLines.length ];
+		y1 = new float[ trackedLines.length ];
+		for ( int i = 0 ; i < trackedLines.length ; i++ ) {
+			rememberPosition( i );
+		}
+
+		// sort ports by y so the ones affected by a line can be found using binary search
+		final float[] unsortedX = new float[ part.getPortCount() ];
+		final float[] unsortedY = new float[ unsortedX.length ];
+		final int[] count = {0};
+		part.visitPorts( port ->
+		{
+			unsortedX[ count[0] ] = port.center.x;
+			unsortedY[ count[0] ] = port.center.y;
+			count[0]++;
+		});
+		final long[] order = new long[ unsortedX.length ];
+		for ( int i = 0 ; i < order.length ; i++ )
+		{
+			order[i] = ( (long) MathUtils.toSortableInt( unsortedY[i] ) << 32 ) | i;
+		}
+		Arrays.sort( order );
+		portX = new float[ order.length ];
+		portY = new float[ order.length ];
+		for ( int i = 0 ; i < order.length ; i++ )
+		{
+			final int idx = (int) order[i];
+			portX[i] = unsortedX[idx];
+			portY[i] = unsortedY[idx];
+		}
+
+		inside = new boolean[ portX.length ];
+		lines.isPointInside( portX , portY , portX.length , inside );
+		for ( boolean b : inside )
+		{
+			if ( ! b ) {
+				outsideCount++;
+			}
+		}
+	}
+
+	private void rememberPosition(int i)
+	{
+		final int lineIdx = trackedLines[i];
+		x0[i] = lines.startX( lineIdx );
+		y0[i] = lines.startY( lineIdx );
+		x1[i] = lines.endX( lineIdx );
+		y1[i] = lines.endY( lineIdx );
+	}
+
+	/**
+	 * Updates the ports' state after the tracked points have moved.
+	 *
+	 * @return <code>true</code> if all ports are inside the outline
+	 */
+	public boolean update()
+	{
+		for ( int i = 0 ; i < trackedLines.length ; i++ )
+		{
+			final int lineIdx = trackedLines[i];
+			final float nx0 = lines.startX( lineIdx );
+			final float ny0 = lines.startY( lineIdx );
+			final float nx1 = lines.endX( lineIdx );
+			final float ny1 = lines.endY( lineIdx );
+
+			final float ox0 = x0[i];
+			final float oy0 = y0[i];
+			final float ox1 = x1[i];
+			final float oy1 = y1[i];
+			if ( nx0 == ox0 && ny0 == oy0 && nx1 == ox1 && ny1 == oy1 ) {
+				continue;
+			}
+
+			final float minY = Math.min( Math.min( oy0 , oy1 ) , Math.min( ny0 , ny1 ) );
+			final float maxY = Math.max( Math.max( oy0 , oy1 ) , Math.max( ny0 , ny1 ) );
+			for ( int p = lowerBound( minY ) ; p < portY.length && portY[p] <= maxY ; p++ )
+			{
+				final float px = portX[p];
+				final float py = portY[p];
+				final boolean before = ContainmentIndex.crosses( px , py , ox0 , oy0 , ox1 , oy1 );
+				final boolean after = ContainmentIndex.crosses( px , py , nx0 , ny0 , nx1 , ny1 );
+				if ( before != after )
+				{
+					inside[p] = ! inside[p];
+					outsideCount += inside[p] ? -1 : 1;
+				}
+			}
+			rememberPosition( i );
+		}
+		return outsideCount == 0;
+	}
+
+	// index of the first port with a y coordinate >= the given value
+	private int lowerBound(float y)
+	{
+		int low = 0;
+		int high = portY.length;
+		while ( low < high )
+		{
+			final int mid = ( low + high ) >>> 1;
+			if ( portY[mid] < y ) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns whether all ports are inside the outline, as of the last update.
+	 */
+	public boolean isAllPortsInside() {
+		return outsideCount == 0;
+	}
+}
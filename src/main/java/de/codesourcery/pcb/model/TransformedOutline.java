@@ -0,0 +1,539 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.Validate;
+
+import com.badlogic.gdx.math.Matrix3;
+
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.MathUtils;
+
+/**
+ * Read-only view of an {@link Outline} with a transformation applied.
+ *
+ * The outline itself is never modified, so any number of views may share the same outline.
+ * Transformed coordinates are calculated on first access and cached until either the
+ * transformation or the outline change.
+ */
+public final class TransformedOutline
+{
+	// number of line pairs below which outlines are tested against each other without a grid
+	private static final int BRUTE_FORCE_PAIRS = 256;
+
+	private final Outline outline;
+
+	// affine transformation
+	private float m00=1,m01,m02;
+	private float m10,m11=1,m12;
+	
+	// inverse transformation
+	private float i00=1,i01,i02;
+	private float i10,i11=1,i12;
+
+	// incremented whenever the transformation changes
+	private int transformVersion;
+
+	// cached transformed coordinates
+	private float[] xs = new float[0];
+	private float[] ys = new float[0];
+	private float minX,minY,maxX,maxY;
+	private int cachedTransformVersion = -1;
+	private int cachedModCount;
+
+	public TransformedOutline(Outline outline)
+	{
+		Validate.notNull(outline, "outline must not be NULL");
+		this.outline = outline;
+	}
+
+	public Outline getOutline() {
+		return outline;
+	}
+
+	public void setTransform(Matrix3 matrix)
+	{
+		Validate.notNull(matrix, "matrix must not be NULL");
+		final float[] m = matrix.val;
+		setTransform( m[Matrix3.M00] , m[Matrix3.M01] , m[Matrix3.M02] , m[Matrix3.M10] , m[Matrix3.M11] , m[Matrix3.M12] );
+	}
+
+	/**
+	 * Sets the affine transformation to apply.
+	 *
+	 * Transformed coordinates are <code>x' = m00*x + m01*y + m02</code> and <code>y' = m10*x + m11*y + m12</code>.
+	 */
+	public void setTransform(float m00,float m01,float m02,float m10,float m11,float m12)
+	{
+		final float det = m00 * m11 - m01 * m10;
+		if ( det == 0 ) {
+			throw new IllegalArgumentException("Transformation is not invertible");
+		}
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m02 = m02;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.m12 = m12;
+
+		final float invDet = 1.0f / det;
+		i00 = m11 * invDet;
+		i01 = -m01 * invDet;
+		i10 = -m10 * invDet;
+		i11 = m00 * invDet;
+		i02 = -( i00 * m02 + i01 * m12 );
+		i12 = -( i10 * m02 + i11 * m12 );
+		transformVersion++;
+	}
+
+	/**
+	 * Recalculates cached coordinates if either the outline or the transformation changed.
+	 */
+	void update()
+	{
+		lines();
+	}
+
+	private LineCollection lines()
+	{
+		final LineCollection lines = outline.lines();
+		if ( cachedTransformVersion != transformVersion || cachedModCount != lines.getModificationCount() )
+		{
+			final int slots = lines.getPointSlotCount();
+			if ( xs.length < slots )
+			{
+				xs = new float[ slots ];
+				ys = new float[ slots ];
+			}
+			lines.transform( m00 , m01 , m02 , m10 , m11 , m12 , xs , ys );
+
+			minX = minY = Float.POSITIVE_INFINITY;
+			maxX = maxY = Float.NEGATIVE_INFINITY;
+			for ( int i = 0 ; i < slots ; i++ )
+			{
+				if ( ! lines.isDeleted( i ) )
+				{
+					minX = Math.min( minX , xs[i] );
+					minY = Math.min( minY , ys[i] );
+					maxX = Math.max( maxX , xs[i] );
+					maxY = Math.max( maxY , ys[i] );
+				}
+			}
+			cachedTransformVersion = transformVersion;
+			cachedModCount = lines.getModificationCount();
+		}
+		return lines;
+	}
+
+	public int getLineCount() {
+		return outline.lines().getLineCount();
+	}
+
+	public float startX(int lineIdx)
+	{
+		// lines() may replace the coordinate arrays, so it must be called before accessing them
+		final int pointIdx = lines().startIndex( lineIdx );
+		return xs[ pointIdx ];
+	}
+
+	public float startY(int lineIdx)
+	{
+		final int pointIdx = lines().startIndex( lineIdx );
+		return ys[ pointIdx ];
+	}
+
+	public float endX(int lineIdx)
+	{
+		final int pointIdx = lines().endIndex( lineIdx );
+		return xs[ pointIdx ];
+	}
+
+	public float endY(int lineIdx)
+	{
+		final int pointIdx = lines().endIndex( lineIdx );
+		return ys[ pointIdx ];
+	}
+
+	/**
+	 * Visits all lines in transformed coordinates.
+	 *
+	 * @see Outline#visitLines(Consumer)
+	 */
+	public void visitLines(Consumer<Line> visitor)
+	{
+		final LineCollection lines = lines();
+		final Line line = new Line();
+		for ( int i = 0 , len = lines.getLineCount() ; i < len ; i++ )
+		{
+			final int start = lines.startIndex( i );
+			final int end = lines.endIndex( i );
+			line.start.set( xs[start] , ys[start] );
+			line.end.set( xs[end] , ys[end] );
+			visitor.accept( line );
+		}
+	}
+
+	/**
+	 * Checks whether a point (in transformed coordinates) is inside the outline.
+	 *
+	 * The point is mapped back into the outline's coordinate system so that
+	 * the outline's own containment index can be used.
+	 */
+	public boolean contains(float x,float y)
+	{
+		final float px = x * i00 + y * i01 + i02;
+		final float py = x * i10 + y * i11 + i12;
+		return outline.contains( px , py );
+	}
+
+	/**
+	 * Scratch buffers for outline-vs-outline tests.
+	 *
+	 * Buffers grow as needed and are kept for re-use, instances must not be shared between threads.
+	 *
+	 * @see TransformedOutline#overlaps(TransformedOutline, Scratch)
+	 * @see TransformedOutline#isWithinDistance(TransformedOutline, float, Scratch)
+	 */
+	public static final class Scratch
+	{
+		private final IntList linesA = new IntList();
+		private final IntList linesB = new IntList();
+		private final IntList tmp = new IntList();
+
+		// lines of the other outline (as indices into linesB), bucketed by grid cell:
+		// cell c holds cellItems[ cellStarts[c] ] ... cellItems[ cellStarts[c+1]-1 ]
+		private int[] cellStarts = new int[0];
+		private int[] cellItems = new int[0];
+
+		// for each entry of linesB, the entry of linesA it has last been tested against
+		private int[] stamps = new int[0];
+	}
+
+	/**
+	 * Checks whether this outline overlaps another one.
+	 *
+	 * Outlines overlap if any of their lines intersect (touching counts as intersecting)
+	 * or if one outline lies completely inside the other.
+	 */
+	public boolean overlaps(TransformedOutline other) {
+		return overlaps( other , new Scratch() );
+	}
+
+	/**
+	 * Checks whether this outline overlaps another one, using caller-provided scratch buffers.
+	 *
+	 * Once the outlines' transformations are up-to-date and their indexes have been built, this method only
+	 * reads from both outlines and may be called from multiple threads concurrently (with different scratch buffers).
+	 *
+	 * @see #overlaps(TransformedOutline)
+	 */
+	public boolean overlaps(TransformedOutline other,Scratch scratch)
+	{
+		final LineCollection linesA = lines();
+		final LineCollection linesB = other.lines();
+		if ( linesA.getLineCount() == 0 || linesB.getLineCount() == 0 ) {
+			return false;
+		}
+
+		final float minX = Math.max( this.minX , other.minX );
+		final float minY = Math.max( this.minY , other.minY );
+		final float maxX = Math.min( this.maxX , other.maxX );
+		final float maxY = Math.min( this.maxY , other.maxY );
+		if ( minX > maxX || minY > maxY ) {
+			return false;
+		}
+
+		// only lines crossing the intersection of both bounding boxes can intersect each other
+		this.linesWithin( minX , minY , maxX , maxY , scratch.linesA , scratch.tmp );
+		other.linesWithin( minX , minY , maxX , maxY , scratch.linesB , scratch.tmp );
+		if ( anyLinesWithin( other , 0 , minX , minY , maxX , maxY , scratch ) ) {
+			return true;
+		}
+
+		// no lines intersect, so either one outline is completely inside the other or they are disjoint
+		final int pointA = linesA.startIndex( 0 );
+		final int pointB = linesB.startIndex( 0 );
+		return other.contains( xs[pointA] , ys[pointA] ) || this.contains( other.xs[pointB] , other.ys[pointB] );
+	}
+
+	/**
+	 * Checks whether any line of this outline comes closer than a given distance to any line of another outline.
+	 *
+	 * Has the same threading constraints as {@link #overlaps(TransformedOutline, Scratch)}.
+	 *
+	 * @param other
+	 * @param distance
+	 * @param scratch scratch buffers
+	 */
+	public boolean isWithinDistance(TransformedOutline other,float distance,Scratch scratch)
+	{
+		final LineCollection linesA = lines();
+		final LineCollection linesB = other.lines();
+		if ( linesA.getLineCount() == 0 || linesB.getLineCount() == 0 ) {
+			return false;
+		}
+
+		// the closest point on a line of the other outline is inside the other outline's bounding box
+		// and close to this outline's bounding box (and vice versa)
+		final float minX = Math.max( this.minX , other.minX ) - distance;
+		final float minY = Math.max( this.minY , other.minY ) - distance;
+		final float maxX = Math.min( this.maxX , other.maxX ) + distance;
+		final float maxY = Math.min( this.maxY , other.maxY ) + distance;
+		if ( minX > maxX || minY > maxY ) {
+			return false;
+		}
+
+		// only lines near the other outline's bounding box can be close to any of its lines
+		this.linesWithin( other.minX - distance , other.minY - distance , other.maxX + distance , other.maxY + distance , scratch.linesA , scratch.tmp );
+		other.linesWithin( this.minX - distance , this.minY - distance , this.maxX + distance , this.maxY + distance , scratch.linesB , scratch.tmp );
+		return anyLinesWithin( other , distance , minX , minY , maxX , maxY , scratch );
+	}
+
+	/*
+	 * Checks whether any line in scratch.linesA intersects or comes closer than the given distance to any line in scratch.linesB.
+	 *
+	 * Instead of testing all pairs, lines of the other outline get sorted into a uniform grid covering the given rectangle
+	 * (lines sticking out of it go into the border cells) and lines of this outline are only tested against lines
+	 * in cells near them. The rectangle must contain all points where a line of the other outline can come close
+	 * enough to a line of this outline.
+	 */
+	private boolean anyLinesWithin(TransformedOutline other,float distance,float minX,float minY,float maxX,float maxY,Scratch scratch)
+	{
+		final IntList candidatesA = scratch.linesA;
+		final IntList candidatesB = scratch.linesB;
+		final int lenA = candidatesA.size();
+		final int lenB = candidatesB.size();
+		if ( lenA == 0 || lenB == 0 ) {
+			return false;
+		}
+		final LineCollection linesA = lines();
+		final LineCollection linesB = other.lines();
+		final float maxDist2 = distance * distance;
+
+		if ( lenA * (long) lenB <= BRUTE_FORCE_PAIRS )
+		{
+			// not worth building a grid
+			for ( int i = 0 ; i < lenA ; i++ )
+			{
+				final int a = candidatesA.get( i );
+				for ( int j = 0 ; j < lenB ; j++ )
+				{
+					if ( linesWithinDistance( linesA , a , other , linesB , candidatesB.get( j ) , maxDist2 ) ) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		// roughly as many cells as there are lines
+		final float width = maxX - minX;
+		final float height = maxY - minY;
+		final int columns;
+		final int rows;
+		if ( width > 0 && height > 0 )
+		{
+			columns = Math.max( 1 , Math.min( lenB , (int) Math.sqrt( lenB * (double) width / height ) ) );
+			rows = Math.max( 1 , Math.min( lenB , lenB / columns ) );
+		}
+		else
+		{
+			columns = width > 0 ? lenB : 1;
+			rows = height > 0 ? lenB : 1;
+		}
+		final float scaleX = width > 0 ? columns / width : 0;
+		final float scaleY = height > 0 ? rows / height : 0;
+		final int cellCount = columns * rows;
+
+		// count lines per cell
+		if ( scratch.cellStarts.length < cellCount + 1 ) {
+			scratch.cellStarts = new int[ cellCount + 1 ];
+		}
+		final int[] cellStarts = scratch.cellStarts;
+		Arrays.fill( cellStarts , 0 , cellCount + 1 , 0 );
+		for ( int j = 0 ; j < lenB ; j++ )
+		{
+			final int b = candidatesB.get( j );
+			final int start = linesB.startIndex( b );
+			final int end = linesB.endIndex( b );
+			final int cx0 = cell( Math.min( other.xs[start] , other.xs[end] ) , minX , scaleX , columns );
+			final int cx1 = cell( Math.max( other.xs[start] , other.xs[end] ) , minX , scaleX , columns );
+			final int cy0 = cell( Math.min( other.ys[start] , other.ys[end] ) , minY , scaleY , rows );
+			final int cy1 = cell( Math.max( other.ys[start] , other.ys[end] ) , minY , scaleY , rows );
+			for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+			{
+				for ( int cx = cx0 ; cx <= cx1 ; cx++ ) {
+					cellStarts[ cy * columns + cx + 1 ]++;
+				}
+			}
+		}
+		for ( int c = 1 ; c <= cellCount ; c++ ) {
+			cellStarts[c] += cellStarts[c-1];
+		}
+
+		// fill cells, this advances each cell's start to the start of the next cell
+		if ( scratch.cellItems.length < cellStarts[ cellCount ] ) {
+			scratch.cellItems = new int[ cellStarts[ cellCount ] ];
+		}
+		final int[] cellItems = scratch.cellItems;
+		for ( int j = 0 ; j < lenB ; j++ )
+		{
+			final int b = candidatesB.get( j );
+			final int start = linesB.startIndex( b );
+			final int end = linesB.endIndex( b );
+			final int cx0 = cell( Math.min( other.xs[start] , other.xs[end] ) , minX , scaleX , columns );
+			final int cx1 = cell( Math.max( other.xs[start] , other.xs[end] ) , minX , scaleX , columns );
+			final int cy0 = cell( Math.min( other.ys[start] , other.ys[end] ) , minY , scaleY , rows );
+			final int cy1 = cell( Math.max( other.ys[start] , other.ys[end] ) , minY , scaleY , rows );
+			for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+			{
+				for ( int cx = cx0 ; cx <= cx1 ; cx++ ) {
+					cellItems[ cellStarts[ cy * columns + cx ]++ ] = j;
+				}
+			}
+		}
+		System.arraycopy( cellStarts , 0 , cellStarts , 1 , cellCount );
+		cellStarts[0] = 0;
+
+		if ( scratch.stamps.length < lenB ) {
+			scratch.stamps = new int[ lenB ];
+		}
+		final int[] stamps = scratch.stamps;
+		Arrays.fill( stamps , 0 , lenB , -1 );
+
+		for ( int i = 0 ; i < lenA ; i++ )
+		{
+			final int a = candidatesA.get( i );
+			final int start = linesA.startIndex( a );
+			final int end = linesA.endIndex( a );
+			final int cx0 = cell( Math.min( xs[start] , xs[end] ) - distance , minX , scaleX , columns );
+			final int cx1 = cell( Math.max( xs[start] , xs[end] ) + distance , minX , scaleX , columns );
+			final int cy0 = cell( Math.min( ys[start] , ys[end] ) - distance , minY , scaleY , rows );
+			final int cy1 = cell( Math.max( ys[start] , ys[end] ) + distance , minY , scaleY , rows );
+			for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+			{
+				for ( int cx = cx0 ; cx <= cx1 ; cx++ )
+				{
+					final int cell = cy * columns + cx;
+					for ( int k = cellStarts[ cell ] , last = cellStarts[ cell + 1 ] ; k < last ; k++ )
+					{
+						// lines spanning multiple cells would otherwise get tested more than once
+						final int j = cellItems[k];
+						if ( stamps[j] != i )
+						{
+							stamps[j] = i;
+							if ( linesWithinDistance( linesA , a , other , linesB , candidatesB.get( j ) , maxDist2 ) ) {
+								return true;
+							}
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int cell(float value,float min,float scale,int cellCount) {
+		return Math.max( 0 , Math.min( cellCount - 1 , (int) ( ( value - min ) * scale ) ) );
+	}
+
+	// whether two lines intersect or come closer than sqrt(maxDist2)
+	private boolean linesWithinDistance(LineCollection linesA,int a,TransformedOutline other,LineCollection linesB,int b,float maxDist2)
+	{
+		final int a0 = linesA.startIndex( a );
+		final int a1 = linesA.endIndex( a );
+		final int b0 = linesB.startIndex( b );
+		final int b1 = linesB.endIndex( b );
+		final float ax0 = xs[a0];
+		final float ay0 = ys[a0];
+		final float ax1 = xs[a1];
+		final float ay1 = ys[a1];
+		final float bx0 = other.xs[b0];
+		final float by0 = other.ys[b0];
+		final float bx1 = other.xs[b1];
+		final float by1 = other.ys[b1];
+		if ( MathUtils.intersect( ax0 , ay0 , ax1 , ay1 , bx0 , by0 , bx1 , by1 ) ) {
+			return true;
+		}
+		// the closest points of two non-intersecting segments always include an end point
+		return maxDist2 > 0 && (
+			 MathUtils.distanceSquared( ax0 , ay0 , bx0 , by0 , bx1 , by1 ) < maxDist2 ||
+			 MathUtils.distanceSquared( ax1 , ay1 , bx0 , by0 , bx1 , by1 ) < maxDist2 ||
+			 MathUtils.distanceSquared( bx0 , by0 , ax0 , ay0 , ax1 , ay1 ) < maxDist2 ||
+			 MathUtils.distanceSquared( bx1 , by1 , ax0 , ay0 , ax1 , ay1 ) < maxDist2 );
+	}
+
+	/*
+	 * Indices of lines whose (transformed) bounding box overlaps the given rectangle.
+	 *
+	 * The rectangle gets mapped back into the outline's coordinate system so that the outline's own spatial index can be used.
+	 */
+	private void linesWithin(float minX,float minY,float maxX,float maxY,IntList result,IntList scratch)
+	{
+		result.clear();
+		final LineCollection lines = lines();
+
+		float pMinX = Float.POSITIVE_INFINITY;
+		float pMinY = Float.POSITIVE_INFINITY;
+		float pMaxX = Float.NEGATIVE_INFINITY;
+		float pMaxY = Float.NEGATIVE_INFINITY;
+		for ( int corner = 0 ; corner < 4 ; corner++ )
+		{
+			final float x = ( corner & 1 ) == 0 ? minX : maxX;
+			final float y = ( corner & 2 ) == 0 ? minY : maxY;
+			final float px = x * i00 + y * i01 + i02;
+			final float py = x * i10 + y * i11 + i12;
+			pMinX = Math.min( pMinX , px );
+			pMinY = Math.min( pMinY , py );
+			pMaxX = Math.max( pMaxX , px );
+			pMaxY = Math.max( pMaxY , py );
+		}
+		// rounding errors must not cause lines touching the rectangle to be missed
+		final float magnitude = Math.max( Math.max( Math.abs( minX ) , Math.abs( maxX ) ) , Math.max( Math.abs( minY ) , Math.abs( maxY ) ) );
+		final float pMagnitude = Math.max( Math.max( Math.abs( pMinX ) , Math.abs( pMaxX ) ) , Math.max( Math.abs( pMinY ) , Math.abs( pMaxY ) ) );
+		final float epsilon = ( 1 + Math.max( magnitude , pMagnitude ) ) * 1e-5f;
+		lines.findLines( pMinX - epsilon , pMinY - epsilon , pMaxX + epsilon , pMaxY + epsilon , result , scratch );
+
+		// unless the transformation is axis-aligned, the mapped rectangle covers more than the original one
+		int count = 0;
+		for ( int i = 0 , len = result.size() ; i < len ; i++ )
+		{
+			final int lineIdx = result.get( i );
+			final int start = lines.startIndex( lineIdx );
+			final int end = lines.endIndex( lineIdx );
+			final float x0 = xs[start];
+			final float y0 = ys[start];
+			final float x1 = xs[end];
+			final float y1 = ys[end];
+			if ( Math.max( x0 , x1 ) >= minX && Math.min( x0 , x1 ) <= maxX &&
+				 Math.max( y0 , y1 ) >= minY && Math.min( y0 , y1 ) <= maxY )
+			{
+				result.set( count++ , lineIdx );
+			}
+		}
+		while ( result.size() > count ) {
+			result.removeLast();
+		}
+	}
+
+	public float getMinX() {
+		lines();
+		return minX;
+	}
+
+	public float getMinY() {
+		lines();
+		return minY;
+	}
+
+	public float getMaxX() {
+		lines();
+		return maxX;
+	}
+
+	public float getMaxY() {
+		lines();
+		return maxY;
+	}
+}
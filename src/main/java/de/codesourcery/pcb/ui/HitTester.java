@@ -0,0 +1,351 @@
+package de.codesourcery.pcb.ui;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Part;
+
+/**
+ * Finds the point, line or port under the mouse pointer.
+ *
+ * Queries can either run right away ({@link #test(Part, Query, Hit)}) or on a background thread
+ * ({@link #submit(Query, Consumer)}), so that expensive queries do not block painting.
+ * Background queries never touch the part being edited: whenever a query gets submitted after
+ * the part changed, an immutable {@link Part.Snapshot} of it is published and the worker thread
+ * restores that snapshot into a private copy of the part. Since consecutive snapshots share unchanged
+ * chunks, restoring one after a local edit only copies the changed chunks.
+ *
+ * Only the latest submitted query gets processed, results are handed back to the EDT and dropped if a newer
+ * query has been submitted in the meantime, if the query got cancelled or if the part has changed since.
+ * Indices in delivered results therefore always refer to the current state of the part.
+ *
+ * Queries and results are mutable and get reused, submitting a query does not allocate.
+ *
+ * All methods except {@link #test(Part, Query, Hit)} must be called on the EDT.
+ */
+final class HitTester
+{
+	/**
+	 * What to look for.
+	 */
+	public static final class Query
+	{
+		public static final int POINTS = 1;
+		public static final int LINES = 2;
+		public static final int PORTS = 4;
+		// whether insideX/insideY is inside of the outline
+		public static final int INSIDE = 8;
+
+		public float x;
+		public float y;
+		public float radius;
+		public int flags;
+		public int ignoredPoint = -1;
+		public float insideX;
+		public float insideY;
+
+		/**
+		 *
+		 * @param x
+		 * @param y
+		 * @param radius maximum distance of points, lines and ports from (x,y)
+		 * @param flags bitmask of the elements to look for
+		 * @param ignoredPoint index of a point to ignore, -1 if none
+		 * @param insideX location to check against the outline if {@link #INSIDE} is set
+		 * @param insideY location to check against the outline if {@link #INSIDE} is set
+		 * @return this instance
+		 */
+		public Query set(float x,float y,float radius,int flags,int ignoredPoint,float insideX,float insideY)
+		{
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+			this.flags = flags;
+			this.ignoredPoint = ignoredPoint;
+			this.insideX = insideX;
+			this.insideY = insideY;
+			return this;
+		}
+
+		public Query set(Query other) {
+			return set( other.x , other.y , other.radius , other.flags , other.ignoredPoint , other.insideX , other.insideY );
+		}
+
+		public boolean isSet(int flag) {
+			return ( flags & flag ) != 0;
+		}
+	}
+
+	/**
+	 * Result of a query.
+	 */
+	public static final class Hit
+	{
+		public static final int NONE = 0;
+		public static final int POINT = 1;
+		public static final int LINE = 2;
+		public static final int PORT = 3;
+
+		public int type = NONE;
+		// point, line or port index
+		public int index = -1;
+		// only valid if the query had the INSIDE flag set
+		public boolean inside;
+
+		public Hit set(int type,int index,boolean inside)
+		{
+			this.type = type;
+			this.index = index;
+			this.inside = inside;
+			return this;
+		}
+
+		public Hit set(Hit other) {
+			return set( other.type , other.index , other.inside );
+		}
+
+		/**
+		 * Returns whether both hits refer to the same element.
+		 */
+		public boolean isSame(Hit other) {
+			return type == other.type && index == other.index;
+		}
+	}
+
+	private final Part part;
+
+	// only accessed on the EDT
+	private Part.Snapshot published;
+	private int publishedModCount;
+	private int sequence;
+	private ExecutorService executor;
+	private Worker worker = new Worker();
+	private final Hit delivered = new Hit();
+	private final Runnable deliverTask = this::deliver;
+
+	// latest submitted query and latest result, guarded by lock
+	private final Object lock = new Object();
+	private boolean hasPending;
+	private boolean taskScheduled;
+	private final Query pendingQuery = new Query();
+	private Consumer<Hit> pendingCallback;
+	private Part.Snapshot pendingSnapshot;
+	private int pendingModCount;
+	private int pendingSequence;
+
+	private boolean deliveryScheduled;
+	private final Hit result = new Hit();
+	private Consumer<Hit> resultCallback;
+	private int resultModCount;
+	private int resultSequence;
+
+	public HitTester(Part part)
+	{
+		Validate.notNull(part, "part must not be NULL");
+		this.part = part;
+	}
+
+	/**
+	 * Runs a query on the current thread.
+	 *
+	 * @param part
+	 * @param query
+	 * @param result hit to store the result in
+	 * @return the result
+	 */
+	public static Hit test(Part part,Query query,Hit result)
+	{
+		final boolean inside = query.isSet( Query.INSIDE ) && part.outline.contains( query.insideX , query.insideY );
+		if ( query.isSet( Query.POINTS ) )
+		{
+			final int point = part.outline.findNearestPoint( query.x , query.y , query.radius , query.ignoredPoint );
+			if ( point != -1 ) {
+				return result.set( Hit.POINT , point , inside );
+			}
+		}
+		if ( query.isSet( Query.LINES ) )
+		{
+			final int line = part.outline.findNearestLine( query.x , query.y , query.radius );
+			if ( line != -1 ) {
+				return result.set( Hit.LINE , line , inside );
+			}
+		}
+		if ( query.isSet( Query.PORTS ) )
+		{
+			final int port = part.findNearestPort( query.x , query.y , query.radius );
+			if ( port != -1 ) {
+				return result.set( Hit.PORT , port , inside );
+			}
+		}
+		return result.set( Hit.NONE , -1 , inside );
+	}
+
+	/**
+	 * Runs a query on the background thread.
+	 *
+	 * @param query query to run, gets copied so callers may reuse it right away
+	 * @param callback invoked on the EDT, unless the result is stale by the time it arrives.
+	 * The hit passed to it gets reused and must not be kept.
+	 */
+	public void submit(Query query,Consumer<Hit> callback)
+	{
+		Validate.notNull(query, "query must not be NULL");
+		Validate.notNull(callback, "callback must not be NULL");
+
+		final int modCount = part.getModificationCount();
+		if ( published == null || publishedModCount != modCount )
+		{
+			published = part.snapshot();
+			publishedModCount = modCount;
+		}
+		final boolean schedule;
+		synchronized( lock )
+		{
+			pendingQuery.set( query );
+			pendingCallback = callback;
+			pendingSnapshot = published;
+			pendingModCount = modCount;
+			pendingSequence = ++sequence;
+			hasPending = true;
+			// a task that is already scheduled picks up this query
+			schedule = ! taskScheduled;
+			taskScheduled = true;
+		}
+		if ( schedule ) {
+			getExecutor().execute( worker );
+		}
+	}
+
+	/**
+	 * Drops the results of all queries submitted so far.
+	 */
+	public void cancel()
+	{
+		sequence++;
+		synchronized( lock )
+		{
+			hasPending = false;
+			pendingCallback = null;
+			pendingSnapshot = null;
+		}
+	}
+
+	/**
+	 * Cancels all queries and stops the background thread.
+	 *
+	 * Submitting another query starts a new one.
+	 */
+	public void dispose()
+	{
+		cancel();
+		if ( executor != null )
+		{
+			executor.shutdownNow();
+			executor = null;
+			published = null;
+			synchronized( lock ) {
+				taskScheduled = false;
+			}
+			// a task that is still running keeps using the old worker and its copy of the part
+			worker = new Worker();
+		}
+	}
+
+	private ExecutorService getExecutor()
+	{
+		if ( executor == null )
+		{
+			executor = Executors.newSingleThreadExecutor( r ->
+			{
+				final Thread thread = new Thread( r , "hit-testing" );
+				thread.setDaemon( true );
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Processes pending queries on the background thread.
+	 */
+	private final class Worker implements Runnable
+	{
+		private final Part copy = new Part();
+		private Part.Snapshot restored;
+		private final Query query = new Query();
+		private final Hit hit = new Hit();
+
+		@Override
+		public void run()
+		{
+			while ( true )
+			{
+				final Part.Snapshot snapshot;
+				final Consumer<Hit> callback;
+				final int modCount;
+				final int seq;
+				synchronized( lock )
+				{
+					if ( ! hasPending )
+					{
+						taskScheduled = false;
+						return;
+					}
+					hasPending = false;
+					query.set( pendingQuery );
+					snapshot = pendingSnapshot;
+					callback = pendingCallback;
+					modCount = pendingModCount;
+					seq = pendingSequence;
+					pendingSnapshot = null;
+					pendingCallback = null;
+				}
+
+				if ( restored != snapshot )
+				{
+					copy.restore( snapshot );
+					restored = snapshot;
+				}
+				test( copy , query , hit );
+
+				final boolean schedule;
+				synchronized( lock )
+				{
+					result.set( hit );
+					resultCallback = callback;
+					resultModCount = modCount;
+					resultSequence = seq;
+					schedule = ! deliveryScheduled;
+					deliveryScheduled = true;
+				}
+				if ( schedule ) {
+					SwingUtilities.invokeLater( deliverTask );
+				}
+			}
+		}
+	}
+
+	private void deliver()
+	{
+		final Consumer<Hit> callback;
+		final int modCount;
+		final int seq;
+		synchronized( lock )
+		{
+			deliveryScheduled = false;
+			delivered.set( result );
+			callback = resultCallback;
+			modCount = resultModCount;
+			seq = resultSequence;
+			resultCallback = null;
+		}
+		if ( callback != null && seq == sequence && modCount == part.getModificationCount() ) {
+			callback.accept( delivered );
+		}
+	}
+}
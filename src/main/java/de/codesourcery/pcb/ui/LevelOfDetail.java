@@ -0,0 +1,381 @@
+package de.codesourcery.pcb.ui;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Outline;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.Port;
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.LongIntHashMap;
+import de.codesourcery.pcb.utils.SpatialGrid;
+
+/**
+ * Simplified versions of a part's outline and ports, for rendering at small scales.
+ *
+ * Each level snaps all coordinates to the centers of a grid whose cells are at most one pixel wide.
+ * Lines that end up within a single cell get dropped, lines and ports that end up in the same
+ * cells get merged. For outlines made up of many short segments (curves, dense footprints)
+ * the number of elements on a level depends on the number of pixels the part covers rather
+ * than on the number of lines.
+ *
+ * Levels are built on first use. Changes confined to an area (dragging points or lines) are applied
+ * to existing levels through {@link #update(int, float, float, float, float)}, any other change
+ * discards them.
+ */
+final class LevelOfDetail
+{
+	// the part itself gets rendered at scales above this
+	public static final float MAX_SCALE = 0.5f;
+
+	private final Part part;
+
+	// level k uses cells of size 2^k
+	private final Level[] levels = new Level[ 31 ];
+	private int modCount;
+	private int lineCount;
+
+	private final IntList touchedLines = new IntList();
+
+	public LevelOfDetail(Part part)
+	{
+		Validate.notNull(part, "part must not be NULL");
+		this.part = part;
+		sync();
+	}
+
+	/**
+	 * Returns the level to render at a given scale.
+	 *
+	 * @param scale
+	 * @return level or <code>null</code> if the part itself should be rendered
+	 */
+	public Level getLevel(float scale)
+	{
+		if ( scale > MAX_SCALE ) {
+			return null;
+		}
+		if ( modCount != part.getModificationCount() ) {
+			discard();
+		}
+		// largest power of two not exceeding the size of a pixel
+		final int pixelSize = (int) Math.min( 1 / scale , 1 << ( levels.length - 1 ) );
+		final int k = 31 - Integer.numberOfLeadingZeros( pixelSize );
+		if ( levels[k] == null ) {
+			levels[k] = new Level( part , 1 << k );
+		}
+		return levels[k];
+	}
+
+	/**
+	 * Updates existing levels after the part has been changed within an area.
+	 *
+	 * Only the lines inside the area get merged again. If the levels are not up to date with
+	 * the part as it was before the change or lines got added or removed, they are discarded instead.
+	 *
+	 * @param previousModCount modification count of the part before the change
+	 */
+	public void update(int previousModCount,float minX,float minY,float maxX,float maxY)
+	{
+		if ( modCount == part.getModificationCount() ) {
+			return;
+		}
+		if ( modCount != previousModCount || lineCount != part.outline.getLineCount() )
+		{
+			discard();
+			return;
+		}
+		touchedLines.clear();
+		part.outline.findLines( minX , minY , maxX , maxY , touchedLines );
+		for ( Level level : levels )
+		{
+			if ( level != null ) {
+				level.update( part , touchedLines );
+			}
+		}
+		sync();
+	}
+
+	private void discard()
+	{
+		Arrays.fill( levels , null );
+		sync();
+	}
+
+	private void sync()
+	{
+		modCount = part.getModificationCount();
+		lineCount = part.outline.getLineCount();
+	}
+
+	/**
+	 * A simplified version of a part.
+	 */
+	static final class Level
+	{
+		// size of the cells of the index over simplified lines, in pixels
+		private static final int INDEX_CELL_SIZE = 64;
+
+		public final float cellSize;
+
+		// x0,y0,x1,y1 per simplified line
+		private float[] lines = new float[ 64 ];
+		// start and end cell of each simplified line, start cell <= end cell
+		private long[] cells = new long[ 32 ];
+		// number of the part's lines merged into each simplified line, 0 for unused slots
+		private int[] counts = new int[ 16 ];
+		private int slotCount;
+		private final IntList freeSlots = new IntList();
+
+		private final LongIntHashMap lineLookup;
+		private final SpatialGrid lineIndex;
+		private final IntList candidates = new IntList();
+
+		// simplified line each of the part's lines got merged into, -1 for lines within a single cell
+		private int[] merged;
+
+		// x,y per port
+		private float[] ports = new float[ 16 ];
+		private int portCount;
+		private final LongIntHashMap portLookup = new LongIntHashMap();
+
+		// for rendering the lines within an area
+		private final IntList visibleLines = new IntList();
+		private final Path2D.Float path = new Path2D.Float();
+
+		public Level(Part part,float cellSize)
+		{
+			this.cellSize = cellSize;
+			this.lineIndex = new SpatialGrid( cellSize * INDEX_CELL_SIZE );
+
+			final Outline outline = part.outline;
+			final int count = outline.getLineCount();
+			lineLookup = new LongIntHashMap( count );
+			merged = new int[ count ];
+			for ( int i = 0 ; i < count ; i++ ) {
+				merged[i] = addLine( outline , i );
+			}
+			updatePorts( part );
+		}
+
+		/**
+		 * Merges some of the part's lines again, after they have been moved.
+		 */
+		void update(Part part,IntList lineIndices)
+		{
+			for ( int i = 0 , len = lineIndices.size() ; i < len ; i++ )
+			{
+				final int lineIdx = lineIndices.get( i );
+				removeLine( merged[ lineIdx ] );
+				merged[ lineIdx ] = addLine( part.outline , lineIdx );
+			}
+			updatePorts( part );
+		}
+
+		/**
+		 * @return slot of the simplified line the line got merged into, -1 if it got dropped
+		 */
+		private int addLine(Outline outline,int lineIdx)
+		{
+			final int start = outline.startIndex( lineIdx );
+			final int end = outline.endIndex( lineIdx );
+			final int cx0 = cell( outline.x( start ) );
+			final int cy0 = cell( outline.y( start ) );
+			final int cx1 = cell( outline.x( end ) );
+			final int cy1 = cell( outline.y( end ) );
+			if ( cx0 == cx1 && cy0 == cy1 ) {
+				return -1;
+			}
+			final long k0 = key( cx0 , cy0 );
+			final long k1 = key( cx1 , cy1 );
+			final long first = Math.min( k0 , k1 );
+			final long second = Math.max( k0 , k1 );
+
+			// hash collisions just cause a duplicate line
+			final long hash = hash( first , second );
+			final int existing = lineLookup.get( hash );
+			if ( existing != -1 && cells[ 2 * existing ] == first && cells[ 2 * existing + 1 ] == second )
+			{
+				counts[ existing ]++;
+				return existing;
+			}
+
+			final int slot;
+			if ( ! freeSlots.isEmpty() ) {
+				slot = freeSlots.removeLast();
+			}
+			else
+			{
+				if ( slotCount == counts.length )
+				{
+					lines = Arrays.copyOf( lines , lines.length * 2 );
+					cells = Arrays.copyOf( cells , cells.length * 2 );
+					counts = Arrays.copyOf( counts , counts.length * 2 );
+				}
+				slot = slotCount++;
+			}
+			if ( existing == -1 ) {
+				lineLookup.put( hash , slot );
+			}
+			cells[ 2 * slot ] = first;
+			cells[ 2 * slot + 1 ] = second;
+			counts[ slot ] = 1;
+			final int offset = 4 * slot;
+			lines[ offset     ] = center( cx0 );
+			lines[ offset + 1 ] = center( cy0 );
+			lines[ offset + 2 ] = center( cx1 );
+			lines[ offset + 3 ] = center( cy1 );
+			lineIndex.add( slot , lines[ offset ] , lines[ offset + 1 ] , lines[ offset + 2 ] , lines[ offset + 3 ] );
+			return slot;
+		}
+
+		private void removeLine(int slot)
+		{
+			if ( slot == -1 || --counts[ slot ] > 0 ) {
+				return;
+			}
+			final int offset = 4 * slot;
+			lineIndex.remove( slot , lines[ offset ] , lines[ offset + 1 ] , lines[ offset + 2 ] , lines[ offset + 3 ] );
+			final long hash = hash( cells[ 2 * slot ] , cells[ 2 * slot + 1 ] );
+			if ( lineLookup.get( hash ) == slot ) {
+				lineLookup.remove( hash );
+			}
+			freeSlots.add( slot );
+		}
+
+		private void updatePorts(Part part)
+		{
+			portCount = 0;
+			portLookup.clear();
+			part.visitPorts( this::addPort );
+		}
+
+		private void addPort(Port port)
+		{
+			final int cx = cell( port.center.x );
+			final int cy = cell( port.center.y );
+			if ( portLookup.putIfAbsent( key( cx , cy ) , portCount ) != -1 ) {
+				return;
+			}
+			if ( 2 * portCount == ports.length ) {
+				ports = Arrays.copyOf( ports , ports.length * 2 );
+			}
+			ports[ 2 * portCount     ] = center( cx );
+			ports[ 2 * portCount + 1 ] = center( cy );
+			portCount++;
+		}
+
+		private int cell(float value) {
+			return (int) Math.floor( value / cellSize );
+		}
+
+		private float center(int cell) {
+			return ( cell + 0.5f ) * cellSize;
+		}
+
+		private static long key(int a,int b) {
+			return ((long) a << 32) | ( b & 0xffffffffL );
+		}
+
+		private static long hash(long first,long second) {
+			return first * 0x9E3779B97F4A7C15L + second;
+		}
+
+		/**
+		 * Looks up all simplified lines whose bounding box overlaps a rectangle.
+		 *
+		 * @param result list to append line indices to, not cleared by this method
+		 */
+		public void findLines(float minX,float minY,float maxX,float maxY,IntList result)
+		{
+			if ( lineIndex.getCellCount( minX , minY , maxX , maxY ) >= slotCount )
+			{
+				// rectangle covers more cells than there are lines
+				for ( int i = 0 ; i < slotCount ; i++ )
+				{
+					if ( counts[i] > 0 && overlaps( i , minX , minY , maxX , maxY ) ) {
+						result.add( i );
+					}
+				}
+				return;
+			}
+
+			candidates.clear();
+			lineIndex.query( minX , minY , maxX , maxY , candidates );
+			// lines get reported once per cell, sorting puts duplicates next to each other
+			candidates.sort();
+			int previous = -1;
+			for ( int i = 0 , len = candidates.size() ; i < len ; i++ )
+			{
+				final int lineIdx = candidates.get( i );
+				if ( lineIdx != previous )
+				{
+					previous = lineIdx;
+					if ( overlaps( lineIdx , minX , minY , maxX , maxY ) ) {
+						result.add( lineIdx );
+					}
+				}
+			}
+		}
+
+		private boolean overlaps(int lineIdx,float minX,float minY,float maxX,float maxY)
+		{
+			final float x0 = startX( lineIdx );
+			final float y0 = startY( lineIdx );
+			final float x1 = endX( lineIdx );
+			final float y1 = endY( lineIdx );
+			return Math.min( x0 , x1 ) <= maxX && Math.max( x0 , x1 ) >= minX &&
+				   Math.min( y0 , y1 ) <= maxY && Math.max( y0 , y1 ) >= minY;
+		}
+
+		public float startX(int lineIdx) {
+			return lines[ 4 * lineIdx ];
+		}
+
+		public float startY(int lineIdx) {
+			return lines[ 4 * lineIdx + 1 ];
+		}
+
+		public float endX(int lineIdx) {
+			return lines[ 4 * lineIdx + 2 ];
+		}
+
+		public float endY(int lineIdx) {
+			return lines[ 4 * lineIdx + 3 ];
+		}
+
+		/**
+		 * Renders all lines within a rectangle as a single path.
+		 *
+		 * Callers are expected to set up the model-to-screen transform and stroke on the graphics context.
+		 */
+		public void render(Graphics2D g,float minX,float minY,float maxX,float maxY)
+		{
+			visibleLines.clear();
+			findLines( minX , minY , maxX , maxY , visibleLines );
+			path.reset();
+			for ( int i = 0 , len = visibleLines.size() ; i < len ; i++ )
+			{
+				final int lineIdx = visibleLines.get( i );
+				path.moveTo( startX( lineIdx ) , startY( lineIdx ) );
+				path.lineTo( endX( lineIdx ) , endY( lineIdx ) );
+			}
+			g.draw( path );
+		}
+
+		public int getPortCount() {
+			return portCount;
+		}
+
+		public float portX(int portIdx) {
+			return ports[ 2 * portIdx ];
+		}
+
+		public float portY(int portIdx) {
+			return ports[ 2 * portIdx + 1 ];
+		}
+	}
+}
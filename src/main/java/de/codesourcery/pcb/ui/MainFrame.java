@@ -44,11 +44,14 @@ public class MainFrame extends JFrame
 		final JCheckBox snapToGrid = new JCheckBox("Snap to grid?");
 		final JCheckBox onlyRightAngles = new JCheckBox("Only right angles?");
 		final JCheckBox showGuide = new JCheckBox("Show guide?");
+		final JCheckBox asyncHitTesting = new JCheckBox("Hit-test in background?");
+		final JButton resetView = new JButton("Reset view");
 		
 		System.out.println("Only right angles: "+editor.isOnlyRightAngles());
 		onlyRightAngles.setSelected( editor.isOnlyRightAngles() );
 		showGuide.setSelected( editor.isShowGuide() );
 		snapToGrid.setSelected( editor.isSnapToGrid());
+		asyncHitTesting.setSelected( editor.isAsyncHitTesting() );
 		
 		toolbar.setFocusable( false );
 		toolbar.setRequestFocusEnabled( false );		
@@ -56,7 +59,7 @@ public class MainFrame extends JFrame
 		final List<JComponent> toolbarItems = new ArrayList<>();
 		
 		toolbarItems.addAll( Arrays.asList( moveButton , drawButton , selectButton, addPortButton ) );
-		toolbarItems.addAll( Arrays.asList( snapToGrid , onlyRightAngles , showGuide ) );
+		toolbarItems.addAll( Arrays.asList( snapToGrid , onlyRightAngles , showGuide , asyncHitTesting , resetView ) );
 		
 		toolbarItems.forEach( button -> button.setFocusable( false ) );
 		toolbarItems.forEach( button -> button.setRequestFocusEnabled( false ) );
@@ -83,9 +86,11 @@ public class MainFrame extends JFrame
 		activateButton.accept( selectedButton );
 		
 		showGuide.addActionListener( ev -> editor.setShowGuide( showGuide.isSelected() ) );
+		resetView.addActionListener( ev -> editor.resetView() );
 		
 		onlyRightAngles.addActionListener( ev -> editor.setOnlyRightAngles( onlyRightAngles.isSelected() ) );
 		snapToGrid.addActionListener( ev -> editor.setSnapToGrid( snapToGrid.isSelected() ) );
+		asyncHitTesting.addActionListener( ev -> editor.setAsyncHitTesting( asyncHitTesting.isSelected() ) );
 		
 		moveButton.addActionListener( ev -> 
 		{
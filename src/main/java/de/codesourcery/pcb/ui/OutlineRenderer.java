@@ -0,0 +1,137 @@
+package de.codesourcery.pcb.ui;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+
+import de.codesourcery.pcb.model.Outline;
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.LongIntHashMap;
+
+/**
+ * Renders an outline as a few {@link Path2D} shapes instead of one draw call per line.
+ *
+ * Lines are grouped into square tiles (by their start point), each tile becomes a single
+ * path in model coordinates that is cached until the outline changes. Rendering draws every
+ * tile overlapping the visible area with one call, so Java2D only sets up its pipeline once per tile
+ * and coordinates keep their sub-pixel precision.
+ *
+ * Callers are expected to set up the model-to-screen transform and stroke on the graphics context.
+ */
+final class OutlineRenderer
+{
+	// model units
+	private static final float TILE_SIZE = 512;
+
+	private final Outline outline;
+
+	private final List<Tile> tiles = new ArrayList<>();
+	private int modCount;
+	private boolean valid;
+
+	// for rendering arbitrary subsets of lines
+	private final Path2D.Float scratchPath = new Path2D.Float();
+
+	private static final class Tile
+	{
+		public final Path2D.Float path = new Path2D.Float();
+
+		// bounds of all lines in this tile
+		public float minX = Float.POSITIVE_INFINITY;
+		public float minY = Float.POSITIVE_INFINITY;
+		public float maxX = Float.NEGATIVE_INFINITY;
+		public float maxY = Float.NEGATIVE_INFINITY;
+
+		public void add(float x0,float y0,float x1,float y1)
+		{
+			path.moveTo( x0 , y0 );
+			path.lineTo( x1 , y1 );
+			minX = Math.min( minX , Math.min( x0 , x1 ) );
+			minY = Math.min( minY , Math.min( y0 , y1 ) );
+			maxX = Math.max( maxX , Math.max( x0 , x1 ) );
+			maxY = Math.max( maxY , Math.max( y0 , y1 ) );
+		}
+
+		public boolean overlaps(float minX,float minY,float maxX,float maxY)
+		{
+			return this.minX <= maxX && this.maxX >= minX &&
+					this.minY <= maxY && this.maxY >= minY;
+		}
+	}
+
+	public OutlineRenderer(Outline outline)
+	{
+		Validate.notNull(outline, "outline must not be NULL");
+		this.outline = outline;
+	}
+
+	/**
+	 * Renders all lines within a rectangle.
+	 *
+	 * Lines outside of the rectangle may get rendered as well.
+	 */
+	public void render(Graphics2D g,float minX,float minY,float maxX,float maxY)
+	{
+		if ( ! valid || modCount != outline.getModificationCount() ) {
+			rebuild();
+		}
+		for ( int i = 0 , len = tiles.size() ; i < len ; i++ )
+		{
+			final Tile tile = tiles.get( i );
+			if ( tile.overlaps( minX , minY , maxX , maxY ) ) {
+				g.draw( tile.path );
+			}
+		}
+	}
+
+	/**
+	 * Renders the given lines.
+	 *
+	 * Unlike {@link #render(Graphics2D, float, float, float, float)}, this does not use (or update) cached paths
+	 * and is meant for small sets of lines that changed since the tiles were built.
+	 */
+	public void render(Graphics2D g,IntList lines)
+	{
+		scratchPath.reset();
+		for ( int i = 0 , len = lines.size() ; i < len ; i++ )
+		{
+			final int start = outline.startIndex( lines.get( i ) );
+			final int end = outline.endIndex( lines.get( i ) );
+			scratchPath.moveTo( outline.x( start ) , outline.y( start ) );
+			scratchPath.lineTo( outline.x( end ) , outline.y( end ) );
+		}
+		g.draw( scratchPath );
+	}
+
+	private void rebuild()
+	{
+		tiles.clear();
+		final LongIntHashMap tileLookup = new LongIntHashMap();
+		for ( int i = 0 , len = outline.getLineCount() ; i < len ; i++ )
+		{
+			final int start = outline.startIndex( i );
+			final int end = outline.endIndex( i );
+			final float x0 = outline.x( start );
+			final float y0 = outline.y( start );
+
+			final long key = ((long) tile( x0 ) << 32) | ( tile( y0 ) & 0xffffffffL );
+			int tileIdx = tileLookup.get( key );
+			if ( tileIdx == -1 )
+			{
+				tileIdx = tiles.size();
+				tiles.add( new Tile() );
+				tileLookup.put( key , tileIdx );
+			}
+			tiles.get( tileIdx ).add( x0 , y0 , outline.x( end ) , outline.y( end ) );
+		}
+		modCount = outline.getModificationCount();
+		valid = true;
+	}
+
+	private static int tile(float value) {
+		return (int) Math.floor( value / TILE_SIZE );
+	}
+}
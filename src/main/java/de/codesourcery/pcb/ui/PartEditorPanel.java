@@ -2,19 +2,24 @@ package de.codesourcery.pcb.ui;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.lang.reflect.Field;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
 
+import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.Validate;
 
 import com.badlogic.gdx.math.Vector2;
 
 import de.codesourcery.pcb.model.Line;
-import de.codesourcery.pcb.model.LineCollection.LineVisitor;
 import de.codesourcery.pcb.model.Part;
 import de.codesourcery.pcb.model.Port;
+import de.codesourcery.pcb.model.PortContainmentTracker;
+import de.codesourcery.pcb.utils.IntList;
+import de.codesourcery.pcb.utils.UndoHistory;
 
 public class PartEditorPanel extends JPanel
 {
@@ -22,27 +27,92 @@ public class PartEditorPanel extends JPanel
 	
 	public static final int PORT_RADIUS = 10; // pixels
 	public static final float PORT_CROSSHAIR_SIZE = 1.5f;
+	
+	// size of ports when zoomed out far enough to use a simplified version of the part
+	private static final int PORT_POINT_SIZE = 3; // pixels
+	
+	public static final int MAX_UNDO_STEPS = 500;
+	
+	// zoom factor per mouse wheel notch
+	private static final float ZOOM_STEP = 1.1f;
+	
+	private static final int SELECTED_POINT_RADIUS = 5; // pixels
 
 	private final Part part;
+	
+	private final Viewport viewport = new Viewport();
+	private final LevelOfDetail levelOfDetail;
+	private final OutlineRenderer outlineRenderer;
+	private final AffineTransform modelTransform = new AffineTransform();
+	
+	// thinnest line possible, no matter what transform is used
+	private static final Stroke MODEL_STROKE = new BasicStroke( 0 );
+	
+	// panning the view with the middle mouse button
+	private boolean isPanning;
+	
+	// undo/redo
+	private final UndoHistory<Part.Snapshot> history = new UndoHistory<>( MAX_UNDO_STEPS );
+	private Part.Transaction transaction; // edit currently in progress, NULL if none
 
 	// editing
 	private Highlight highlight;
 	
+	// model units
 	private int gridX = 15;
 	private int gridY = 15;
 	
 	private boolean showGuide = true;
 	private boolean onlyRightAngles = true;
 	private boolean snapToGrid=true;
+	
+	// hover queries run on a background thread if enabled
+	private final HitTester hitTester;
+	private boolean asyncHitTesting;
+	// reused by all hit tests on the EDT
+	private final HitTester.Query hitQuery = new HitTester.Query();
+	private final HitTester.Hit hitResult = new HitTester.Hit();
+	private final Consumer<HitTester.Hit> hoverCallback = this::highlightHit;
+	// hit the current highlight was created from, as long as it has not been replaced by other means
+	private final HitTester.Hit highlightedHit = new HitTester.Hit();
+	private Highlight highlightFromHit;
+	private int highlightedModCount;
 
 	public EditorMode currentMode = EditorMode.SELECT;	
 	private EditorBehaviour modeImpl = getBehaviour(currentMode);
 
-	private final Vector2 unalignedLastMousePosition = new Vector2();
-	private final Vector2 alignedLastMousePosition = new Vector2();
+	// updated in place by every mouse event
+	private final PointerState pointer = new PointerState();
+	
+	// mouse motion is processed at most once per frame, using the latest position
+	private static final int FRAME_MILLIS = 16;
+	private static final int MOTION_NONE = 0;
+	private static final int MOTION_MOVED = 1;
+	private static final int MOTION_DRAGGED = 2;
+	
+	private final Timer frameTimer = new Timer( FRAME_MILLIS , ev -> onFrame() );
+	private int pendingMotion = MOTION_NONE;
+	private int pendingX;
+	private int pendingY;
+	private int pendingModifiers;
 	
 	private Selection currentSelection;
 	
+	// outline and ports, rendered only when they changed
+	private BufferedImage staticLayer;
+	private int staticLayerModCount;
+	private int staticLayerViewportModCount;
+	private final IntList visibleLines = new IntList();
+	private final Rectangle staticLayerArea = new Rectangle();
+	
+	// changes made through geometryChanged() since the static layer was rendered
+	private final DirtyRegion staticLayerDirty = new DirtyRegion( viewport );
+	private int staticLayerDirtyModCount;
+	
+	// scratch regions for handling a single input event 
+	private final DirtyRegion dirty = new DirtyRegion( viewport );
+	private final DirtyRegion highlightDirty = new DirtyRegion( viewport );
+	
 	private final static float dash1[] = {3.0f};
 	private static final Stroke GUIDE_STROKE =  new BasicStroke(1.0f,
             BasicStroke.CAP_BUTT,
@@ -62,14 +132,126 @@ public class PartEditorPanel extends JPanel
 	{
 		public boolean move(float dx,float dy);
 
-		public Vector2 getIgnoredPoint();
+		/**
+		 * Returns the index of the outline point that should not be considered when snapping.
+		 * 
+		 * @return point index or -1
+		 */
+		public int getIgnoredPoint();
+		
+		/**
+		 * Adds the screen area affected by moving this item.
+		 */
+		public void addBounds(DirtyRegion region);
+		
+		/**
+		 * Invoked when the item is released after it has actually been moved.
+		 */
+		public void dropped();
 	}
 
 	interface Highlight 
 	{
-		public void render(Graphics2D gfx);
+		public void render(Graphics2D gfx,Viewport viewport);
 
 		public boolean isSame(Highlight other);
+		
+		public void addBounds(DirtyRegion region);
+	}
+	
+	/**
+	 * Bounding box of screen areas that need to be repainted.
+	 */
+	protected static final class DirtyRegion 
+	{
+		private final Viewport viewport;
+		
+		// screen coordinates, inclusive
+		private int minX;
+		private int minY;
+		private int maxX;
+		private int maxY;
+		private boolean empty = true;
+		
+		public DirtyRegion(Viewport viewport) {
+			this.viewport = viewport;
+		}
+		
+		/**
+		 * Adds a rectangle in model coordinates.
+		 */
+		public void add(float x0,float y0,float x1,float y1) {
+			addScreen( viewport.toScreenX( x0 ) , viewport.toScreenY( y0 ) , viewport.toScreenX( x1 ) , viewport.toScreenY( y1 ) );
+		}
+		
+		/**
+		 * Adds a rectangle in screen coordinates.
+		 */
+		public void addScreen(float x0,float y0,float x1,float y1) 
+		{
+			// grow by a pixel to account for rounding and line width
+			final int ix0 = (int) Math.floor( Math.min( x0 , x1 ) ) - 1;
+			final int iy0 = (int) Math.floor( Math.min( y0 , y1 ) ) - 1;
+			final int ix1 = (int) Math.ceil( Math.max( x0 , x1 ) ) + 1;
+			final int iy1 = (int) Math.ceil( Math.max( y0 , y1 ) ) + 1;
+			if ( empty ) 
+			{
+				minX = ix0; minY = iy0;
+				maxX = ix1; maxY = iy1;
+				empty = false;
+			} 
+			else 
+			{
+				minX = Math.min( minX , ix0 ); minY = Math.min( minY , iy0 );
+				maxX = Math.max( maxX , ix1 ); maxY = Math.max( maxY , iy1 );
+			}
+		}
+		
+		public void add(DirtyRegion other) 
+		{
+			if ( ! other.empty ) {
+				addScreen( other.minX + 1 , other.minY + 1 , other.maxX - 1 , other.maxY - 1 );
+			}
+		}
+		
+		/**
+		 * Adds a circle.
+		 * 
+		 * @param x center in model coordinates
+		 * @param y center in model coordinates
+		 * @param radius radius in pixels
+		 */
+		public void addCircle(float x,float y,float radius) 
+		{
+			final float sx = viewport.toScreenX( x );
+			final float sy = viewport.toScreenY( y );
+			addScreen( sx - radius , sy - radius , sx + radius , sy + radius );
+		}
+		
+		public boolean isEmpty() {
+			return empty;
+		}
+		
+		public void clear() {
+			empty = true;
+		}
+		
+		public boolean intersects(Rectangle r) 
+		{
+			return ! empty && minX < r.x + r.width && r.x <= maxX && 
+					minY < r.y + r.height && r.y <= maxY; 
+		}
+		
+		public void getBounds(Rectangle result) {
+			result.setBounds( minX , minY , maxX - minX + 1 , maxY - minY + 1 );
+		}
+		
+		public void repaint(JComponent component) 
+		{
+			if ( ! empty ) {
+				component.repaint( minX , minY , maxX - minX + 1 , maxY - minY + 1 );
+			}
+		}
 	}
 	
 	protected static final class PortHighlight implements Highlight 
@@ -82,9 +264,9 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public void render(Graphics2D gfx) {
+		public void render(Graphics2D gfx,Viewport viewport) {
 			gfx.setColor(Color.RED);
-			renderPort( port , gfx );
+			renderPort( port , viewport , gfx );
 		}
 
 		@Override
@@ -92,6 +274,11 @@ public class PartEditorPanel extends JPanel
 		{
 			return other instanceof PortHighlight && this.port.center.equals( ((PortHighlight) other).port.center );
 		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			addPortBounds( port , region );
+		}
 	}
 	
 	protected final class PortDraggable implements Draggable 
@@ -110,15 +297,24 @@ public class PartEditorPanel extends JPanel
 			tmp.set( port.center.x + dx , port.center.y + dy );
 			
 			if ( part.outline.contains( tmp ) ) {
-				port.center.add(dx,dy);
+				part.movePort( port , dx , dy );
 				return true;
 			}
 			return false;
 		}
 
 		@Override
-		public Vector2 getIgnoredPoint() {
-			return port.center;
+		public int getIgnoredPoint() {
+			return -1;
+		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			addPortBounds( port , region );
+		}
+		
+		@Override
+		public void dropped() {
 		}
 	}
 
@@ -174,8 +370,17 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public Vector2 getIgnoredPoint() {
-			return null;
+		public int getIgnoredPoint() {
+			return -1;
+		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			selection.addBounds( region );
+		}
+		
+		@Override
+		public void dropped() {
 		}
 	}
 	
@@ -194,7 +399,12 @@ public class PartEditorPanel extends JPanel
 			return true;
 		}
 
-		public DraggableCorner getCorner(float x,float y) 
+		/**
+		 * Returns the corner closest to a location.
+		 * 
+		 * @return corner or <code>null</code> if no corner is within the radius
+		 */
+		public DraggableCorner getCorner(float x,float y,float radius) 
 		{
 			Corner corner = Corner.TOP_LEFT;
 			float minDist,d; 
@@ -212,7 +422,7 @@ public class PartEditorPanel extends JPanel
 			if ( d < minDist ) {
 				minDist = d ; corner = Corner.BOTTOM_RIGHT;
 			}			
-			return minDist < SNAP_RADIUS ? new DraggableCorner(this,corner) : null;
+			return minDist < radius ? new DraggableCorner(this,corner) : null;
 		}
 
 		private Vector2 getCorner(Corner corner) 
@@ -238,8 +448,20 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public Vector2 getIgnoredPoint() {
-			return null;
+		public int getIgnoredPoint() {
+			return -1;
+		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) 
+		{
+			// selected points are highlighted with circles that may extend beyond the selection
+			region.addCircle( topLeft.x , topLeft.y , SELECTED_POINT_RADIUS );
+			region.addCircle( bottomRight.x , bottomRight.y , SELECTED_POINT_RADIUS );
+		}
+		
+		@Override
+		public void dropped() {
 		}
 
 		public boolean contains(Vector2 p) 
@@ -262,59 +484,94 @@ public class PartEditorPanel extends JPanel
 
 	protected final class PointDraggable implements Draggable 
 	{
-		private final Vector2 point;
+		private final int pointIdx;
+		private final PortContainmentTracker tracker;
+		private final IntList lines = new IntList();
 
-		public PointDraggable(Vector2 point) {
-			Validate.notNull(point, "point must not be NULL");
-			this.point = point;
+		public PointDraggable(int pointIdx) {
+			this.pointIdx = pointIdx;
+			this.tracker = new PortContainmentTracker( part , pointIdx );
+			part.outline.findLines( pointIdx , lines );
 		}
 
 		@Override
 		public boolean move(float dx, float dy) 
 		{
-			this.point.add( dx, dy );
+			part.outline.translatePoint( pointIdx , dx, dy );
 			
-			if ( part.hasPorts() && ! part.allPortsWithinOutline() ) 
+			if ( ! tracker.update() ) 
 			{
-				this.point.add( -dx, -dy );
+				part.outline.translatePoint( pointIdx , -dx, -dy );
+				tracker.update();
 				return false;
 			}
 			return true;
 		}
 
 		@Override
-		public Vector2 getIgnoredPoint() {
-			return point;
+		public int getIgnoredPoint() {
+			return pointIdx;
+		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) 
+		{
+			addLineBounds( lines , region );
+			region.addCircle( part.outline.x( pointIdx ) , part.outline.y( pointIdx ) , SELECTED_POINT_RADIUS );
+		}
+		
+		@Override
+		public void dropped() {
+			part.outline.mergePoint( pointIdx );
 		}
 	}
 
 	protected final class LineDraggable implements Draggable 
 	{
-		private final Line line;
+		private final int lineIdx;
+		private final int startIdx;
+		private final int endIdx;
+		private final PortContainmentTracker tracker;
+		private final IntList lines = new IntList(); // lines connected to either end of the dragged line
 
-		public LineDraggable(Line line) {
-			Validate.notNull(line, "line must not be NULL");
-			this.line = line;
+		public LineDraggable(int lineIdx) {
+			this.lineIdx = lineIdx;
+			this.startIdx = part.outline.startIndex( lineIdx );
+			this.endIdx = part.outline.endIndex( lineIdx );
+			this.tracker = new PortContainmentTracker( part , startIdx , endIdx );
+			part.outline.findLines( startIdx , lines );
+			part.outline.findLines( endIdx , lines );
 		}
 
 		@Override
 		public boolean move(float dx, float dy) 
 		{
-			this.line.start.add( dx, dy );
-			this.line.end.add( dx, dy );
+			part.outline.translateLine( lineIdx , dx, dy );
 			
-			if ( part.hasPorts() && ! part.allPortsWithinOutline() ) 
+			if ( ! tracker.update() ) 
 			{
-				this.line.start.add( -dx, -dy );
-				this.line.end.add( -dx, -dy );
+				part.outline.translateLine( lineIdx , -dx, -dy );
+				tracker.update();
 				return false;
 			}
 			return true;
 		}
 
 		@Override
-		public Vector2 getIgnoredPoint() {
-			return null;
+		public int getIgnoredPoint() {
+			return -1;
+		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			addLineBounds( lines , region );
+		}
+		
+		@Override
+		public void dropped() 
+		{
+			part.outline.mergePoint( startIdx );
+			part.outline.mergePoint( endIdx );
 		}
 	}	
 
@@ -328,9 +585,9 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public void render(Graphics2D gfx) 
+		public void render(Graphics2D gfx,Viewport viewport) 
 		{
-			renderSelectedPoint(point,gfx);
+			renderSelectedPoint(point,viewport,gfx);
 		}
 
 		@Override
@@ -341,6 +598,11 @@ public class PartEditorPanel extends JPanel
 			}
 			return false;
 		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			region.addCircle( point.x , point.y , SELECTED_POINT_RADIUS );
+		}
 	}
 
 	protected static final class LineHighlight implements Highlight {
@@ -353,10 +615,10 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public void render(Graphics2D gfx) 
+		public void render(Graphics2D gfx,Viewport viewport) 
 		{
 			gfx.setColor( Color.RED );
-			gfx.drawLine( (int) line.start.x , (int) line.start.y ,(int)  line.end.x , (int) line.end.y );
+			drawLine( line.start.x , line.start.y , line.end.x , line.end.y , viewport , gfx );
 		}
 
 		@Override
@@ -370,6 +632,11 @@ public class PartEditorPanel extends JPanel
 			}
 			return false;
 		}
+		
+		@Override
+		public void addBounds(DirtyRegion region) {
+			region.add( line.start.x , line.start.y , line.end.x , line.end.y );
+		}
 	}	
 
 	interface EditorBehaviour 
@@ -382,10 +649,10 @@ public class PartEditorPanel extends JPanel
 		public boolean keyReleased(KeyEvent e);
 		
 		// mouse listener
-		public boolean mouseMoved(MouseEvent e);
-		public boolean mouseDragged(java.awt.event.MouseEvent e); 
-		public boolean mousePressed(java.awt.event.MouseEvent e); 
-		public boolean mouseReleased(java.awt.event.MouseEvent e); 		
+		public boolean mouseMoved(PointerState pointer);
+		public boolean mouseDragged(PointerState pointer); 
+		public boolean mousePressed(PointerState pointer); 
+		public boolean mouseReleased(PointerState pointer); 		
 		
 		public void assertCanActivated() throws IllegalStateException;
 		
@@ -426,71 +693,82 @@ public class PartEditorPanel extends JPanel
 		private final Vector2 previousPoint = new Vector2();
 		private boolean isDragging;
 		private Draggable draggable;
+		private final DirtyRegion bounds = new DirtyRegion( viewport );
+		private final IntList lines = new IntList();
 
 		@Override
-		public boolean mouseMoved(MouseEvent e) 
+		public boolean mouseMoved(PointerState pointer) 
 		{
 			boolean repainted=false;
 			if ( ! isDragging && currentSelection != null ) 
 			{
-				final DraggableCorner corner = currentSelection.getCorner( e.getX(), e.getY() );
+				final DraggableCorner corner = currentSelection.getCorner( pointer.alignedPosition.x , pointer.alignedPosition.y , snapRadius() );
 				repainted = setHighlight( corner == null ? null : new PointHighlight( currentSelection.getCorner( corner.corner ) ) );
 			}
 			return repainted;
 		}
 
 		@Override
-		public boolean mousePressed(MouseEvent e) 
+		public boolean mousePressed(PointerState pointer) 
 		{
-			if ( isLeftButton( e ) && ! isDragging ) 
+			if ( pointer.isLeftButton() && ! isDragging ) 
 			{
 				isDragging = true;
-				previousPoint.set( e.getX() , e.getY() );
+				previousPoint.set( pointer.alignedPosition );
 
 				if ( currentSelection != null ) 
 				{
-					final Draggable corner = currentSelection.getCorner( e.getX() , e.getY() );
+					final Draggable corner = currentSelection.getCorner( pointer.alignedPosition.x , pointer.alignedPosition.y , snapRadius() );
 					if ( corner != null ) // move corner
 					{
 						draggable = corner;
 						return false;
 					}
 					
-					if ( currentSelection.contains( new Vector2(e.getX() , e.getY() ) ) ) { // move whole selection
+					if ( currentSelection.contains( pointer.alignedPosition ) ) { // move whole selection
 						draggable = currentSelection;
 						return false;
 					}
 				}
 
+				if ( currentSelection != null ) 
+				{
+					dirty.clear();
+					currentSelection.addBounds( dirty );
+					dirty.repaint( PartEditorPanel.this );
+				}
 				currentSelection = new Selection();
-				currentSelection.topLeft.set( e.getX() , e.getY() );
-				currentSelection.bottomRight.set( e.getX() , e.getY() );
+				currentSelection.topLeft.set( pointer.alignedPosition );
+				currentSelection.bottomRight.set( pointer.alignedPosition );
 				draggable = new DraggableCorner( currentSelection , Corner.BOTTOM_RIGHT );
 			}
 			return false;
 		}
 
 		@Override
-		public boolean mouseDragged(MouseEvent e) 
+		public boolean mouseDragged(PointerState pointer) 
 		{
 			if ( isDragging ) 
 			{
-				float dx = e.getX() - previousPoint.x;
-				float dy  = e.getY() - previousPoint.y;
+				float dx = pointer.alignedPosition.x - previousPoint.x;
+				float dy  = pointer.alignedPosition.y - previousPoint.y;
 
+				dirty.clear();
+				draggable.addBounds( dirty );
 				if ( draggable.move( dx , dy ) ) {
-					previousPoint.set( e.getX() , e.getY() );
+					previousPoint.set( pointer.alignedPosition );
 				}
-				repaint();
+				draggable.addBounds( dirty );
+				dirty.repaint( PartEditorPanel.this );
 				return true;
 			}
 			return false;
 		}
 
 		@Override
-		public boolean mouseReleased(MouseEvent e) 
+		public boolean mouseReleased(PointerState pointer) 
 		{
-			if ( isLeftButton( e ) && isDragging ) 
+			if ( pointer.isLeftButton() && isDragging ) 
 			{
 				isDragging = false;
 			}
@@ -503,33 +781,42 @@ public class PartEditorPanel extends JPanel
 			if ( currentSelection == null ) {
 				return;
 			}
+			final Rectangle clip = gfx.getClipBounds();
+			bounds.clear();
+			currentSelection.addBounds( bounds );
+			if ( clip != null && ! bounds.intersects( clip ) ) {
+				return;
+			}
 			final Vector2 p0 = currentSelection.topLeft;
 			final Vector2 p1 = currentSelection.bottomRight;
 
-			float minX = Math.min( p0.x ,p1.x );
-			float maxX = Math.max( p0.x ,p1.x );
+			float minX = viewport.toScreenX( Math.min( p0.x ,p1.x ) );
+			float maxX = viewport.toScreenX( Math.max( p0.x ,p1.x ) );
 
-			float minY = Math.min( p0.y ,p1.y );
-			float maxY = Math.max( p0.y ,p1.y );
+			float minY = viewport.toScreenY( Math.min( p0.y ,p1.y ) );
+			float maxY = viewport.toScreenY( Math.max( p0.y ,p1.y ) );
 
 			final int width = (int) (maxX - minX);
 			final int height = (int) (maxY - minY);
 			gfx.setColor(Color.RED);
 			gfx.drawRect( (int) minX , (int) minY , width , height );
 
-			part.outline.visitLines( l -> {
-
+			lines.clear();
+			part.outline.findLines( Math.min( p0.x , p1.x ) , Math.min( p0.y , p1.y ) , Math.max( p0.x , p1.x ) , Math.max( p0.y , p1.y ) , lines );
+			for ( int i = 0 , len = lines.size() ; i < len ; i++ ) 
+			{
+				final Line l = part.outline.line( lines.get( i ) );
 				if ( currentSelection.contains( l ) ) 
 				{
 					draw( l , gfx );
 				} 
 				else if ( currentSelection.contains( l.start ) ) {
-					renderSelectedPoint( l.start , gfx );
+					renderSelectedPoint( l.start , viewport , gfx );
 				}
 				else if ( currentSelection.contains( l.end ) ) {
-					renderSelectedPoint( l.end , gfx );
+					renderSelectedPoint( l.end , viewport , gfx );
 				}
-			});
+			}
 		}
 	}
 
@@ -550,22 +837,31 @@ public class PartEditorPanel extends JPanel
 			}
 		}
 
+		private final Consumer<HitTester.Hit> hoverCallback = this::hover;
+		
 		@Override
-		public boolean mouseMoved(MouseEvent e) 
+		public boolean mouseMoved(PointerState pointer) 
 		{
-			if ( part.outline.contains( alignedLastMousePosition ) ) {
-				setCursor( Cursor.getPredefinedCursor( Cursor.CROSSHAIR_CURSOR ) );
-			} else {
-				setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
+			final HitTester.Query query = hitQuery.set( pointer.position.x , pointer.position.y , snapRadius() , 
+					HitTester.Query.PORTS | HitTester.Query.INSIDE , -1 , pointer.alignedPosition.x , pointer.alignedPosition.y );
+			if ( isHoverInBackground() ) 
+			{
+				hitTester.submit( query , hoverCallback );
+				return false;
 			}
-			final PortHighlight highlight = getPortHighlight( unalignedLastMousePosition.x ,unalignedLastMousePosition.y );
-			return setHighlight( highlight );
+			return hover( HitTester.test( part , query , hitResult ) );
+		}
+		
+		private boolean hover(HitTester.Hit hit) 
+		{
+			setCursor( Cursor.getPredefinedCursor( hit.inside ? Cursor.CROSSHAIR_CURSOR : Cursor.DEFAULT_CURSOR ) );
+			return highlightHit( hit );
 		}
 
 		@Override
-		public boolean mouseDragged(MouseEvent e) 
+		public boolean mouseDragged(PointerState pointer) 
 		{
-			if ( part.outline.contains( alignedLastMousePosition ) ) {
+			if ( part.outline.contains( pointer.alignedPosition ) ) {
 				setCursor( Cursor.getPredefinedCursor( Cursor.CROSSHAIR_CURSOR ) );
 			} else {
 				setCursor( Cursor.getPredefinedCursor( Cursor.DEFAULT_CURSOR ) );
@@ -574,18 +870,20 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public boolean mousePressed(MouseEvent e) {
+		public boolean mousePressed(PointerState pointer) {
 			return false;
 		}
 
 		@Override
-		public boolean mouseReleased(MouseEvent e) 
+		public boolean mouseReleased(PointerState pointer) 
 		{
-			if ( part.outline.contains( alignedLastMousePosition ) ) 
+			if ( part.outline.contains( pointer.alignedPosition ) ) 
 			{
 				final Port port = new Port();
-				port.center.set( alignedLastMousePosition );
+				port.center.set( pointer.alignedPosition );
+				beginEdit();
 				part.addPort( port );
+				endEdit();
 				repaint();
 				return true;
 			}
@@ -602,33 +900,38 @@ public class PartEditorPanel extends JPanel
 	protected final class MoveState extends AbstractEditorBehaviour
 	{
 		private boolean isDragging;
+		private boolean hasMoved;
 		private Draggable draggedItem;
 
 		private final Vector2 previousPoint = new Vector2();
 		
 		@Override
-		public boolean mouseMoved(MouseEvent e) 
+		public boolean mouseMoved(PointerState pointer) 
 		{
 			if ( ! isDragging ) {
-				return maybeHighlight( true , draggedItem );
+				return hover();
 			}
 			return false;
 		}
 
 		@Override
-		public boolean mouseDragged(MouseEvent e) 
+		public boolean mouseDragged(PointerState pointer) 
 		{
 			if ( isDragging ) 
 			{
-				float dx = e.getX() - previousPoint.x;
-				float dy = e.getY() - previousPoint.y;
+				float dx = pointer.alignedPosition.x - previousPoint.x;
+				float dy = pointer.alignedPosition.y - previousPoint.y;
 
+				final int modCount = part.getModificationCount();
+				dirty.clear();
+				draggedItem.addBounds( dirty );
 				final boolean moved = draggedItem.move( dx , dy );
-				if ( ! maybeHighlight( draggedItem ) ) {
-					repaint();
-				}
+				draggedItem.addBounds( dirty );
+				geometryChanged( modCount , dirty );
+				maybeHighlight( draggedItem );
 				if ( moved ) {
-					previousPoint.set( e.getX() , e.getY() );
+					previousPoint.set( pointer.alignedPosition );
+					hasMoved = true;
 				}
 				return true;
 			}
@@ -636,40 +939,53 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public boolean mousePressed(MouseEvent e) 
+		public boolean mousePressed(PointerState pointer) 
 		{
-			if ( isLeftButton( e ) && ! isDragging ) 
+			if ( pointer.isLeftButton() && ! isDragging ) 
 			{
-				float x = unalignedLastMousePosition.x;
-				float y = unalignedLastMousePosition.y;
-				final Vector2 point = getSnapPoint( x , y , null );
-				draggedItem = point == null ? null : new PointDraggable( point );
+				float x = pointer.position.x;
+				float y = pointer.position.y;
+				final int point = getSnapPoint( x , y , null );
+				draggedItem = point == -1 ? null : new PointDraggable( point );
 				if ( draggedItem == null ) {
-					Line line = getSnapLine( x , y );
-					draggedItem = line == null ? null : new LineDraggable( line );
+					final int line = getSnapLine( x , y );
+					draggedItem = line == -1 ? null : new LineDraggable( line );
 				}
 				if ( draggedItem == null ) 
 				{
-					PortHighlight port = getPortHighlight( unalignedLastMousePosition.x , unalignedLastMousePosition.y );
+					PortHighlight port = getPortHighlight( pointer.position.x , pointer.position.y );
 					if ( port != null ) {
 						draggedItem = new PortDraggable( port.port );
 					}
 				}
 				if ( draggedItem != null ) 
 				{
+					beginEdit();
 					isDragging = true;
-					previousPoint.set( e.getX() , e.getY() );
+					hasMoved = false;
+					previousPoint.set( pointer.alignedPosition );
 				}
 			}
 			return false;
 		}
 
 		@Override
-		public boolean mouseReleased(MouseEvent e) 
+		public boolean mouseReleased(PointerState pointer) 
 		{
-			if ( isLeftButton( e ) && isDragging ) 
+			if ( pointer.isLeftButton() && isDragging ) 
 			{
-				part.outline.compact();
+				if ( hasMoved ) 
+				{
+					// merge moved points into points they have been dropped onto
+					final int modCount = part.getModificationCount();
+					dirty.clear();
+					draggedItem.addBounds( dirty );
+					draggedItem.dropped();
+					if ( part.getModificationCount() != modCount ) {
+						geometryChanged( modCount , dirty );
+					}
+				}
+				endEdit();
 				draggedItem = null;
 				isDragging = false;
 			}
@@ -688,10 +1004,10 @@ public class PartEditorPanel extends JPanel
 		private Line line;
 
 		@Override
-		public boolean mouseMoved(MouseEvent e) 
+		public boolean mouseMoved(PointerState pointer) 
 		{
 			if ( ! isDrawingLine ) {
-				return maybeHighlight( true , null );
+				return hover();
 			}
 			return false;
 		}		
@@ -701,10 +1017,12 @@ public class PartEditorPanel extends JPanel
 		{
 			if ( ! isDrawingLine && e.getKeyCode() == KeyEvent.VK_DELETE ) 
 			{
-				final Highlight highlight = findHighlight( unalignedLastMousePosition.x , unalignedLastMousePosition.y , true , null );
+				final Highlight highlight = findHighlight( pointer.position.x , pointer.position.y , true , null );
 				if ( highlight instanceof LineHighlight) 
 				{
+					beginEdit();
 					part.outline.removeLine( ((LineHighlight) highlight).line );
+					endEdit();
 					setHighlight( null );
 					repaint();
 					return true;
@@ -714,12 +1032,12 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public boolean mouseDragged(MouseEvent e) 
+		public boolean mouseDragged(PointerState pointer) 
 		{
 			if ( isDrawingLine ) 
 			{
-				float x = e.getX();
-				float y = e.getY();
+				float x = pointer.alignedPosition.x;
+				float y = pointer.alignedPosition.y;
 				
 				if ( onlyRightAngles ) 
 				{
@@ -731,10 +1049,12 @@ public class PartEditorPanel extends JPanel
 						x = line.start.x;
 					}
 				}
+				dirty.clear();
+				dirty.add( line.start.x , line.start.y , line.end.x , line.end.y );
 				line.end.set( x , y );
-				if ( ! maybeHighlight( null ) ) {
-					repaint();
-				}
+				dirty.add( line.start.x , line.start.y , line.end.x , line.end.y );
+				dirty.repaint( PartEditorPanel.this );
+				maybeHighlight( null );
 				return true;
 			}
 			
@@ -742,36 +1062,38 @@ public class PartEditorPanel extends JPanel
 		}
 
 		@Override
-		public boolean mousePressed(MouseEvent e) 
+		public boolean mousePressed(PointerState pointer) 
 		{
-			if ( isLeftButton(e) && ! isDrawingLine ) 
+			if ( pointer.isLeftButton() && ! isDrawingLine ) 
 			{
 				isDrawingLine = true;
-				final Vector2 point = getSnapPoint( e.getX() , e.getY() );
+				final Vector2 point = getSnapPoint( pointer.alignedPosition );
 				if ( point != null ) {
-					line = new Line( point , new Vector2( e.getX() , e.getY() ) );
+					line = new Line( point , new Vector2( pointer.alignedPosition ) );
 				} else {
 					line = new Line();
-					line.start.set( e.getX() , e.getY() );
-					line.end.set( e.getX() , e.getY() );
+					line.start.set( pointer.alignedPosition );
+					line.end.set( pointer.alignedPosition );
 				}
 			}
 			return false;
 		}
 
 		@Override
-		public boolean mouseReleased(MouseEvent e) 
+		public boolean mouseReleased(PointerState pointer) 
 		{
-			if ( isLeftButton(e) && isDrawingLine ) 
+			if ( pointer.isLeftButton() && isDrawingLine ) 
 			{
-				final Vector2 point = getSnapPoint( e.getX() , e.getY() );
+				final Vector2 point = getSnapPoint( pointer.alignedPosition );
 				if ( point != null ) {
 					line.end = point;
 				}
 
 				if ( line.len() > 1 ) 
 				{
+					beginEdit();
 					part.outline.addLine( line );
+					endEdit();
 				}
 				line = null;
 				isDrawingLine = false;
@@ -795,75 +1117,123 @@ public class PartEditorPanel extends JPanel
 		@Override
 		public void mouseMoved(MouseEvent e) 
 		{
-			unalignedLastMousePosition.set( e.getX() , e.getY() );
-			
-			final MouseEvent alignedEvent = maybeAlignToGrid(e);
-			alignedLastMousePosition.set( alignedEvent.getX() , alignedEvent.getY() );
-			final boolean repainted = modeImpl.mouseMoved(alignedEvent);
-			if ( showGuide && ! repainted ) {
-				repaint();
-			}
+			queueMotion( e , MOTION_MOVED );
 		}
 
 		@Override
-		public void mouseDragged(java.awt.event.MouseEvent e) 
+		public void mouseDragged(MouseEvent e) 
 		{
-			unalignedLastMousePosition.set( e.getX() , e.getY() );			
-			
-			final MouseEvent alignedEvent = maybeAlignToGrid(e);
-			alignedLastMousePosition.set( alignedEvent.getX() , alignedEvent.getY() );
-			
-			final boolean repainted = modeImpl.mouseDragged(alignedEvent);
-			if ( showGuide && ! repainted ) {
-				repaint();
-			}			
+			queueMotion( e , MOTION_DRAGGED );
 		}
 		
 		@Override
-		public void mousePressed(java.awt.event.MouseEvent e) 
+		public void mousePressed(MouseEvent e) 
 		{
-			modeImpl.mousePressed( maybeAlignToGrid(e) );
+			processPendingMotion();
+			hitTester.cancel();
+			updatePointer( e );
+			if ( pointer.isMiddleButton() ) {
+				isPanning = true;
+			} else {
+				modeImpl.mousePressed( pointer );
+			}
 		}
 
 		@Override
-		public void mouseReleased(java.awt.event.MouseEvent e) 
+		public void mouseReleased(MouseEvent e) 
 		{
-			modeImpl.mouseReleased( maybeAlignToGrid(e) );
+			processPendingMotion();
+			hitTester.cancel();
+			updatePointer( e );
+			if ( pointer.isMiddleButton() ) {
+				isPanning = false;
+			} else {
+				modeImpl.mouseReleased( pointer );
+			}
 		}
 		
-		private MouseEvent maybeAlignToGrid(MouseEvent input) 
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) 
 		{
-			if ( ! snapToGrid ) {
-				return input;
-			}
-			final MouseEvent copy = SerializationUtils.clone( input );
-			final int alignedX = (input.getX() / gridX) * gridX;
-			final int alignedY = (input.getY() / gridY) * gridY;
-			
-			try {
-				final Field x = copy.getClass().getDeclaredField("x");
-				x.setAccessible(true);
-				x.set( copy , alignedX );
-				
-				final Field y = copy.getClass().getDeclaredField("y");
-				y.setAccessible(true);
-				y.set( copy , alignedY );
-			} 
-			catch(Exception e) {
-				throw new RuntimeException("Something bad happened",e);
-			}
-			return copy;
+			processPendingMotion();
+			hitTester.cancel();
+			viewport.zoom( (float) Math.pow( ZOOM_STEP , -e.getPreciseWheelRotation() ) , e.getX() , e.getY() );
+			updatePointer( e );
+			repaint();
+		}
+		
+		private void updatePointer(MouseEvent e) 
+		{
+			pointer.update( e , viewport , snapToGrid ? gridX : 0 , snapToGrid ? gridY : 0 );
 		}		
 	};
-
-	private boolean isLeftButton(MouseEvent ev) {
-		return ev.getButton() == MouseEvent.BUTTON1;
+	
+	/**
+	 * Records a mouse motion to be processed with the next frame.
+	 * 
+	 * Only the latest motion is kept. If no frame is in progress, the motion 
+	 * gets processed right away and a new frame starts.
+	 */
+	private void queueMotion(MouseEvent e,int motion) 
+	{
+		pendingMotion = motion;
+		pendingX = e.getX();
+		pendingY = e.getY();
+		pendingModifiers = e.getModifiersEx();
+		if ( ! frameTimer.isRunning() ) 
+		{
+			processPendingMotion();
+			frameTimer.start();
+		}
+	}
+	
+	private void onFrame() 
+	{
+		if ( pendingMotion == MOTION_NONE ) {
+			frameTimer.stop(); // idle
+		} else {
+			processPendingMotion();
+		}
+	}
+	
+	/**
+	 * Processes the latest mouse motion that has not been processed yet, if any.
+	 * 
+	 * Needs to be called before handling any other input so events are seen in order.
+	 */
+	private void processPendingMotion() 
+	{
+		final int motion = pendingMotion;
+		if ( motion == MOTION_NONE ) {
+			return;
+		}
+		pendingMotion = MOTION_NONE;
+		
+		if ( isPanning ) 
+		{
+			viewport.pan( pendingX - pointer.getScreenX() , pendingY - pointer.getScreenY() );
+			updatePointer( pendingX , pendingY , pendingModifiers );
+			repaint();
+			return;
+		}
+		
+		final float oldX = pointer.alignedPosition.x;
+		final float oldY = pointer.alignedPosition.y;
+		updatePointer( pendingX , pendingY , pendingModifiers );
+		if ( motion == MOTION_DRAGGED ) {
+			modeImpl.mouseDragged( pointer );
+		} else {
+			modeImpl.mouseMoved( pointer );
+		}
+		if ( showGuide ) {
+			repaintGuides( oldX , oldY );
+		}
+	}
+	
+	private void updatePointer(int screenX,int screenY,int modifiers) 
+	{
+		pointer.update( screenX , screenY , MouseEvent.NOBUTTON , modifiers , viewport , snapToGrid ? gridX : 0 , snapToGrid ? gridY : 0 );
 	}
-
-	@SuppressWarnings("unused")
-	private boolean isRightButton(MouseEvent ev) {
-		return ev.getButton() == MouseEvent.BUTTON3;
-	}	
 
 	/**
 	 * 
@@ -887,160 +1257,204 @@ public class PartEditorPanel extends JPanel
 	private boolean maybeHighlight(boolean highlightLines,Draggable ignoredPoint) 
 	{
 		
-		final Highlight newHighlight = findHighlight( unalignedLastMousePosition.x , unalignedLastMousePosition.y , highlightLines , ignoredPoint);
-		return setHighlight( newHighlight );
+		final HitTester.Query query = highlightQuery( pointer.position.x , pointer.position.y , highlightLines , ignoredPoint );
+		return highlightHit( HitTester.test( part , query , hitResult ) );
 	}
 	
 	private Highlight findHighlight(float x , float y , boolean highlightLines,Draggable ignoredPoint) 
 	{
-		final Vector2 point = getSnapPoint( x , y , ignoredPoint);
-		if ( point != null ) {
-			return new PointHighlight( point );
-		}
-		if ( highlightLines ) {
-			final Line line = getSnapLine( x , y );
-			if ( line != null ) {
-				return new LineHighlight( line );
-			}
+		return toHighlight( HitTester.test( part , highlightQuery( x , y , highlightLines , ignoredPoint ) , hitResult ) );
+	}
+	
+	private HitTester.Query highlightQuery(float x , float y , boolean highlightLines,Draggable ignoredPoint) 
+	{
+		final int flags = HitTester.Query.POINTS | HitTester.Query.PORTS | ( highlightLines ? HitTester.Query.LINES : 0 );
+		final int ignored = ignoredPoint == null ? -1 : ignoredPoint.getIgnoredPoint();
+		return hitQuery.set( x , y , snapRadius() , flags , ignored , x , y );
+	}
+	
+	private Highlight toHighlight(HitTester.Hit hit) 
+	{
+		switch( hit.type ) 
+		{
+			case HitTester.Hit.POINT:
+				return new PointHighlight( part.outline.point( hit.index ) );
+			case HitTester.Hit.LINE:
+				return new LineHighlight( part.outline.line( hit.index ) );
+			case HitTester.Hit.PORT:
+				return new PortHighlight( part.getPort( hit.index ) );
+			default:
+				return null;
 		}
-		PortHighlight port  = getPortHighlight( x , y );
-		if ( port != null ) {
-			return new PortHighlight( port.port );
+	}
+	
+	/**
+	 * Highlights the point, line or port under the mouse pointer while no edit is in progress.
+	 * 
+	 * @return <code>true</code> if <code>repaint()</code> has been called
+	 */
+	private boolean hover() 
+	{
+		final HitTester.Query query = highlightQuery( pointer.position.x , pointer.position.y , true , null );
+		if ( isHoverInBackground() ) 
+		{
+			hitTester.submit( query , hoverCallback );
+			return false;
+		}
+		return highlightHit( HitTester.test( part , query , hitResult ) );
+	}
+	
+	/**
+	 * Highlights the element found by a hit test.
+	 * 
+	 * Most mouse moves do not change what is under the pointer, the current highlight 
+	 * is kept without creating a new one if it has been created from the same element.
+	 * 
+	 * @return <code>true</code> if <code>repaint()</code> has been called
+	 */
+	private boolean highlightHit(HitTester.Hit hit) 
+	{
+		if ( highlight == highlightFromHit && hit.isSame( highlightedHit ) && highlightedModCount == part.getModificationCount() ) {
+			return false;
 		}
-		return null;
+		final boolean repainted = setHighlight( toHighlight( hit ) );
+		highlightFromHit = highlight;
+		highlightedHit.set( hit );
+		highlightedModCount = part.getModificationCount();
+		return repainted;
 	}
 
 	/**
 	 * 
 	 * @param newHighlight
-	 * @return <code>true</code> if <code>repaint()</code> has been called
+	 * @return <code>true</code> if the old and new highlight have been repainted
 	 */
 	private boolean setHighlight(Highlight newHighlight) 
 	{
-		if ( newHighlight == null ) 
+		if ( newHighlight == null ? highlight == null : highlight != null && highlight.isSame( newHighlight ) ) {
+			return false;
+		}
+		highlightDirty.clear();
+		if ( highlight != null ) {
+			highlight.addBounds( highlightDirty );
+		}
+		if ( newHighlight != null ) {
+			newHighlight.addBounds( highlightDirty );
+		}
+		highlight = newHighlight;
+		highlightDirty.repaint( this );
+		return true;
+	}
+	
+	/**
+	 * Repaints the old and new guide lines after the mouse moved.
+	 */
+	private void repaintGuides(float oldX,float oldY) 
+	{
+		final float x = pointer.alignedPosition.x;
+		final float y = pointer.alignedPosition.y;
+		// Swing merges all regions of a component into their bounding box, 
+		// so only repaint the guide lines that actually moved
+		if ( x != oldX ) 
 		{
-			if ( highlight != null ) {
-				highlight = null;
-				repaint();
-				return true;
-			}
-		} 
-		else 
+			dirty.clear();
+			dirty.addScreen( viewport.toScreenX( oldX ) , 0 , viewport.toScreenX( oldX ) , getHeight() );
+			dirty.addScreen( viewport.toScreenX( x ) , 0 , viewport.toScreenX( x ) , getHeight() );
+			dirty.repaint( this );
+		}
+		if ( y != oldY ) 
 		{
-			if ( highlight == null || ! highlight.isSame( newHighlight ) ) 
-			{
-				highlight = newHighlight;
-				repaint();
-				return true;
-			}
+			dirty.clear();
+			dirty.addScreen( 0 , viewport.toScreenY( oldY ) , getWidth() , viewport.toScreenY( oldY ) );
+			dirty.addScreen( 0 , viewport.toScreenY( y ) , getWidth() , viewport.toScreenY( y ) );
+			dirty.repaint( this );
 		}
-		return false;
 	}
-
-	private Vector2 getSnapPoint(int px,int py) 
+	
+	/**
+	 * Repaints the area affected by a change to the part's outline or ports.
+	 * 
+	 * Changes that are not reported through this method cause the static layer to be rendered
+	 * completely and need to repaint the whole panel.
+	 * 
+	 * @param previousModCount modification count of the part before the change
+	 * @param region screen area covering everything that changed
+	 */
+	private void geometryChanged(int previousModCount,DirtyRegion region) 
 	{
-		return getSnapPoint(px,py,null);
+		final int expected = staticLayerDirty.isEmpty() ? staticLayerModCount : staticLayerDirtyModCount;
+		if ( staticLayer != null && expected == previousModCount ) 
+		{
+			staticLayerDirty.add( region );
+			staticLayerDirtyModCount = part.getModificationCount();
+		}
+		region.repaint( this );
 	}
-
-	private Line getSnapLine(float px , float py) 
+	
+	private static void addPortBounds(Port port,DirtyRegion region) {
+		region.addCircle( port.center.x , port.center.y , PORT_RADIUS * PORT_CROSSHAIR_SIZE );
+	}
+	
+	private void addLineBounds(IntList lines,DirtyRegion region) 
 	{
-		return part.outline.visitLines( new LineVisitor<Line>() 
+		for ( int i = 0 , len = lines.size() ; i < len ; i++ ) 
 		{
-			private Line result;
-			private float minDistance = Float.MAX_VALUE;
-			
-			@Override
-			public boolean visit(Line line) 
-			{
-				float d = distance( line , px , py );
-				if ( d < SNAP_RADIUS && ( result == null || d < minDistance ) )  {
-					result = line.copy(false);
-					minDistance = d;
-				}
-				return true;
-			}
-
-			@Override
-			public Line getResult() {
-				return result;
-			}
-		});
+			final int start = part.outline.startIndex( lines.get( i ) );
+			final int end = part.outline.endIndex( lines.get( i ) );
+			region.add( part.outline.x( start ) , part.outline.y( start ) , part.outline.x( end ) , part.outline.y( end ) );
+		}
 	}
 
-	private float distance(Line line , float px,float py) 
+	private Vector2 getSnapPoint(Vector2 p) 
 	{
-		// solution adopted from http://stackoverflow.com/questions/849211/shortest-distance-between-a-point-and-a-line-segment
-		// (C) by http://stackoverflow.com/users/167531
-
-		final Vector2 start = line.start;
-		final Vector2 end = line.end;
-		final Vector2 p = new Vector2( px , py );
-
-		final float length = start.dst2( end ); 
-		if (length == 0.0) { 
-			return p.dst(start); 
-		}
-		final Vector2 startToEnd = end.cpy().sub(start);
-		final float t = Math.max(0, Math.min(1, p.cpy().sub(start).dot( startToEnd ) / length ) );
-		final Vector2 projection = start.cpy().add( startToEnd.scl(t) );
-		return p.dst( projection );
+		final int idx = getSnapPoint(p.x,p.y,null);
+		return idx == -1 ? null : part.outline.point( idx );
 	}
 
-	private Vector2 getSnapPoint(float px,float py,Draggable draggable) 
+	private int getSnapLine(float px , float py) 
 	{
-		final Vector2 ignoredPoint = draggable == null ? null : draggable.getIgnoredPoint();
+		return part.outline.findNearestLine( px , py , snapRadius() );
+	}
 
-		final LineVisitor<Vector2> visitor = new LineVisitor<Vector2>() {
-			
-			Vector2 result = null;
-			float minDistance = Float.MAX_VALUE;
-			
-			@Override
-			public boolean visit(Line l) 
-			{
-				float dStart = l.start.dst( px , py );
-				float dEnd = l.end.dst( px , py );
-				if ( result == null ) 
-				{
-					if ( dStart < SNAP_RADIUS && dStart < dEnd && ignoredPoint != l.start ) {
-						result = l.start;
-						minDistance = dStart;
-					} else if ( dEnd < SNAP_RADIUS && ignoredPoint != l.end ){
-						result = l.end;
-						minDistance = dEnd;					
-					}
-				} 
-				else 
-				{
-					if ( dStart < dEnd && dStart < minDistance && ignoredPoint != l.start ) {
-						result = l.start;
-						minDistance = dStart;
-					} else if ( dEnd < minDistance && ignoredPoint != l.end ) {
-						result = l.end;
-						minDistance = dEnd;					
-					}
-				}
-				return true;
-			}
-			
-			@Override
-			public Vector2 getResult() {
-				return result;
-			}
-		};
-		return part.outline.visitLines( visitor );
+	private int getSnapPoint(float px,float py,Draggable draggable) 
+	{
+		final int ignoredPoint = draggable == null ? -1 : draggable.getIgnoredPoint();
+		return part.outline.findNearestPoint( px , py , snapRadius() , ignoredPoint );
+	}
+	
+	/**
+	 * Returns the snap radius in model units.
+	 */
+	private float snapRadius() {
+		return viewport.toModelDistance( SNAP_RADIUS );
 	}
 
 	public PartEditorPanel(Part part) 
 	{
 		this.part = part;
+		this.levelOfDetail = new LevelOfDetail( part );
+		this.outlineRenderer = new OutlineRenderer( part.outline );
+		this.hitTester = new HitTester( part );
 		addMouseMotionListener( mouseListener );
 		addMouseListener( mouseListener );
+		addMouseWheelListener( mouseListener );
 		setRequestFocusEnabled( true );
 		requestFocus();
 		
 		addKeyListener( new KeyAdapter() 
 		{
+			@Override
+			public void keyPressed(KeyEvent e) 
+			{
+				if ( e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Z ) {
+					undo();
+				} else if ( e.isControlDown() && e.getKeyCode() == KeyEvent.VK_Y ) {
+					redo();
+				} else {
+					modeImpl.keyPressed(e);
+				}
+			}
+			
 			@Override
 			public void keyReleased(KeyEvent e) 
 			{
@@ -1048,6 +1462,61 @@ public class PartEditorPanel extends JPanel
 			}
 		});
 	}
+	
+	/**
+	 * Starts a transaction for an edit that may consist of several changes to the part.
+	 */
+	private void beginEdit() {
+		transaction = part.beginTransaction();
+	}
+	
+	/**
+	 * Commits the current edit and records the part's previous state in the undo history, 
+	 * unless the part has not actually been modified.
+	 */
+	private void endEdit() 
+	{
+		if ( transaction != null ) 
+		{
+			transaction.commit();
+			if ( transaction.isModified() ) {
+				history.push( transaction.getInitialState() );
+			}
+			transaction = null;
+		}
+	}
+	
+	public boolean canUndo() {
+		return transaction == null && history.canUndo();
+	}
+	
+	public boolean canRedo() {
+		return transaction == null && history.canRedo();
+	}
+	
+	public void undo() 
+	{
+		if ( canUndo() ) 
+		{
+			part.restore( history.undo( part.snapshot() ) );
+			stateRestored();
+		}
+	}
+	
+	public void redo() 
+	{
+		if ( canRedo() ) 
+		{
+			part.restore( history.redo( part.snapshot() ) );
+			stateRestored();
+		}
+	}
+	
+	private void stateRestored() 
+	{
+		highlight = null;
+		repaint();
+	}
 
 	@Override
 	protected void paintComponent(Graphics gfx) 
@@ -1062,38 +1531,166 @@ public class PartEditorPanel extends JPanel
 			try {
 			g.setColor( GUIDE_COLOR );
 			
-			g.drawLine( (int) alignedLastMousePosition.x , 0 , (int) alignedLastMousePosition.x , getHeight() );
-			g.drawLine( 0 , (int) alignedLastMousePosition.y , getWidth() , (int) alignedLastMousePosition.y );
+			final int x = (int) viewport.toScreenX( pointer.alignedPosition.x );
+			final int y = (int) viewport.toScreenY( pointer.alignedPosition.y );
+			g.drawLine( x , 0 , x , getHeight() );
+			g.drawLine( 0 , y , getWidth() , y );
 			} finally {
 				g.setStroke( old );
 			}
 		}
 		
-		// render outline
-		g.setColor( Color.BLUE );
-		part.outline.visitLines( line -> draw( line , g) );
-
-		// render port
-		g.setColor( Color.BLUE );
-		part.visitPorts( port -> 
-		{
-			renderPort(port,g);
-		});
+		paintStaticLayer( g );
 
 		if ( highlight != null ) 
 		{
-			highlight.render( (Graphics2D) g);
+			highlight.render( g , viewport );
 		}
 
 		modeImpl.render( (Graphics2D) g );
 	}
 
-	private static void renderPort(Port port,final Graphics2D g) 
+	private void paintStaticLayer(Graphics2D g) 
+	{
+		final int width = getWidth();
+		final int height = getHeight();
+		if ( width <= 0 || height <= 0 ) {
+			return;
+		}
+		
+		final int modCount = part.getModificationCount();
+		boolean renderAll = false;
+		if ( staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height ) 
+		{
+			final GraphicsConfiguration config = getGraphicsConfiguration();
+			staticLayer = config != null ? config.createCompatibleImage( width , height , Transparency.TRANSLUCENT ) :
+				new BufferedImage( width , height , BufferedImage.TYPE_INT_ARGB );
+			renderAll = true;
+		} 
+		else if ( staticLayerViewportModCount != viewport.getModificationCount() ) {
+			renderAll = true;
+		}
+		else if ( staticLayerModCount != modCount ) 
+		{
+			if ( ! staticLayerDirty.isEmpty() && staticLayerDirtyModCount == modCount ) {
+				renderStaticLayer( staticLayerDirty );
+			} else {
+				renderAll = true;
+			}
+		}
+		if ( renderAll ) 
+		{
+			renderStaticLayer( null );
+			final Rectangle clip = g.getClipBounds();
+			if ( clip != null && ! clip.contains( 0 , 0 , width , height ) ) {
+				// changes outside of the area currently being painted need to show up as well
+				repaint();
+			}
+		}
+		staticLayerModCount = modCount;
+		staticLayerViewportModCount = viewport.getModificationCount();
+		staticLayerDirty.clear();
+		g.drawImage( staticLayer , 0 , 0 , null );
+	}
+	
+	/**
+	 * Renders the static layer.
+	 * 
+	 * Only geometry inside the area being rendered is looked at.
+	 * 
+	 * @param region area to render, <code>null</code> renders everything
+	 */
+	private void renderStaticLayer(DirtyRegion region) 
+	{
+		final Rectangle area = staticLayerArea;
+		if ( region != null ) {
+			region.getBounds( area );
+		} else {
+			area.setBounds( 0 , 0 , staticLayer.getWidth() , staticLayer.getHeight() );
+		}
+		
+		final Graphics2D g = staticLayer.createGraphics();
+		try 
+		{
+			g.clipRect( area.x , area.y , area.width , area.height );
+			g.setComposite( AlphaComposite.Clear );
+			g.fillRect( area.x , area.y , area.width , area.height );
+			g.setComposite( AlphaComposite.SrcOver );
+			
+			final float minX = viewport.toModelX( area.x - 1 );
+			final float minY = viewport.toModelY( area.y - 1 );
+			final float maxX = viewport.toModelX( area.x + area.width + 1 );
+			final float maxY = viewport.toModelY( area.y + area.height + 1 );
+			
+			if ( region != null ) {
+				// only the area being rendered changed since the layer was rendered last
+				levelOfDetail.update( staticLayerModCount , minX , minY , maxX , maxY );
+			}
+			// render outline in model coordinates
+			final LevelOfDetail.Level level = levelOfDetail.getLevel( viewport.getScale() );
+			final AffineTransform screenTransform = g.getTransform();
+			g.transform( viewport.getTransform( modelTransform ) );
+			g.setStroke( MODEL_STROKE );
+			g.setColor( Color.BLUE );
+			if ( level != null ) {
+				level.render( g , minX , minY , maxX , maxY );
+			} 
+			else if ( region != null ) 
+			{
+				// cached paths are outdated while parts of the outline are being dragged around
+				visibleLines.clear();
+				part.outline.findLines( minX , minY , maxX , maxY , visibleLines );
+				outlineRenderer.render( g , visibleLines );
+			} 
+			else {
+				outlineRenderer.render( g , minX , minY , maxX , maxY );
+			}
+			g.setTransform( screenTransform );
+			
+			if ( level != null ) 
+			{
+				renderPorts( level , minX , minY , maxX , maxY , g );
+				return;
+			}
+
+			// render ports, including those whose crosshair extends into the area
+			final float portSize = viewport.toModelDistance( PORT_RADIUS * PORT_CROSSHAIR_SIZE );
+			g.setColor( Color.BLUE );
+			part.visitPorts( minX - portSize , minY - portSize , maxX + portSize , maxY + portSize , port -> 
+			{
+				renderPort(port,viewport,g);
+			});
+		} 
+		finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Renders the ports of a simplified part as points.
+	 */
+	private void renderPorts(LevelOfDetail.Level level,float minX,float minY,float maxX,float maxY,Graphics2D g) 
+	{
+		for ( int i = 0 , len = level.getPortCount() ; i < len ; i++ ) 
+		{
+			final float x = level.portX( i );
+			final float y = level.portY( i );
+			if ( minX <= x && x <= maxX && minY <= y && y <= maxY ) 
+			{
+				g.fillRect( (int) viewport.toScreenX( x ) - PORT_POINT_SIZE / 2 , (int) viewport.toScreenY( y ) - PORT_POINT_SIZE / 2 , 
+						PORT_POINT_SIZE , PORT_POINT_SIZE );
+			}
+		}
+	}
+
+	private static void renderPort(Port port,Viewport viewport,final Graphics2D g) 
 	{
 		final float size = PORT_RADIUS*PORT_CROSSHAIR_SIZE;		
-		g.drawLine( (int) ( port.center.x - size) , (int) port.center.y ,    (int) ( port.center.x + size) , (int) port.center.y ) ;
-		g.drawLine( (int) port.center.x , (int) (port.center.y - size) , (int) port.center.x , (int) ( port.center.y + size) ) ;
-		g.drawArc( (int) (port.center.x - PORT_RADIUS/2f) , (int) (port.center.y - PORT_RADIUS/2f) , PORT_RADIUS , PORT_RADIUS , 0 , 360 );
+		final float x = viewport.toScreenX( port.center.x );
+		final float y = viewport.toScreenY( port.center.y );
+		g.drawLine( (int) ( x - size) , (int) y ,    (int) ( x + size) , (int) y ) ;
+		g.drawLine( (int) x , (int) (y - size) , (int) x , (int) ( y + size) ) ;
+		g.drawArc( (int) (x - PORT_RADIUS/2f) , (int) (y - PORT_RADIUS/2f) , PORT_RADIUS , PORT_RADIUS , 0 , 360 );
 	}
 
 	private void drawLine(Line line,Color color,Graphics gfx) 
@@ -1103,7 +1700,16 @@ public class PartEditorPanel extends JPanel
 	}
 
 	private void draw(Line line , Graphics g) {
-		g.drawLine( (int) line.start.x , (int) line.start.y ,(int) line.end.x , (int) line.end.y );
+		drawLine( line.start.x , line.start.y , line.end.x , line.end.y , viewport , g );
+	}
+	
+	/**
+	 * Draws a line given in model coordinates.
+	 */
+	private static void drawLine(float x0,float y0,float x1,float y1,Viewport viewport,Graphics g) 
+	{
+		g.drawLine( (int) viewport.toScreenX( x0 ) , (int) viewport.toScreenY( y0 ) , 
+				(int) viewport.toScreenX( x1 ) , (int) viewport.toScreenY( y1 ) );
 	}
 
 	public void setMode(EditorMode mode) 
@@ -1111,6 +1717,8 @@ public class PartEditorPanel extends JPanel
 		Validate.notNull(mode, "mode must not be NULL");
 		final EditorBehaviour tmp = getBehaviour( mode );
 		tmp.assertCanActivated(); 
+		processPendingMotion();
+		hitTester.cancel();
 		this.currentMode = mode;
 		this.modeImpl = tmp;
 		this.highlight = null;
@@ -1140,32 +1748,45 @@ public class PartEditorPanel extends JPanel
 	
 	private PortHighlight getPortHighlight(float px,float py) 
 	{
-		final Port[] closest = {null};
-		final float[] distance = {0};
-		
-		part.visitPorts( port -> 
-		{
-			float dx = port.center.x - px;
-			float dy = port.center.y - py;
-			final float d = (float) Math.sqrt( dx*dy +dy*dy );
-			if ( closest[0] == null || d < distance[0] ) 
-			{
-				closest[0] = port;
-				distance[0] = d;
-			}
-		});
-		return closest[0] != null && distance[0] <= SNAP_RADIUS ? new PortHighlight( closest[0] ) : null;
+		final int port = part.findNearestPort( px , py , snapRadius() );
+		return port == -1 ? null : new PortHighlight( part.getPort( port ) );
 	}
 
-	private static void renderSelectedPoint(Vector2 point,Graphics2D gfx) 
+	private static void renderSelectedPoint(Vector2 point,Viewport viewport,Graphics2D gfx) 
 	{
 		gfx.setColor( Color.RED );
-		final int r = 10;
-		final int p1x = (int) (point.x - r/2);
-		final int p1y = (int) (point.y - r/2);
+		final int r = 2 * SELECTED_POINT_RADIUS;
+		final int p1x = (int) (viewport.toScreenX( point.x ) - r/2);
+		final int p1y = (int) (viewport.toScreenY( point.y ) - r/2);
 		gfx.drawArc( p1x , p1y , r , r , 0 , 360 ); 	
 	}
 	
+	/**
+	 * Sets whether hover queries run on a background thread, against snapshots of the part.
+	 * 
+	 * Queries made while an edit is in progress always run on the EDT.
+	 */
+	public void setAsyncHitTesting(boolean asyncHitTesting) 
+	{
+		this.asyncHitTesting = asyncHitTesting;
+		hitTester.cancel();
+	}
+	
+	public boolean isAsyncHitTesting() {
+		return asyncHitTesting;
+	}
+	
+	private boolean isHoverInBackground() {
+		return asyncHitTesting && transaction == null;
+	}
+	
+	@Override
+	public void removeNotify() 
+	{
+		hitTester.dispose();
+		super.removeNotify();
+	}
+	
 	public void setSnapToGrid(boolean snapToGrid) {
 		this.snapToGrid = snapToGrid;
 	}
@@ -1190,4 +1811,28 @@ public class PartEditorPanel extends JPanel
 	public boolean isShowGuide() {
 		return showGuide;
 	}
+	
+	public Viewport getViewport() {
+		return viewport;
+	}
+	
+	/**
+	 * Zooms in or out around the center of the panel.
+	 * 
+	 * @param factor values greater than 1 zoom in
+	 */
+	public void zoom(float factor) 
+	{
+		viewport.zoom( factor , getWidth() / 2f , getHeight() / 2f );
+		repaint();
+	}
+	
+	/**
+	 * Resets zoom and panning.
+	 */
+	public void resetView() 
+	{
+		viewport.reset();
+		repaint();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package de.codesourcery.pcb.ui;
+
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * State of the pointer (mouse) as seen by the part editor.
+ *
+ * The editor keeps a single instance that gets updated in place for every input event,
+ * so handling pointer input allocates nothing. Receivers must not hold on to it,
+ * values that are needed later on need to be copied.
+ */
+public final class PointerState
+{
+	/**
+	 * Position in model coordinates.
+	 */
+	public final Vector2 position = new Vector2();
+
+	/**
+	 * Position in model coordinates, aligned to the grid if snapping to the grid is enabled.
+	 */
+	public final Vector2 alignedPosition = new Vector2();
+
+	private int screenX;
+	private int screenY;
+	private int button;
+	private int modifiers;
+
+	/**
+	 * Updates the state from an AWT event.
+	 *
+	 * @param e
+	 * @param viewport
+	 * @param gridX grid spacing in model units, 0 if positions should not be aligned
+	 * @param gridY grid spacing in model units, 0 if positions should not be aligned
+	 */
+	public void update(MouseEvent e,Viewport viewport,int gridX,int gridY)
+	{
+		update( e.getX() , e.getY() , e.getButton() , e.getModifiersEx() , viewport , gridX , gridY );
+	}
+
+	/**
+	 * Updates the state.
+	 *
+	 * @param screenX
+	 * @param screenY
+	 * @param button one of the <code>MouseEvent.BUTTON*</code> constants or <code>MouseEvent.NOBUTTON</code>
+	 * @param modifiers extended modifiers
+	 * @param viewport
+	 * @param gridX grid spacing in model units, 0 if positions should not be aligned
+	 * @param gridY grid spacing in model units, 0 if positions should not be aligned
+	 */
+	public void update(int screenX,int screenY,int button,int modifiers,Viewport viewport,int gridX,int gridY)
+	{
+		this.screenX = screenX;
+		this.screenY = screenY;
+		this.button = button;
+		this.modifiers = modifiers;
+
+		final float x = viewport.toModelX( screenX );
+		final float y = viewport.toModelY( screenY );
+		position.set( x , y );
+		if ( gridX > 0 && gridY > 0 ) {
+			alignedPosition.set( (float) Math.floor( x / gridX ) * gridX , (float) Math.floor( y / gridY ) * gridY );
+		} else {
+			alignedPosition.set( x , y );
+		}
+	}
+
+	public int getScreenX() {
+		return screenX;
+	}
+
+	public int getScreenY() {
+		return screenY;
+	}
+
+	/**
+	 * Returns the button that changed state.
+	 *
+	 * @return one of the <code>MouseEvent.BUTTON*</code> constants, <code>MouseEvent.NOBUTTON</code> for
+	 * events not caused by pressing or releasing a button
+	 */
+	public int getButton() {
+		return button;
+	}
+
+	/**
+	 * Returns the extended modifiers (<code>InputEvent.*_DOWN_MASK</code>), including buttons held down.
+	 */
+	public int getModifiers() {
+		return modifiers;
+	}
+
+	public boolean isLeftButton() {
+		return button == MouseEvent.BUTTON1;
+	}
+
+	public boolean isMiddleButton() {
+		return button == MouseEvent.BUTTON2;
+	}
+
+	public boolean isRightButton() {
+		return button == MouseEvent.BUTTON3;
+	}
+
+	public boolean isShiftDown() {
+		return ( modifiers & InputEvent.SHIFT_DOWN_MASK ) != 0;
+	}
+
+	public boolean isControlDown() {
+		return ( modifiers & InputEvent.CTRL_DOWN_MASK ) != 0;
+	}
+}
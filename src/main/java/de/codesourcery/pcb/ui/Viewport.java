@@ -0,0 +1,114 @@
+package de.codesourcery.pcb.ui;
+
+import java.awt.geom.AffineTransform;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Maps between model coordinates and screen (component) coordinates.
+ *
+ * <pre>
+ * screen = model * scale + translation
+ * </pre>
+ */
+public final class Viewport
+{
+	public static final float MIN_SCALE = 0.001f;
+	public static final float MAX_SCALE = 1000f;
+
+	private float scale = 1;
+
+	// screen position of the model's origin
+	private float translateX;
+	private float translateY;
+
+	// incremented on every change
+	private int modCount;
+
+	public float toScreenX(float modelX) {
+		return modelX * scale + translateX;
+	}
+
+	public float toScreenY(float modelY) {
+		return modelY * scale + translateY;
+	}
+
+	public float toModelX(float screenX) {
+		return ( screenX - translateX ) / scale;
+	}
+
+	public float toModelY(float screenY) {
+		return ( screenY - translateY ) / scale;
+	}
+
+	/**
+	 * Converts a distance in pixels to model units.
+	 */
+	public float toModelDistance(float pixels) {
+		return pixels / scale;
+	}
+
+	/**
+	 * Moves the view.
+	 *
+	 * @param dx distance in pixels
+	 * @param dy distance in pixels
+	 */
+	public void pan(float dx,float dy)
+	{
+		translateX += dx;
+		translateY += dy;
+		modCount++;
+	}
+
+	/**
+	 * Zooms in or out, keeping the model location under a given screen location in place.
+	 *
+	 * @param factor values greater than 1 zoom in
+	 * @param screenX
+	 * @param screenY
+	 */
+	public void zoom(float factor,float screenX,float screenY)
+	{
+		Validate.isTrue( factor > 0 , "factor must be > 0");
+		final float modelX = toModelX( screenX );
+		final float modelY = toModelY( screenY );
+		scale = Math.max( MIN_SCALE , Math.min( MAX_SCALE , scale * factor ) );
+		translateX = screenX - modelX * scale;
+		translateY = screenY - modelY * scale;
+		modCount++;
+	}
+
+	/**
+	 * Returns the model-to-screen transform.
+	 *
+	 * @param result transform to store the result in
+	 * @return result
+	 */
+	public AffineTransform getTransform(AffineTransform result)
+	{
+		result.setTransform( scale , 0 , 0 , scale , translateX , translateY );
+		return result;
+	}
+
+	public float getScale() {
+		return scale;
+	}
+
+	/**
+	 * Resets the view to show model coordinates as pixels.
+	 */
+	public void reset()
+	{
+		scale = 1;
+		translateX = translateY = 0;
+		modCount++;
+	}
+
+	/**
+	 * Returns a number that changes whenever the view changes.
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+}
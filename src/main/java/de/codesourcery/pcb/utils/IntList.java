@@ -0,0 +1,88 @@
+package de.codesourcery.pcb.utils;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive <code>int</code> values.
+ *
+ * Meant to be allocated once and re-used (via {@link #clear()}) so that
+ * hot code paths do not need to box values or allocate temporary collections.
+ */
+public final class IntList
+{
+	private int[] data;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int initialCapacity)
+	{
+		data = new int[ Math.max( 1 , initialCapacity ) ];
+	}
+
+	public void add(int value)
+	{
+		if ( size == data.length )
+		{
+			final int[] tmp = new int[ data.length + 1 + data.length/2 ];
+			System.arraycopy( data , 0 , tmp , 0 , size );
+			data = tmp;
+		}
+		data[ size++ ] = value;
+	}
+
+	public int get(int index) {
+		return data[index];
+	}
+
+	public void set(int index,int value) {
+		data[index] = value;
+	}
+
+	/**
+	 * Removes an element by replacing it with the last one.
+	 */
+	public void swapRemove(int index) {
+		data[index] = data[ --size ];
+	}
+
+	public boolean contains(int value)
+	{
+		for ( int i = 0 ; i < size ; i++ )
+		{
+			if ( data[i] == value ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int removeLast()
+	{
+		if ( size == 0 ) {
+			throw new IllegalStateException("List is empty");
+		}
+		return data[ --size ];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Sorts the elements in ascending order.
+	 */
+	public void sort() {
+		Arrays.sort( data , 0 , size );
+	}
+}
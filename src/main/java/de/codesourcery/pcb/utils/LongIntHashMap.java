@@ -0,0 +1,185 @@
+package de.codesourcery.pcb.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive <code>long</code> keys to non-negative <code>int</code> values.
+ *
+ * Avoids boxing and per-entry objects, lookups of absent keys return -1.
+ */
+public final class LongIntHashMap
+{
+	private static final int FREE = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize)
+	{
+		int capacity = 16;
+		while ( capacity < expectedSize * 2 ) {
+			capacity *= 2;
+		}
+		allocate( capacity );
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[ capacity ];
+		values = new int[ capacity ];
+		Arrays.fill( values , FREE );
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear()
+	{
+		Arrays.fill( values , FREE );
+		size = 0;
+	}
+
+	/**
+	 * @return value associated with the key or -1
+	 */
+	public int get(long key)
+	{
+		final int mask = keys.length - 1;
+		int slot = hash( key ) & mask;
+		while ( values[slot] != FREE )
+		{
+			if ( keys[slot] == key ) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param value value to store, must be &gt;= 0
+	 * @return previous value or -1
+	 */
+	public int put(long key,int value)
+	{
+		return put( key , value , true );
+	}
+
+	/**
+	 * Stores a value unless the key is already present.
+	 *
+	 * @param value value to store, must be &gt;= 0
+	 * @return existing value (not replaced) or -1 if the value got stored
+	 */
+	public int putIfAbsent(long key,int value)
+	{
+		return put( key , value , false );
+	}
+
+	private int put(long key,int value,boolean replace)
+	{
+		if ( value < 0 ) {
+			throw new IllegalArgumentException("Value must be >= 0, was: "+value);
+		}
+		if ( (size+1) * 2 > keys.length ) {
+			rehash( keys.length * 2 );
+		}
+		final int mask = keys.length - 1;
+		int slot = hash( key ) & mask;
+		while ( values[slot] != FREE )
+		{
+			if ( keys[slot] == key )
+			{
+				final int previous = values[slot];
+				if ( replace ) {
+					values[slot] = value;
+				}
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		return -1;
+	}
+
+	/**
+	 * @return removed value or -1
+	 */
+	public int remove(long key)
+	{
+		final int mask = keys.length - 1;
+		int slot = hash( key ) & mask;
+		while ( values[slot] != FREE )
+		{
+			if ( keys[slot] == key )
+			{
+				final int previous = values[slot];
+				shiftBack( slot );
+				size--;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	// backward-shift deletion, keeps probe sequences intact without tombstones
+	private void shiftBack(int freed)
+	{
+		final int mask = keys.length - 1;
+		int slot = freed;
+		while ( true )
+		{
+			slot = (slot + 1) & mask;
+			if ( values[slot] == FREE ) {
+				break;
+			}
+			final int home = hash( keys[slot] ) & mask;
+			// move entry if its home slot is not within (freed,slot]
+			final boolean canMove = freed <= slot ? ( home <= freed || home > slot ) : ( home <= freed && home > slot );
+			if ( canMove )
+			{
+				keys[freed] = keys[slot];
+				values[freed] = values[slot];
+				freed = slot;
+			}
+		}
+		values[freed] = FREE;
+	}
+
+	private void rehash(int newCapacity)
+	{
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		allocate( newCapacity );
+		final int mask = keys.length - 1;
+		for ( int i = 0 ; i < oldKeys.length ; i++ )
+		{
+			if ( oldValues[i] != FREE )
+			{
+				int slot = hash( oldKeys[i] ) & mask;
+				while ( values[slot] != FREE ) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	private static int hash(long key)
+	{
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) ( h ^ (h >>> 32) );
+	}
+}
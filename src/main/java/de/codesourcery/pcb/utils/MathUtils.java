@@ -30,13 +30,18 @@ public class MathUtils {
 	
 	public static boolean intersect(Vector2 p0,Vector2 p1,Vector2 p2,Vector2 p3)
 	{
-		final float s1_x = p1.x - p0.x;     
-	    final float s1_y = p1.y - p0.y;
-	    final float s2_x = p3.x - p2.x;     
-	    final float s2_y = p3.y - p2.y;
+		return intersect( p0.x , p0.y , p1.x , p1.y , p2.x , p2.y , p3.x , p3.y );
+	}
+	
+	public static boolean intersect(float p0x,float p0y,float p1x,float p1y,float p2x,float p2y,float p3x,float p3y)
+	{
+		final float s1_x = p1x - p0x;     
+	    final float s1_y = p1y - p0y;
+	    final float s2_x = p3x - p2x;     
+	    final float s2_y = p3y - p2y;
 
-	    final float s = (-s1_y * (p0.x - p2.x) + s1_x * (p0.y - p2.y)) / (-s2_x * s1_y + s1_x * s2_y);
-	    final float t = ( s2_x * (p0.y - p2.y) - s2_y * (p0.x - p2.x)) / (-s2_x * s1_y + s1_x * s2_y);
+	    final float s = (-s1_y * (p0x - p2x) + s1_x * (p0y - p2y)) / (-s2_x * s1_y + s1_x * s2_y);
+	    final float t = ( s2_x * (p0y - p2y) - s2_y * (p0x - p2x)) / (-s2_x * s1_y + s1_x * s2_y);
 
 	    if (s >= 0 && s <= 1 && t >= 0 && t <= 1)
 	    {
@@ -44,4 +49,34 @@ public class MathUtils {
 	    }
 	    return false;
 	}	
+
+	/**
+	 * Maps a float to an int so that comparing the ints gives the same order as comparing the floats.
+	 *
+	 * Useful for sorting floats packed into the upper half of a <code>long</code>.
+	 */
+	public static int toSortableInt(float value)
+	{
+		// flip bits of negative numbers so that comparing the raw bits as ints matches the float order
+		final int bits = Float.floatToIntBits( value + 0.0f );
+		return bits ^ ( ( bits >> 31 ) & 0x7fffffff );
+	}
+
+	/**
+	 * Returns the squared distance between a point and a line segment.
+	 */
+	public static float distanceSquared(float px,float py,float x0,float y0,float x1,float y1)
+	{
+		// solution adopted from http://stackoverflow.com/questions/849211/shortest-distance-between-a-point-and-a-line-segment
+		final float sx = x1 - x0;
+		final float sy = y1 - y0;
+		final float len2 = sx*sx + sy*sy;
+		float t = 0;
+		if ( len2 != 0 ) {
+			t = Math.max( 0 , Math.min( 1 , ( (px - x0)*sx + (py - y0)*sy ) / len2 ) );
+		}
+		final float dx = px - ( x0 + t*sx );
+		final float dy = py - ( y0 + t*sy );
+		return dx*dx + dy*dy;
+	}
 }
@@ -0,0 +1,308 @@
+package de.codesourcery.pcb.utils;
+
+import java.util.Arrays;
+
+/**
+ * Uniform hash grid that maps integer IDs (point or line indices) to square cells.
+ *
+ * Only cells that actually hold something take up memory, so the grid
+ * works for arbitrarily large (and sparse) coordinate ranges. Points occupy exactly
+ * one cell, line segments occupy every cell they pass through.
+ *
+ * Removing an item requires passing the same coordinates that were used when adding it.
+ */
+public final class SpatialGrid
+{
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	// keeps keys away from EMPTY and int overflows when converting huge coordinates
+	private static final int MAX_CELL = 1 << 30;
+
+	private final float cellSize;
+	private final float invCellSize;
+
+	private long[] keys;
+	private int[][] cells;
+	private int[] cellSizes;
+	private int usedSlots;
+
+	public SpatialGrid(float cellSize)
+	{
+		if ( cellSize <= 0 ) {
+			throw new IllegalArgumentException("Cell size must be > 0, was: "+cellSize);
+		}
+		this.cellSize = cellSize;
+		this.invCellSize = 1.0f / cellSize;
+		allocate( 64 );
+	}
+
+	private void allocate(int slotCount)
+	{
+		keys = new long[ slotCount ];
+		Arrays.fill( keys , EMPTY );
+		cells = new int[ slotCount ][];
+		cellSizes = new int[ slotCount ];
+		usedSlots = 0;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public void clear()
+	{
+		Arrays.fill( keys , EMPTY );
+		Arrays.fill( cellSizes , 0 );
+		usedSlots = 0;
+	}
+
+	public void add(int id,float x,float y)
+	{
+		addToCell( cellCoord( x ) , cellCoord( y ) , id );
+	}
+
+	public void remove(int id,float x,float y)
+	{
+		removeFromCell( cellCoord( x ) , cellCoord( y ) , id );
+	}
+
+	public void add(int id,float x0,float y0,float x1,float y1)
+	{
+		visitSegmentCells( id , x0 , y0 , x1 , y1 , true );
+	}
+
+	public void remove(int id,float x0,float y0,float x1,float y1)
+	{
+		visitSegmentCells( id , x0 , y0 , x1 , y1 , false );
+	}
+
+	/**
+	 * Appends the IDs of all items in cells overlapping the given rectangle.
+	 *
+	 * Line segments spanning multiple cells may get reported more than once,
+	 * callers need to take care of duplicates themselves.
+	 *
+	 * @param result list to append IDs to, not cleared by this method
+	 */
+	public void query(float minX,float minY,float maxX,float maxY,IntList result)
+	{
+		final int cx0 = cellCoord( minX );
+		final int cx1 = cellCoord( maxX );
+		final int cy0 = cellCoord( minY );
+		final int cy1 = cellCoord( maxY );
+		for ( int cx = cx0 ; cx <= cx1 ; cx++ )
+		{
+			for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+			{
+				final int slot = findSlot( key( cx , cy ) );
+				if ( slot != -1 )
+				{
+					final int[] ids = cells[slot];
+					final int len = cellSizes[slot];
+					for ( int i = 0 ; i < len ; i++ ) {
+						result.add( ids[i] );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of cells a query for the given rectangle would look at.
+	 *
+	 * Queries for large areas are slower than a linear scan over all items, callers 
+	 * can use this to decide which one to use.
+	 */
+	public long getCellCount(float minX,float minY,float maxX,float maxY)
+	{
+		final long columns = (long) cellCoord( maxX ) - cellCoord( minX ) + 1;
+		final long rows = (long) cellCoord( maxY ) - cellCoord( minY ) + 1;
+		return columns * rows;
+	}
+
+	private void visitSegmentCells(int id,float x0,float y0,float x1,float y1,boolean insert)
+	{
+		final float minX = Math.min( x0 , x1 );
+		final float maxX = Math.max( x0 , x1 );
+		final int cx0 = cellCoord( minX );
+		final int cx1 = cellCoord( maxX );
+
+		for ( int cx = cx0 ; cx <= cx1 ; cx++ )
+		{
+			// part of the segment that lies within this column of cells
+			final float ya;
+			final float yb;
+			if ( x0 == x1 ) 
+			{
+				ya = y0;
+				yb = y1;
+			} 
+			else 
+			{
+				final float colMinX = Math.max( minX , cx * cellSize );
+				final float colMaxX = Math.min( maxX , (cx+1) * cellSize );
+				ya = yAt( colMinX , x0 , y0 , x1 , y1 );
+				yb = yAt( colMaxX , x0 , y0 , x1 , y1 );
+			}
+
+			final int cy0 = cellCoord( Math.min( ya , yb ) );
+			final int cy1 = cellCoord( Math.max( ya , yb ) );
+			for ( int cy = cy0 ; cy <= cy1 ; cy++ )
+			{
+				if ( insert ) {
+					addToCell( cx , cy , id );
+				} else {
+					removeFromCell( cx , cy , id );
+				}
+			}
+		}
+	}
+
+	private static float yAt(float x,float x0,float y0,float x1,float y1)
+	{
+		if ( x == x0 ) {
+			return y0;
+		}
+		if ( x == x1 ) {
+			return y1;
+		}
+		return y0 + (y1 - y0) * ( (x - x0) / (x1 - x0) );
+	}
+
+	private void addToCell(int cx,int cy,int id)
+	{
+		final int slot = findOrCreateSlot( key( cx , cy ) );
+		int[] ids = cells[slot];
+		final int len = cellSizes[slot];
+		if ( ids == null ) {
+			ids = cells[slot] = new int[4];
+		}
+		else if ( len == ids.length )
+		{
+			ids = cells[slot] = Arrays.copyOf( ids , len * 2 );
+		}
+		ids[len] = id;
+		cellSizes[slot] = len + 1;
+	}
+
+	private void removeFromCell(int cx,int cy,int id)
+	{
+		final int slot = findSlot( key( cx , cy ) );
+		if ( slot == -1 ) {
+			return;
+		}
+		final int[] ids = cells[slot];
+		final int len = cellSizes[slot];
+		for ( int i = 0 ; i < len ; i++ )
+		{
+			if ( ids[i] == id )
+			{
+				ids[i] = ids[len-1];
+				cellSizes[slot] = len - 1;
+				return;
+			}
+		}
+	}
+
+	private int findSlot(long key)
+	{
+		final int mask = keys.length - 1;
+		int slot = hash( key ) & mask;
+		while ( true )
+		{
+			final long existing = keys[slot];
+			if ( existing == key ) {
+				return slot;
+			}
+			if ( existing == EMPTY ) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private int findOrCreateSlot(long key)
+	{
+		if ( (usedSlots+1) * 2 > keys.length ) {
+			rehash();
+		}
+		final int mask = keys.length - 1;
+		int slot = hash( key ) & mask;
+		while ( true )
+		{
+			final long existing = keys[slot];
+			if ( existing == key ) {
+				return slot;
+			}
+			if ( existing == EMPTY )
+			{
+				keys[slot] = key;
+				cellSizes[slot] = 0;
+				usedSlots++;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void rehash()
+	{
+		final long[] oldKeys = keys;
+		final int[][] oldCells = cells;
+		final int[] oldSizes = cellSizes;
+
+		int nonEmpty = 0;
+		for ( int i = 0 ; i < oldKeys.length ; i++ )
+		{
+			if ( oldKeys[i] != EMPTY && oldSizes[i] > 0 ) {
+				nonEmpty++;
+			}
+		}
+		// size for the cells still in use so that tables do not keep growing
+		// when items move around and leave empty cells behind
+		int newSize = 64;
+		while ( newSize < nonEmpty * 4 ) {
+			newSize *= 2;
+		}
+		allocate( newSize );
+		final int mask = keys.length - 1;
+		for ( int i = 0 ; i < oldKeys.length ; i++ )
+		{
+			final long key = oldKeys[i];
+			// drop cells that became empty
+			if ( key != EMPTY && oldSizes[i] > 0 )
+			{
+				int slot = hash( key ) & mask;
+				while ( keys[slot] != EMPTY ) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				cells[slot] = oldCells[i];
+				cellSizes[slot] = oldSizes[i];
+				usedSlots++;
+			}
+		}
+	}
+
+	private int cellCoord(float value)
+	{
+		final float scaled = (float) Math.floor( value * invCellSize );
+		if ( scaled >= MAX_CELL ) {
+			return MAX_CELL;
+		}
+		if ( scaled <= -MAX_CELL ) {
+			return -MAX_CELL;
+		}
+		return (int) scaled;
+	}
+
+	private static long key(int cx,int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+
+	private static int hash(long key)
+	{
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) ( h ^ (h >>> 32) );
+	}
+}
@@ -0,0 +1,89 @@
+package de.codesourcery.pcb.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Bounded undo/redo history of immutable states.
+ *
+ * Before each edit, the state prior to the edit gets recorded using {@link #push(Object)}.
+ * Undoing hands in the current state (so it can be redone later) and returns the state to go back to.
+ *
+ * @param <T> type of state
+ */
+public final class UndoHistory<T>
+{
+	private final int maxSize;
+	private final Deque<T> undoStack = new ArrayDeque<>();
+	private final Deque<T> redoStack = new ArrayDeque<>();
+
+	public UndoHistory(int maxSize)
+	{
+		Validate.isTrue( maxSize > 0 , "maxSize must be > 0");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Records the state before an edit, discarding all states that could be redone.
+	 */
+	public void push(T state)
+	{
+		Validate.notNull(state, "state must not be NULL");
+		redoStack.clear();
+		add( undoStack , state );
+	}
+
+	private void add(Deque<T> stack,T state)
+	{
+		stack.push( state );
+		if ( stack.size() > maxSize ) {
+			stack.removeLast();
+		}
+	}
+
+	public boolean canUndo() {
+		return ! undoStack.isEmpty();
+	}
+
+	public boolean canRedo() {
+		return ! redoStack.isEmpty();
+	}
+
+	/**
+	 * Returns the state to go back to.
+	 *
+	 * @param current current state, becomes available to {@link #redo(Object)}
+	 */
+	public T undo(T current)
+	{
+		Validate.notNull(current, "current must not be NULL");
+		if ( undoStack.isEmpty() ) {
+			throw new IllegalStateException("Nothing to undo");
+		}
+		add( redoStack , current );
+		return undoStack.pop();
+	}
+
+	/**
+	 * Returns the state to go forward to.
+	 *
+	 * @param current current state, becomes available to {@link #undo(Object)}
+	 */
+	public T redo(T current)
+	{
+		Validate.notNull(current, "current must not be NULL");
+		if ( redoStack.isEmpty() ) {
+			throw new IllegalStateException("Nothing to redo");
+		}
+		add( undoStack , current );
+		return redoStack.pop();
+	}
+
+	public void clear()
+	{
+		undoStack.clear();
+		redoStack.clear();
+	}
+}
@@ -0,0 +1,199 @@
+package de.codesourcery.pcb.drc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.model.Line;
+import de.codesourcery.pcb.model.Model;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.PartInstance;
+import de.codesourcery.pcb.model.Port;
+import de.codesourcery.pcb.model.TransformedOutline;
+
+public class DesignRuleCheckerTest
+{
+	@Test
+	public void testPartViolationsAreReportedForEachInstance()
+	{
+		final Part open = new Part();
+		open.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		open.outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+
+		final Part portOutside = square( 10 );
+		final Port port = new Port();
+		port.center.set( 20 , 5 );
+		portOutside.addPort( port );
+
+		final Model model = new Model();
+		addInstance( model , open , 0 , 0 );
+		addInstance( model , open , 100 , 0 );
+		addInstance( model , portOutside , 200 , 0 );
+		addInstance( model , square( 10 ) , 300 , 0 );
+
+		final List<Violation> violations = new ArrayList<>();
+		assertEquals( 3 , new DesignRuleChecker().check( model , violations::add ) );
+		assertEquals( 3 , violations.size() );
+		final Set<String> expected = new HashSet<>();
+		expected.add( "OPEN_OUTLINE 0" );
+		expected.add( "OPEN_OUTLINE 1" );
+		expected.add( "PORT_OUTSIDE_OUTLINE 2" );
+		final Set<String> actual = new HashSet<>();
+		for ( Violation v : violations )
+		{
+			assertNull( v.getSecond() );
+			actual.add( v.getType()+" "+model.getParts().indexOf( v.getFirst() ) );
+		}
+		assertEquals( expected , actual );
+	}
+
+	@Test
+	public void testOverlapAndClearance()
+	{
+		final Part part = square( 10 );
+		final Model model = new Model();
+		addInstance( model , part , 0 , 0 );
+		addInstance( model , part , 5 , 5 ); // overlaps the first one
+		addInstance( model , part , 30 , 0 );
+		addInstance( model , part , 41 , 0 ); // 1 unit right of the third one
+
+		final DesignRuleChecker checker = new DesignRuleChecker();
+		assertEquals( set( "OVERLAP 0-1" ) , check( checker , model ) );
+
+		checker.setClearance( 2 );
+		assertEquals( set( "OVERLAP 0-1" , "CLEARANCE 2-3" ) , check( checker , model ) );
+
+		checker.setClearance( 0.5f );
+		assertEquals( set( "OVERLAP 0-1" ) , check( checker , model ) );
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeClearance() {
+		new DesignRuleChecker().setClearance( -1 );
+	}
+
+	@Test
+	public void testRandomBoardsMatchAllPairs()
+	{
+		final ForkJoinPool pool = new ForkJoinPool( 4 );
+		try
+		{
+			for ( int seed = 0 ; seed < 10 ; seed++ )
+			{
+				final Random rnd = new Random( seed );
+				final Model model = new Model();
+				final List<Part> parts = new ArrayList<>();
+				for ( int i = 0 ; i < 5 ; i++ ) {
+					parts.add( star( rnd ) );
+				}
+				// enough instances to be split across several tasks
+				for ( int i = 0 ; i < 300 ; i++ )
+				{
+					final PartInstance instance = addInstance( model , parts.get( rnd.nextInt( parts.size() ) ) , rnd.nextFloat() * 1000 , rnd.nextFloat() * 1000 );
+					instance.setRotation( rnd.nextFloat() * 360 );
+				}
+				final DesignRuleChecker checker = new DesignRuleChecker( pool );
+				checker.setClearance( rnd.nextFloat() * 10 );
+
+				final Set<String> actual = check( checker , model );
+				assertEquals( "seed "+seed , allPairs( model , checker.getClearance() ) , actual );
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private static Set<String> allPairs(Model model,float clearance)
+	{
+		final Set<String> result = new HashSet<>();
+		final List<PartInstance> instances = model.getParts();
+		final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+		for ( int i = 0 ; i < instances.size() ; i++ )
+		{
+			for ( int j = i + 1 ; j < instances.size() ; j++ )
+			{
+				final TransformedOutline a = instances.get( i ).getOutline();
+				final TransformedOutline b = instances.get( j ).getOutline();
+				if ( a.overlaps( b , scratch ) ) {
+					result.add( "OVERLAP "+i+"-"+j );
+				} else if ( clearance > 0 && a.isWithinDistance( b , clearance , scratch ) ) {
+					result.add( "CLEARANCE "+i+"-"+j );
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Set<String> check(DesignRuleChecker checker,Model model)
+	{
+		final List<PartInstance> instances = model.getParts();
+		final Set<String> result = new HashSet<>();
+		final int count = checker.check( model , v ->
+		{
+			final int i = instances.indexOf( v.getFirst() );
+			final int j = instances.indexOf( v.getSecond() );
+			assertTrue( "reported twice: "+v , result.add( v.getType()+" "+Math.min( i , j )+"-"+Math.max( i , j ) ) );
+		});
+		assertEquals( result.size() , count );
+		return result;
+	}
+
+	private static Set<String> set(String... values)
+	{
+		final Set<String> result = new HashSet<>();
+		for ( String value : values ) {
+			result.add( value );
+		}
+		return result;
+	}
+
+	private static PartInstance addInstance(Model model,Part part,float x,float y)
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = part;
+		instance.setPosition( x , y );
+		model.getParts().add( instance );
+		return instance;
+	}
+
+	private static Part square(float size)
+	{
+		final Part part = new Part();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( size , 0 ) ) );
+		part.outline.addLine( new Line( new Vector2( size , 0 ) , new Vector2( size , size ) ) );
+		part.outline.addLine( new Line( new Vector2( size , size ) , new Vector2( 0 , size ) ) );
+		part.outline.addLine( new Line( new Vector2( 0 , size ) , new Vector2( 0 , 0 ) ) );
+		return part;
+	}
+
+	// star-shaped outline around the origin
+	private static Part star(Random rnd)
+	{
+		final Part part = new Part();
+		final int points = 3 + rnd.nextInt( 100 );
+		final float radius = 5 + rnd.nextFloat() * 40;
+		final Vector2[] corners = new Vector2[ points ];
+		for ( int i = 0 ; i < points ; i++ )
+		{
+			final double angle = 2 * Math.PI * i / points;
+			final double r = radius * ( 0.3 + 0.7 * rnd.nextDouble() );
+			corners[i] = new Vector2( (float) ( r * Math.cos( angle ) ) , (float) ( r * Math.sin( angle ) ) );
+		}
+		for ( int i = 0 ; i < points ; i++ ) {
+			part.outline.addLine( new Line( corners[i].cpy() , corners[ ( i + 1 ) % points ].cpy() ) );
+		}
+		return part;
+	}
+}
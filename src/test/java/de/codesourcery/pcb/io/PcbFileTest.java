@@ -0,0 +1,329 @@
+package de.codesourcery.pcb.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.model.Line;
+import de.codesourcery.pcb.model.Model;
+import de.codesourcery.pcb.model.Outline;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.PartInstance;
+import de.codesourcery.pcb.model.Port;
+
+public class PcbFileTest
+{
+	private static final String UTF8_NAME = "Widerstand \u00e4\u00f6\u00fc \u03a9 \u20ac \ud83d\ude00";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testBoardRoundTrip() throws IOException
+	{
+		final Part resistor = square( UTF8_NAME , 0 , 0 , 10 );
+		// leaves deleted point slots behind that must not end up in the file
+		resistor.outline.addLine( new Line( new Vector2( 20 , 20 ) , new Vector2( 30 , 30 ) ) );
+		resistor.outline.removeLine( new Line( new Vector2( 20 , 20 ) , new Vector2( 30 , 30 ) ) );
+		assertTrue( resistor.outline.getPointSlotCount() > pointCount( resistor.outline ) );
+		resistor.outline.setMergeTolerance( 0.25f );
+		resistor.addPort( port( 2 , 3 , 1 , null ) );
+		resistor.addPort( port( 7 , 8 , 16 , "\u00dcberlauf \u2192 \u221e" ) );
+		resistor.addPort( port( 5 , 5 , 8 , "" ) );
+
+		final Part unnamed = square( null , -5 , -5 , 3 );
+
+		final Model model = new Model();
+		model.getParts().add( instance( resistor , 100 , 200 , 0 ) );
+		model.getParts().add( instance( unnamed , -1.5f , 2.25f , 90 ) );
+		model.getParts().add( instance( resistor , 300 , 400 , 33.5f ) );
+
+		final Path file = folder.newFile( "board.pcb" ).toPath();
+		PcbWriter.write( model , file );
+
+		try ( PcbFile in = PcbFile.open( file ) )
+		{
+			assertEquals( 2 , in.getPartCount() );
+			assertEquals( 3 , in.getInstanceCount() );
+			assertEquals( UTF8_NAME , in.getPartName( 0 ) );
+			assertNull( in.getPartName( 1 ) );
+
+			final Model read = in.readModel();
+			final List<PartInstance> instances = read.getParts();
+			assertEquals( 3 , instances.size() );
+			for ( int i = 0 ; i < instances.size() ; i++ )
+			{
+				final PartInstance expected = model.getParts().get( i );
+				final PartInstance actual = instances.get( i );
+				assertEquals( expected.position.x , actual.position.x , 0 );
+				assertEquals( expected.position.y , actual.position.y , 0 );
+				assertEquals( expected.rotation , actual.rotation , 0 );
+				assertPartEquals( expected.part , actual.part );
+			}
+			// instances of the same part share it after reading as well
+			assertSame( instances.get( 0 ).part , instances.get( 2 ).part );
+			assertSame( instances.get( 0 ).part , in.getPart( 0 ) );
+			assertTrue( instances.get( 0 ).part != instances.get( 1 ).part );
+		}
+	}
+
+	@Test
+	public void testLibraryRoundTrip() throws IOException
+	{
+		final List<Part> parts = new ArrayList<>();
+		parts.add( square( "first" , 0 , 0 , 1 ) );
+		parts.add( new Part() );
+		parts.add( square( "third" , 1 , 2 , 3 ) );
+		parts.get( 2 ).addPort( port( 2 , 3 , 4 , "label" ) );
+
+		final Path file = folder.newFile( "library.pcb" ).toPath();
+		PcbWriter.write( parts , file );
+
+		try ( PcbFile in = PcbFile.open( file ) )
+		{
+			assertEquals( 3 , in.getPartCount() );
+			assertEquals( 0 , in.getInstanceCount() );
+			assertTrue( in.readModel().getParts().isEmpty() );
+			for ( int i = 0 ; i < parts.size() ; i++ )
+			{
+				assertEquals( parts.get( i ).getName() , in.getPartName( i ) );
+				assertPartEquals( parts.get( i ) , in.getPart( i ) );
+			}
+			assertSame( in.getPart( 2 ) , in.getPart( 2 ) );
+			assertTrue( in.readPart( 2 ) != in.getPart( 2 ) );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsEmptyFile() throws IOException {
+		PcbFile.open( folder.newFile( "empty.pcb" ).toPath() ).close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsWrongMagic() throws IOException
+	{
+		final Path file = writeBoard();
+		patchInt( file , 0 , 0x12345678 );
+		PcbFile.open( file ).close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsUnsupportedVersion() throws IOException
+	{
+		final Path file = writeBoard();
+		patchInt( file , 4 , PcbFormat.VERSION + 1 );
+		PcbFile.open( file ).close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsNegativePartCount() throws IOException
+	{
+		final Path file = writeBoard();
+		patchInt( file , 8 , -1 );
+		PcbFile.open( file ).close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsTablesLargerThanFile() throws IOException
+	{
+		final Path file = writeBoard();
+		patchInt( file , 12 , Integer.MAX_VALUE );
+		PcbFile.open( file ).close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsPartOffsetBeyondEndOfFile() throws IOException
+	{
+		final Path file = writeBoard();
+		patchLong( file , PcbFormat.HEADER_SIZE , Files.size( file ) );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPart( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsNegativePartOffset() throws IOException
+	{
+		final Path file = writeBoard();
+		patchLong( file , PcbFormat.HEADER_SIZE , -8 );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPartName( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsTruncatedPart() throws IOException
+	{
+		final Path file = writeBoard();
+		final byte[] data = Files.readAllBytes( file );
+		Files.write( file , Arrays.copyOf( data , data.length - 10 ) );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPart( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsPointCountLargerThanRecord() throws IOException
+	{
+		final Path file = writeBoard();
+		// name, merge tolerance, point count
+		patchInt( file , partOffset( file ) + PcbFormat.stringSize( PcbFormat.encode( "board part" ) ) + 4 , 1_000_000 );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPart( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsLineWithInvalidPointIndex() throws IOException
+	{
+		final Path file = writeBoard();
+		// name, merge tolerance, counts, 4 points (x and y), start point of first line
+		final int offset = partOffset( file ) + PcbFormat.stringSize( PcbFormat.encode( "board part" ) ) + 4 * 4 + 8 * 4;
+		patchInt( file , offset , 4 );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPart( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsNameLongerThanFile() throws IOException
+	{
+		final Path file = writeBoard();
+		patchInt( file , partOffset( file ) , Integer.MAX_VALUE );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.getPartName( 0 );
+		}
+	}
+
+	@Test(expected=IOException.class)
+	public void testRejectsInstanceWithInvalidPartIndex() throws IOException
+	{
+		final Path file = writeBoard();
+		// header, one part offset, first instance
+		patchInt( file , PcbFormat.HEADER_SIZE + 8 , 1 );
+		try ( PcbFile in = PcbFile.open( file ) ) {
+			in.readModel();
+		}
+	}
+
+	// a board with one instance of a square part
+	private Path writeBoard() throws IOException
+	{
+		final Model model = new Model();
+		model.getParts().add( instance( square( "board part" , 0 , 0 , 10 ) , 1 , 2 , 0 ) );
+		final Path file = folder.newFile( "board.pcb" ).toPath();
+		PcbWriter.write( model , file );
+		return file;
+	}
+
+	private static int partOffset(Path file) throws IOException {
+		return (int) buffer( Files.readAllBytes( file ) ).getLong( PcbFormat.HEADER_SIZE );
+	}
+
+	private static void patchInt(Path file,int offset,int value) throws IOException
+	{
+		final byte[] data = Files.readAllBytes( file );
+		buffer( data ).putInt( offset , value );
+		Files.write( file , data );
+	}
+
+	private static void patchLong(Path file,int offset,long value) throws IOException
+	{
+		final byte[] data = Files.readAllBytes( file );
+		buffer( data ).putLong( offset , value );
+		Files.write( file , data );
+	}
+
+	private static ByteBuffer buffer(byte[] data) {
+		return ByteBuffer.wrap( data ).order( PcbFormat.BYTE_ORDER );
+	}
+
+	private static void assertPartEquals(Part expected,Part actual)
+	{
+		assertEquals( expected.getName() , actual.getName() );
+		assertOutlineEquals( expected.outline , actual.outline );
+
+		final List<Port> expectedPorts = new ArrayList<>();
+		final List<Port> actualPorts = new ArrayList<>();
+		expected.visitPorts( expectedPorts::add );
+		actual.visitPorts( actualPorts::add );
+		assertEquals( expectedPorts.size() , actualPorts.size() );
+		for ( int i = 0 ; i < expectedPorts.size() ; i++ )
+		{
+			assertEquals( expectedPorts.get( i ).center , actualPorts.get( i ).center );
+			assertEquals( expectedPorts.get( i ).bitWidth , actualPorts.get( i ).bitWidth );
+			assertEquals( expectedPorts.get( i ).label , actualPorts.get( i ).label );
+		}
+	}
+
+	private static void assertOutlineEquals(Outline expected,Outline actual)
+	{
+		assertEquals( expected.getMergeTolerance() , actual.getMergeTolerance() , 0 );
+		// deleted point slots get skipped when writing
+		assertEquals( pointCount( expected ) , actual.getPointSlotCount() );
+		assertEquals( pointCount( expected ) , pointCount( actual ) );
+		assertEquals( expected.getLineCount() , actual.getLineCount() );
+		for ( int i = 0 ; i < expected.getLineCount() ; i++ )
+		{
+			assertEquals( expected.point( expected.startIndex( i ) ) , actual.point( actual.startIndex( i ) ) );
+			assertEquals( expected.point( expected.endIndex( i ) ) , actual.point( actual.endIndex( i ) ) );
+		}
+		assertEquals( expected.isClosed() , actual.isClosed() );
+	}
+
+	private static int pointCount(Outline outline)
+	{
+		int count = 0;
+		for ( int i = 0 ; i < outline.getPointSlotCount() ; i++ )
+		{
+			if ( ! outline.isDeleted( i ) ) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static Part square(String name,float x,float y,float size)
+	{
+		final Part part = new Part();
+		part.setName( name );
+		part.outline.addLine( new Line( new Vector2( x , y ) , new Vector2( x + size , y ) ) );
+		part.outline.addLine( new Line( new Vector2( x + size , y ) , new Vector2( x + size , y + size ) ) );
+		part.outline.addLine( new Line( new Vector2( x + size , y + size ) , new Vector2( x , y + size ) ) );
+		part.outline.addLine( new Line( new Vector2( x , y + size ) , new Vector2( x , y ) ) );
+		return part;
+	}
+
+	private static Port port(float x,float y,int bitWidth,String label)
+	{
+		final Port port = new Port();
+		port.center.set( x , y );
+		port.bitWidth = bitWidth;
+		port.label = label;
+		return port;
+	}
+
+	private static PartInstance instance(Part part,float x,float y,float rotation)
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = part;
+		instance.setPosition( x , y );
+		instance.setRotation( rotation );
+		return instance;
+	}
+}
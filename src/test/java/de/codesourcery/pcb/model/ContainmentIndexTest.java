@@ -0,0 +1,199 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ContainmentIndexTest
+{
+	private static final int SEEDS = 200;
+	private static final int QUERIES_PER_SEED = 2000;
+
+	@Test
+	public void testContainsMatchesRayCast()
+	{
+		final float[] point = new float[2];
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Polygon polygon = new Polygon( rnd );
+			final ContainmentIndex index = polygon.index();
+			for ( int i = 0 ; i < QUERIES_PER_SEED ; i++ )
+			{
+				polygon.randomPoint( rnd , point );
+				assertEquals( "seed "+seed+", point ("+point[0]+","+point[1]+")" ,
+						polygon.contains( point[0] , point[1] ) , index.contains( point[0] , point[1] ) );
+			}
+		}
+	}
+
+	@Test
+	public void testOutlineContainsMatchesRayCast()
+	{
+		final float[] point = new float[2];
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Polygon polygon = new Polygon( rnd );
+			final Outline outline = polygon.toOutline();
+			for ( int i = 0 ; i < QUERIES_PER_SEED / 10 ; i++ )
+			{
+				polygon.randomPoint( rnd , point );
+				assertEquals( "seed "+seed , polygon.contains( point[0] , point[1] ) , outline.contains( point[0] , point[1] ) );
+			}
+		}
+	}
+
+	@Test
+	public void testBatchMatchesRayCast()
+	{
+		final float[] point = new float[2];
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Polygon polygon = new Polygon( rnd );
+			final ContainmentIndex index = polygon.index();
+
+			final int count = rnd.nextInt( QUERIES_PER_SEED );
+			final float[] px = new float[ count ];
+			final float[] py = new float[ count ];
+			final boolean[] expected = new boolean[ count ];
+			int insideCount = 0;
+			for ( int i = 0 ; i < count ; i++ )
+			{
+				polygon.randomPoint( rnd , point );
+				px[i] = point[0];
+				py[i] = point[1];
+				expected[i] = polygon.contains( px[i] , py[i] );
+				insideCount += expected[i] ? 1 : 0;
+			}
+
+			for ( boolean parallel : new boolean[] { false , true } )
+			{
+				final String message = "seed "+seed+", parallel: "+parallel;
+				final boolean[] actual = new boolean[ count ];
+				index.contains( px , py , count , actual , parallel );
+				assertTrue( message , Arrays.equals( expected , actual ) );
+				assertEquals( message , insideCount == count , index.containsAll( px , py , count , parallel ) );
+
+				// only the points inside
+				final float[] insideX = new float[ insideCount ];
+				final float[] insideY = new float[ insideCount ];
+				for ( int i = 0 , j = 0 ; i < count ; i++ )
+				{
+					if ( expected[i] )
+					{
+						insideX[j] = px[i];
+						insideY[j++] = py[i];
+					}
+				}
+				assertTrue( message , index.containsAll( insideX , insideY , insideCount , parallel ) );
+			}
+		}
+	}
+
+	@Test
+	public void testOutlineBatchMatchesRayCast()
+	{
+		final Random rnd = new Random( 42 );
+		final Polygon polygon = new Polygon( rnd );
+		final Outline outline = polygon.toOutline();
+
+		// large enough to be checked using multiple threads
+		final int count = 20000;
+		final float[] px = new float[ count ];
+		final float[] py = new float[ count ];
+		final float[] point = new float[2];
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			polygon.randomPoint( rnd , point );
+			px[i] = point[0];
+			py[i] = point[1];
+		}
+		final boolean[] actual = new boolean[ count ];
+		outline.contains( px , py , count , actual );
+		boolean allInside = true;
+		for ( int i = 0 ; i < count ; i++ )
+		{
+			assertEquals( "point "+i , polygon.contains( px[i] , py[i] ) , actual[i] );
+			allInside &= actual[i];
+		}
+		assertEquals( allInside , outline.containsAll( px , py , count ) );
+	}
+
+	@Test
+	public void testTallLinesAreStoredOnlyAFewTimes()
+	{
+		// comb with long teeth, every line but the bottom ones spans (almost) all slabs
+		final Polygon polygon = new Polygon( new Random( 0 ) , 0 , 0 , 0 );
+		final int teeth = 2000;
+		polygon.addPoint( 0 , 0 );
+		for ( int i = 0 ; i < teeth ; i++ )
+		{
+			final int height = 10000 - ( i % 7 ) * 1000;
+			polygon.addPoint( 2 * i + 1 , 0 );
+			polygon.addPoint( 2 * i + 1 , height );
+			polygon.addPoint( 2 * i + 2 , height );
+			polygon.addPoint( 2 * i + 2 , 0 );
+		}
+		polygon.addPoint( 2 * teeth + 1 , 0 );
+		polygon.addPoint( 2 * teeth + 1 , -100 );
+		polygon.addPoint( 0 , -100 );
+		for ( int i = 0 ; i < polygon.pointCount ; i++ ) {
+			polygon.addLine( i , ( i + 1 ) % polygon.pointCount );
+		}
+
+		final ContainmentIndex index = polygon.index();
+		assertTrue( "stored "+index.size()+" copies of "+polygon.lineCount+" lines" , index.size() <= 4 * polygon.lineCount );
+
+		final Random rnd = new Random( 42 );
+		for ( int i = 0 ; i < QUERIES_PER_SEED ; i++ )
+		{
+			final float x = rnd.nextFloat() * ( 2 * teeth + 4 ) - 1;
+			final float y = rnd.nextInt( 10 ) == 0 ? rnd.nextInt( 10 ) * 1000 : rnd.nextFloat() * 10200 - 101;
+			assertEquals( "point ("+x+","+y+")" , polygon.contains( x , y ) , index.contains( x , y ) );
+		}
+	}
+
+	@Test
+	public void testSquare()
+	{
+		final float[] xs = { 0 , 10 , 10 , 0 };
+		final float[] ys = { 0 , 0 , 10 , 10 };
+		final ContainmentIndex index = new ContainmentIndex( xs , ys , new int[] { 0 , 1 , 2 , 3 } , new int[] { 1 , 2 , 3 , 0 } , 4 );
+
+		assertTrue( index.contains( 5 , 5 ) );
+		assertTrue( index.contains( 0.5f , 9.5f ) );
+		assertFalse( index.contains( -1 , 5 ) );
+		assertFalse( index.contains( 11 , 5 ) );
+		assertFalse( index.contains( 5 , -1 ) );
+		assertFalse( index.contains( 5 , 11 ) );
+
+		final float[] px = { 5 , -1 , 9 , 5 };
+		final float[] py = { 5 , 5 , 1 , 11 };
+		final boolean[] result = new boolean[4];
+		index.contains( px , py , 4 , result , false );
+		assertTrue( Arrays.equals( new boolean[] { true , false , true , false } , result ) );
+		assertFalse( index.containsAll( px , py , 4 , false ) );
+		assertTrue( index.containsAll( new float[] { 5 , 9 } , new float[] { 5 , 1 } , 2 , false ) );
+		// nothing to check
+		assertTrue( index.containsAll( px , py , 0 , false ) );
+	}
+
+	@Test
+	public void testWithoutLines()
+	{
+		final ContainmentIndex index = new ContainmentIndex( new float[0] , new float[0] , new int[0] , new int[0] , 0 );
+		assertFalse( index.contains( 0 , 0 ) );
+
+		final boolean[] result = { true };
+		index.contains( new float[1] , new float[1] , 1 , result , false );
+		assertFalse( result[0] );
+		assertFalse( index.containsAll( new float[1] , new float[1] , 1 , false ) );
+	}
+}
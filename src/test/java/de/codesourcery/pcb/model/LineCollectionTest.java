@@ -0,0 +1,910 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.utils.MathUtils;
+
+public class LineCollectionTest
+{
+	private static final int SEEDS = 100;
+	private static final int QUERIES_PER_SEED = 300;
+
+	@Test
+	public void testNearestPointAndLineMatchBruteForce()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			final int lineCount = 1 + rnd.nextInt( 200 );
+			for ( int i = 0 ; i < lineCount ; i++ ) {
+				addRandomLine( lines , rnd );
+			}
+
+			for ( int q = 0 ; q < QUERIES_PER_SEED ; q++ )
+			{
+				final String message = "seed "+seed+", query "+q;
+				final float x = rnd.nextFloat() * 300 - 150;
+				final float y = rnd.nextFloat() * 300 - 150;
+				final float radius = rnd.nextInt( 10 ) == 0 ? 1000 : 1 + rnd.nextFloat() * 30;
+
+				final int point = lines.findNearestPoint( x , y , radius , -1 );
+				final float expectedPoint = nearestPointDistance2( lines , x , y , radius );
+				assertEquals( message , expectedPoint , point == -1 ? -1 : lines.point( point ).dst2( x , y ) , 0.0001f );
+
+				final int line = lines.findNearestLine( x , y , radius );
+				final float expectedLine = nearestLineDistance2( lines , x , y , radius );
+				assertEquals( message , expectedLine , line == -1 ? -1 : distance2( lines.start( line ) , lines.end( line ) , x , y ) , 0.0001f );
+
+				// move things around so that the index needs to keep up
+				if ( point != -1 && rnd.nextBoolean() ) {
+					lines.translatePoint( point , rnd.nextInt( 41 ) - 20 , rnd.nextInt( 41 ) - 20 );
+				}
+				if ( line != -1 && rnd.nextInt( 4 ) == 0 ) {
+					lines.translateLine( line , rnd.nextInt( 41 ) - 20 , rnd.nextInt( 41 ) - 20 );
+				}
+				if ( rnd.nextInt( 20 ) == 0 ) {
+					addRandomLine( lines , rnd );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIgnoredPoint()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+
+		final int nearest = lines.findNearestPoint( 1 , 0 , 20 , -1 );
+		assertEquals( 0 , lines.point( nearest ).dst2( 0 , 0 ) , 0 );
+		final int other = lines.findNearestPoint( 1 , 0 , 20 , nearest );
+		assertEquals( 0 , lines.point( other ).dst2( 10 , 0 ) , 0 );
+		assertEquals( -1 , lines.findNearestPoint( 1 , 0 , 5 , nearest ) );
+	}
+
+	@Test
+	public void testAddLineMergesPointsWithinTolerance()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.setMergeTolerance( 1 );
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+		lines.addLine( new Vector2( 10.2f , 0.3f ) , new Vector2( 20 , 0 ) );
+		// same line again, within tolerance
+		lines.addLine( new Vector2( 0.1f , -0.1f ) , new Vector2( 9.9f , 0 ) );
+
+		assertEquals( 3 , lines.getPointCount() );
+		assertEquals( 2 , lines.getLineCount() );
+		assertEquals( lines.endIndex( 0 ) , lines.startIndex( 1 ) );
+	}
+
+	@Test
+	public void testAddLineWithoutToleranceOnlyMergesIdenticalPoints()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+		lines.addLine( new Vector2( 10.01f , 0 ) , new Vector2( 20 , 0 ) );
+		lines.addLine( new Vector2( 20 , 0 ) , new Vector2( -0.0f , 0 ) );
+
+		assertEquals( 4 , lines.getPointCount() );
+		assertEquals( 3 , lines.getLineCount() );
+		assertEquals( lines.endIndex( 1 ) , lines.startIndex( 2 ) );
+		assertEquals( lines.startIndex( 0 ) , lines.endIndex( 2 ) );
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testAddLineCollapsingWithinTolerance()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.setMergeTolerance( 1 );
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 0.2f , 0.2f ) );
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeMergeTolerance() {
+		new LineCollection().setMergeTolerance( -1 );
+	}
+
+	@Test
+	public void testCompactMatchesBruteForce()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			final float tolerance = rnd.nextBoolean() ? 0 : 0.5f + rnd.nextInt( 4 );
+			lines.setMergeTolerance( tolerance );
+			final int lineCount = 1 + rnd.nextInt( 200 );
+			for ( int i = 0 ; i < lineCount ; i++ ) {
+				addRandomLine( lines , rnd );
+			}
+			// move points onto each other (or close to each other)
+			for ( int i = 0 , len = rnd.nextInt( 100 ) ; i < len ; i++ )
+			{
+				final int pointIdx = rnd.nextInt( lines.getPointCount() );
+				final int target = rnd.nextInt( lines.getPointCount() );
+				lines.translatePoint( pointIdx , lines.x( target ) - lines.x( pointIdx ) + rnd.nextInt( 3 ) * 0.25f ,
+						lines.y( target ) - lines.y( pointIdx ) );
+			}
+
+			// expected result: lines between distinct quantized end points, without duplicates
+			final Set<String> expectedPoints = new HashSet<>();
+			final Set<String> expectedLines = new HashSet<>();
+			for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+			{
+				final String start = quantize( lines.startX( i ) , lines.startY( i ) , tolerance );
+				final String end = quantize( lines.endX( i ) , lines.endY( i ) , tolerance );
+				if ( ! start.equals( end ) )
+				{
+					expectedPoints.add( start );
+					expectedPoints.add( end );
+					expectedLines.add( start+" -> "+end );
+				}
+			}
+
+			lines.compact();
+
+			final String message = "seed "+seed;
+			final Map<String,Integer> actualPoints = new HashMap<>();
+			for ( int i = 0 ; i < lines.getPointCount() ; i++ ) {
+				assertTrue( message , actualPoints.put( quantize( lines.x( i ) , lines.y( i ) , tolerance ) , i ) == null );
+			}
+			final Set<String> actualLines = new HashSet<>();
+			for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+			{
+				final String start = quantize( lines.startX( i ) , lines.startY( i ) , tolerance );
+				final String end = quantize( lines.endX( i ) , lines.endY( i ) , tolerance );
+				assertEquals( message , actualPoints.get( start ).intValue() , lines.startIndex( i ) );
+				assertEquals( message , actualPoints.get( end ).intValue() , lines.endIndex( i ) );
+				assertTrue( message , actualLines.add( start+" -> "+end ) );
+			}
+			assertEquals( message , expectedPoints , actualPoints.keySet() );
+			assertEquals( message , expectedLines , actualLines );
+		}
+	}
+
+	@Test
+	public void testRemoveLinesMatchesBruteForce()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			final List<String> expected = new ArrayList<>();
+			for ( int i = 0 , len = 1 + rnd.nextInt( 200 ) ; i < len ; i++ ) {
+				addRandomLine( lines , rnd );
+			}
+			for ( int i = 0 ; i < lines.getLineCount() ; i++ ) {
+				expected.add( lineToString( lines , i ) );
+			}
+
+			int op = 0;
+			while ( lines.getLineCount() > 0 )
+			{
+				final String message = "seed "+seed+", op "+op++;
+				final int lineIdx = rnd.nextInt( lines.getLineCount() );
+				// the last line takes the place of the removed one
+				expected.set( lineIdx , expected.get( expected.size() - 1 ) );
+				expected.remove( expected.size() - 1 );
+				if ( rnd.nextBoolean() ) {
+					lines.removeLine( lineIdx );
+				} else {
+					lines.removeLine( new Line( lines.start( lineIdx ) , lines.end( lineIdx ) ) );
+				}
+				if ( rnd.nextInt( 4 ) == 0 )
+				{
+					final int lineCount = lines.getLineCount();
+					addRandomLine( lines , rnd );
+					if ( lines.getLineCount() != lineCount ) {
+						expected.add( lineToString( lines , lineCount ) );
+					}
+				}
+
+				final List<String> actual = new ArrayList<>();
+				for ( int i = 0 ; i < lines.getLineCount() ; i++ ) {
+					actual.add( lineToString( lines , i ) );
+				}
+				assertEquals( message , expected , actual );
+				assertPointsInUse( lines , message );
+
+				final float x = rnd.nextFloat() * 300 - 150;
+				final float y = rnd.nextFloat() * 300 - 150;
+				final int point = lines.findNearestPoint( x , y , 20 , -1 );
+				assertEquals( message , nearestPointDistance2( lines , x , y , 20 ) , point == -1 ? -1 : lines.point( point ).dst2( x , y ) , 0.0001f );
+			}
+			assertEquals( 0 , lines.getPointCount() );
+		}
+	}
+
+	@Test
+	public void testRemoveLineKeepsPointIndices()
+	{
+		final LineCollection lines = new LineCollection();
+		for ( int i = 0 ; i < 1000 ; i++ ) {
+			lines.addLine( new Vector2( i , 0 ) , new Vector2( i , 1 ) );
+		}
+		final int keptPoint = lines.startIndex( 999 );
+
+		// the last line takes the place of the first one, the others leave plenty of deleted point slots
+		lines.removeLine( 0 );
+		while ( lines.getLineCount() > 1 ) {
+			lines.removeLine( lines.getLineCount() - 1 );
+		}
+
+		assertFalse( lines.isDeleted( keptPoint ) );
+		assertEquals( 999 , lines.x( keptPoint ) , 0 );
+		assertEquals( keptPoint , lines.startIndex( 0 ) );
+	}
+
+	@Test
+	public void testTrimToSizeRemovesDeletedPoints()
+	{
+		final LineCollection lines = new LineCollection();
+		for ( int i = 0 ; i < 100 ; i++ ) {
+			lines.addLine( new Vector2( i , 0 ) , new Vector2( i , 1 ) );
+		}
+		for ( int i = 0 ; i < 50 ; i++ ) {
+			lines.removeLine( 0 );
+		}
+		assertEquals( 200 , lines.getPointSlotCount() );
+
+		lines.trimToSize();
+
+		assertEquals( 100 , lines.getPointSlotCount() );
+		assertPointsInUse( lines , "after trimToSize()" );
+	}
+
+	@Test
+	public void testTopologyMatchesBruteForce()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			for ( int op = 0 ; op < 500 ; op++ )
+			{
+				final int action = rnd.nextInt( 10 );
+				if ( action < 5 ) {
+					addGridLine( lines , rnd , 12 );
+				}
+				else if ( action < 9 )
+				{
+					if ( lines.getLineCount() > 0 ) {
+						lines.removeLine( rnd.nextInt( lines.getLineCount() ) );
+					}
+				}
+				else if ( rnd.nextInt( 10 ) == 0 ) {
+					lines.compact();
+				}
+				assertTopology( lines , "seed "+seed+", op "+op );
+			}
+		}
+	}
+
+	@Test
+	public void testRandomEditsWithSnapshotsAgainstBruteForce()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			// enough lines to span several snapshot chunks
+			for ( int i = 0 , len = 200 + rnd.nextInt( 400 ) ; i < len ; i++ ) {
+				addGridLine( lines , rnd , 48 );
+			}
+
+			final List<LineCollection.Snapshot> snapshots = new ArrayList<>();
+			final List<State> snapshotStates = new ArrayList<>();
+			for ( int op = 0 ; op < 400 ; op++ )
+			{
+				final String message = "seed "+seed+", op "+op;
+				final int action = rnd.nextInt( 100 );
+				if ( action < 30 ) {
+					addGridLine( lines , rnd , 48 );
+				}
+				else if ( action < 50 )
+				{
+					if ( lines.getLineCount() > 0 ) {
+						lines.removeLine( rnd.nextInt( lines.getLineCount() ) );
+					}
+				}
+				else if ( action < 65 )
+				{
+					final int pointIdx = randomPoint( lines , rnd );
+					if ( pointIdx != -1 )
+					{
+						lines.translatePoint( pointIdx , rnd.nextInt( 5 ) - 2 , rnd.nextInt( 5 ) - 2 );
+						if ( rnd.nextBoolean() ) {
+							assertMergePoint( lines , pointIdx , message+" (merge)" );
+						}
+					}
+				}
+				else if ( action < 70 )
+				{
+					if ( lines.getLineCount() > 0 ) {
+						lines.translateLine( rnd.nextInt( lines.getLineCount() ) , rnd.nextInt( 5 ) - 2 , rnd.nextInt( 5 ) - 2 );
+					}
+				}
+				else if ( action < 78 ) {
+					lines.compact();
+				}
+				else if ( action < 81 ) {
+					lines.trimToSize();
+				}
+				else if ( action < 92 )
+				{
+					final LineCollection.Snapshot snapshot = lines.snapshot();
+					final State expected = new State( lines );
+					// the snapshot must reflect the current state, no matter which chunks it shares
+					assertRestoresTo( snapshot , expected , message+" (snapshot)" );
+					snapshots.add( snapshot );
+					snapshotStates.add( expected );
+				}
+				else if ( ! snapshots.isEmpty() )
+				{
+					final int idx = rnd.nextInt( snapshots.size() );
+					lines.restore( snapshots.get( idx ) );
+					new State( lines ).assertSame( snapshotStates.get( idx ) , message+" (restore)" );
+				}
+
+				assertTopology( lines , message );
+				assertPointsInUse( lines , message );
+				final float x = rnd.nextFloat() * 48;
+				final float y = rnd.nextFloat() * 48;
+				final float radius = rnd.nextBoolean() ? 1 + rnd.nextFloat() * 3 : 100;
+				final int point = lines.findNearestPoint( x , y , radius , -1 );
+				assertEquals( message , nearestPointDistance2( lines , x , y , radius ) , point == -1 ? -1 : lines.point( point ).dst2( x , y ) , 0.0001f );
+				final int line = lines.findNearestLine( x , y , radius );
+				assertEquals( message , nearestLineDistance2( lines , x , y , radius ) , line == -1 ? -1 : distance2( lines.start( line ) , lines.end( line ) , x , y ) , 0.001f );
+			}
+
+			// older snapshots must not have been affected by later edits
+			for ( int i = 0 ; i < snapshots.size() ; i++ ) {
+				assertRestoresTo( snapshots.get( i ) , snapshotStates.get( i ) , "seed "+seed+", snapshot "+i );
+			}
+		}
+	}
+
+	@Test
+	public void testRestoringSnapshotsOfLocalEdits()
+	{
+		for ( int seed = 0 ; seed < SEEDS / 10 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final LineCollection lines = new LineCollection();
+			for ( int i = 0 ; i < 2000 ; i++ ) {
+				addGridLine( lines , rnd , 200 );
+			}
+			// keeps restoring the latest snapshot, like a copy used by a background thread
+			final LineCollection copy = new LineCollection();
+			final List<LineCollection.Snapshot> snapshots = new ArrayList<>();
+			final List<State> snapshotStates = new ArrayList<>();
+			for ( int op = 0 ; op < 200 ; op++ )
+			{
+				final String message = "seed "+seed+", op "+op;
+				final int action = rnd.nextInt( 10 );
+				if ( action < 5 )
+				{
+					final int pointIdx = randomPoint( lines , rnd );
+					if ( pointIdx != -1 ) {
+						lines.translatePoint( pointIdx , rnd.nextInt( 21 ) - 10 , rnd.nextInt( 21 ) - 10 );
+					}
+				}
+				else if ( action < 7 ) {
+					addGridLine( lines , rnd , 200 );
+				}
+				else if ( action < 9 )
+				{
+					if ( lines.getLineCount() > 0 ) {
+						lines.removeLine( rnd.nextInt( lines.getLineCount() ) );
+					}
+				}
+				else if ( ! snapshots.isEmpty() ) {
+					// older state, e.g. after an undo
+					lines.restore( snapshots.get( rnd.nextInt( snapshots.size() ) ) );
+				}
+
+				final LineCollection.Snapshot snapshot = lines.snapshot();
+				final State expected = new State( lines );
+				snapshots.add( snapshot );
+				snapshotStates.add( expected );
+				copy.restore( snapshot );
+				new State( copy ).assertSame( expected , message );
+				assertTopology( copy , message );
+				for ( int i = 0 ; i < 5 ; i++ )
+				{
+					final float x = rnd.nextFloat() * 200;
+					final float y = rnd.nextFloat() * 200;
+					final float radius = 1 + rnd.nextFloat() * 20;
+					final int point = copy.findNearestPoint( x , y , radius , -1 );
+					assertEquals( message , nearestPointDistance2( copy , x , y , radius ) , point == -1 ? -1 : copy.point( point ).dst2( x , y ) , 0.0001f );
+					final int line = copy.findNearestLine( x , y , radius );
+					assertEquals( message , nearestLineDistance2( copy , x , y , radius ) , line == -1 ? -1 : distance2( copy.start( line ) , copy.end( line ) , x , y ) , 0.001f );
+				}
+			}
+			// edits to the original must not have leaked into older snapshots
+			for ( int i = 0 ; i < snapshots.size() ; i += 10 ) {
+				assertRestoresTo( snapshots.get( i ) , snapshotStates.get( i ) , "seed "+seed+", snapshot "+i );
+			}
+		}
+	}
+
+	@Test
+	public void testCompactWithoutChangesKeepsModificationCount()
+	{
+		final LineCollection lines = square();
+		final LineCollection.Snapshot snapshot = lines.snapshot();
+		final int modCount = lines.getModificationCount();
+
+		lines.compact();
+
+		assertEquals( modCount , lines.getModificationCount() );
+		assertSame( snapshot , lines.snapshot() );
+	}
+
+	@Test
+	public void testCompactRemovesPointsOfDroppedLines()
+	{
+		final LineCollection lines = square();
+		lines.addLine( new Vector2( 20 , 0 ) , new Vector2( 30 , 0 ) );
+		// collapse the extra line
+		lines.translatePoint( lines.endIndex( 4 ) , -10 , 0 );
+
+		lines.compact();
+
+		assertEquals( 4 , lines.getLineCount() );
+		assertEquals( 4 , lines.getPointCount() );
+		assertPointsInUse( lines , "after compact()" );
+	}
+
+	@Test
+	public void testMergePointKeepsOtherPointIndices()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+		lines.addLine( new Vector2( 20 , 0 ) , new Vector2( 20 , 10 ) );
+		lines.addLine( new Vector2( 30 , 0 ) , new Vector2( 30 , 10 ) );
+		final int moved = lines.endIndex( 0 );
+		final int target = lines.startIndex( 1 );
+		final State before = new State( lines );
+		assertEquals( 3 , lines.getComponentCount() );
+
+		// move (10,0) on top of (20,0)
+		lines.translatePoint( moved , 10 , 0 );
+		assertEquals( target , lines.mergePoint( moved ) );
+
+		assertTrue( lines.isDeleted( moved ) );
+		assertEquals( target , lines.endIndex( 0 ) );
+		assertEquals( 2 , lines.getComponentCount() );
+		assertEquals( 4 , lines.getDanglingPointCount() );
+		for ( int i = 0 ; i < before.xs.length ; i++ )
+		{
+			if ( i != moved )
+			{
+				assertEquals( before.xs[i] , lines.x( i ) , 0 );
+				assertEquals( before.ys[i] , lines.y( i ) , 0 );
+			}
+		}
+		assertTopology( lines , "after mergePoint()" );
+	}
+
+	@Test
+	public void testMergePointRemovesCollapsedLines()
+	{
+		final LineCollection lines = square();
+		// move (10,0) on top of (10,10), collapsing the line between them
+		final int moved = findLine( lines , 10 , 0 , 10 , 10 );
+		final int pointIdx = lines.startIndex( moved );
+		lines.translatePoint( pointIdx , 0 , 10 );
+
+		lines.mergePoint( pointIdx );
+
+		assertEquals( 3 , lines.getLineCount() );
+		assertTrue( lines.isClosedOutline() );
+		assertTopology( lines , "after mergePoint()" );
+		assertPointsInUse( lines , "after mergePoint()" );
+	}
+
+	@Test
+	public void testMergePointWithoutCoincidentPointKeepsModificationCount()
+	{
+		final LineCollection lines = square();
+		final LineCollection.Snapshot snapshot = lines.snapshot();
+		final int modCount = lines.getModificationCount();
+
+		assertEquals( 0 , lines.mergePoint( 0 ) );
+
+		assertEquals( modCount , lines.getModificationCount() );
+		assertSame( snapshot , lines.snapshot() );
+	}
+
+	@Test
+	public void testNestedBatches()
+	{
+		final LineCollection lines = square();
+		lines.beginBatch();
+		lines.beginBatch();
+		lines.endBatch();
+		assertTrue( lines.isInBatch() );
+		// many lines within a batch, the spatial index gets rebuilt afterwards
+		for ( int i = 0 ; i < 20 ; i++ ) {
+			lines.addLine( new Vector2( 20 + i , 0 ) , new Vector2( 20 + i , 10 ) );
+		}
+		lines.endBatch();
+		assertFalse( lines.isInBatch() );
+		assertEquals( findLine( lines , 25 , 0 , 25 , 10 ) , lines.findNearestLine( 25 , 5 , 1 ) );
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testEndBatchWithoutBeginBatch() {
+		new LineCollection().endBatch();
+	}
+
+	@Test
+	public void testLoadCopiesArraysAndFreesUnusedPoints()
+	{
+		final float[] xs = { 0 , 10 , 99 , 10 };
+		final float[] ys = { 0 , 0 , 99 , 10 };
+		final int[] startPoints = { 0 , 1 , 3 };
+		final int[] endPoints = { 1 , 3 , 0 };
+		final LineCollection lines = new LineCollection();
+		lines.load( xs , ys , 4 , startPoints , endPoints , 3 );
+
+		// changing the arrays afterwards does not affect the collection
+		xs[0] = 42;
+		startPoints[0] = 2;
+		assertEquals( 0 , lines.x( 0 ) , 0 );
+		assertEquals( 0 , lines.startIndex( 0 ) );
+
+		assertTrue( lines.isDeleted( 2 ) );
+		assertEquals( 3 , lines.getPointCount() );
+		assertTrue( lines.isClosedOutline() );
+		assertPointsInUse( lines , "after load()" );
+		assertTopology( lines , "after load()" );
+
+		// the unused slot gets reused
+		lines.addLine( new Vector2( 20 , 0 ) , new Vector2( 10 , 0 ) );
+		assertFalse( lines.isDeleted( 2 ) );
+		assertEquals( 20 , lines.x( 2 ) , 0 );
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testLoadRejectsInvalidPointIndex() {
+		new LineCollection().load( new float[2] , new float[2] , 2 , new int[] { 0 } , new int[] { 2 } , 1 );
+	}
+
+	@Test
+	public void testSnapshotAfterLocalEditSharesData()
+	{
+		final LineCollection lines = new LineCollection();
+		for ( int i = 0 ; i < 4096 ; i++ ) {
+			lines.addLine( new Vector2( i , 0 ) , new Vector2( i , 1 ) );
+		}
+		final LineCollection.Snapshot first = lines.snapshot();
+		final State before = new State( lines );
+
+		lines.translatePoint( lines.startIndex( 0 ) , 0 , -1 );
+		lines.compact();
+		final LineCollection.Snapshot second = lines.snapshot();
+
+		assertTrue( first != second );
+		assertRestoresTo( first , before , "first snapshot" );
+		assertRestoresTo( second , new State( lines ) , "second snapshot" );
+	}
+
+	@Test
+	public void testLoops()
+	{
+		final LineCollection lines = new LineCollection();
+		assertFalse( lines.isClosedOutline() );
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+		lines.addLine( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) );
+		assertFalse( lines.isClosedOutline() );
+		assertEquals( 2 , lines.getDanglingPointCount() );
+		assertEquals( 0 , lines.getLoopCount() );
+
+		lines.addLine( new Vector2( 10 , 10 ) , new Vector2( 0 , 0 ) );
+		assertTrue( lines.isClosedOutline() );
+		assertEquals( 0 , lines.getDanglingPointCount() );
+		assertEquals( 1 , lines.getLoopCount() );
+		assertEquals( 1 , lines.getComponentCount() );
+
+		// second loop, touching the first one in a single point
+		lines.addLine( new Vector2( 10 , 10 ) , new Vector2( 20 , 10 ) );
+		lines.addLine( new Vector2( 20 , 10 ) , new Vector2( 20 , 20 ) );
+		lines.addLine( new Vector2( 20 , 20 ) , new Vector2( 10 , 10 ) );
+		assertTrue( lines.isClosedOutline() );
+		assertEquals( 1 , lines.getLoopCount() );
+
+		// cut the first loop open, then remove what is left of it
+		lines.removeLine( 0 );
+		assertFalse( lines.isClosedOutline() );
+		assertEquals( 1 , lines.getComponentCount() );
+		assertEquals( 0 , lines.getLoopCount() );
+
+		// a separate line is a component of its own
+		lines.addLine( new Vector2( 100 , 0 ) , new Vector2( 110 , 0 ) );
+		assertEquals( 2 , lines.getComponentCount() );
+		lines.removeLine( lines.getLineCount() - 1 );
+		assertEquals( 1 , lines.getComponentCount() );
+		lines.removeLine( findLine( lines , 10 , 0 , 10 , 10 ) );
+		assertEquals( 1 , lines.getComponentCount() );
+		assertEquals( 1 , lines.getDanglingPointCount() );
+		lines.removeLine( findLine( lines , 10 , 10 , 0 , 0 ) );
+		assertTrue( lines.isClosedOutline() );
+		assertEquals( 1 , lines.getComponentCount() );
+		assertEquals( 1 , lines.getLoopCount() );
+	}
+
+	/**
+	 * Contents of a collection, as seen through its public accessors.
+	 */
+	private static final class State
+	{
+		public final float[] xs;
+		public final float[] ys;
+		public final boolean[] deleted;
+		public final int[] startPoints;
+		public final int[] endPoints;
+
+		public State(LineCollection lines)
+		{
+			final int slots = lines.getPointSlotCount();
+			xs = new float[ slots ];
+			ys = new float[ slots ];
+			deleted = new boolean[ slots ];
+			for ( int i = 0 ; i < slots ; i++ )
+			{
+				deleted[i] = lines.isDeleted( i );
+				if ( ! deleted[i] )
+				{
+					xs[i] = lines.x( i );
+					ys[i] = lines.y( i );
+				}
+			}
+			startPoints = new int[ lines.getLineCount() ];
+			endPoints = new int[ lines.getLineCount() ];
+			for ( int i = 0 ; i < startPoints.length ; i++ )
+			{
+				startPoints[i] = lines.startIndex( i );
+				endPoints[i] = lines.endIndex( i );
+			}
+		}
+
+		public void assertSame(State other,String message)
+		{
+			assertTrue( message+": x" , Arrays.equals( xs , other.xs ) );
+			assertTrue( message+": y" , Arrays.equals( ys , other.ys ) );
+			assertTrue( message+": deleted" , Arrays.equals( deleted , other.deleted ) );
+			assertTrue( message+": start points" , Arrays.equals( startPoints , other.startPoints ) );
+			assertTrue( message+": end points" , Arrays.equals( endPoints , other.endPoints ) );
+		}
+	}
+
+	private static void assertRestoresTo(LineCollection.Snapshot snapshot,State expected,String message)
+	{
+		final LineCollection copy = new LineCollection();
+		copy.restore( snapshot );
+		new State( copy ).assertSame( expected , message );
+	}
+
+	private static void assertMergePoint(LineCollection lines,int pointIdx,String message)
+	{
+		final State before = new State( lines );
+		int coincident = -1;
+		for ( int i = 0 ; i < before.xs.length && coincident == -1 ; i++ )
+		{
+			if ( i != pointIdx && ! before.deleted[i] && before.xs[i] == before.xs[pointIdx] && before.ys[i] == before.ys[pointIdx] ) {
+				coincident = i;
+			}
+		}
+		final int modCount = lines.getModificationCount();
+
+		final int target = lines.mergePoint( pointIdx );
+
+		final State after = new State( lines );
+		if ( coincident == -1 )
+		{
+			assertEquals( message+": merged without coincident point" , pointIdx , target );
+			assertEquals( message+": modification count" , modCount , lines.getModificationCount() );
+			return;
+		}
+		assertTrue( message+": not merged" , target != pointIdx );
+		assertTrue( message+": merged point still used" , after.deleted[ pointIdx ] );
+		assertEquals( message+": x" , before.xs[ pointIdx ] , lines.x( target ) , 0 );
+		assertEquals( message+": y" , before.ys[ pointIdx ] , lines.y( target ) , 0 );
+		// all other points keep their index
+		for ( int i = 0 ; i < before.xs.length ; i++ )
+		{
+			if ( i != pointIdx && ! after.deleted[i] )
+			{
+				assertFalse( message+": point #"+i+" resurrected" , before.deleted[i] );
+				assertEquals( message+": x of #"+i , before.xs[i] , after.xs[i] , 0 );
+				assertEquals( message+": y of #"+i , before.ys[i] , after.ys[i] , 0 );
+			}
+		}
+		for ( int i = 0 ; i < after.startPoints.length ; i++ ) {
+			assertTrue( message+": collapsed line #"+i , after.startPoints[i] != after.endPoints[i] );
+		}
+	}
+
+	private static int randomPoint(LineCollection lines,Random rnd)
+	{
+		if ( lines.getPointCount() == 0 ) {
+			return -1;
+		}
+		while ( true )
+		{
+			final int idx = rnd.nextInt( lines.getPointSlotCount() );
+			if ( ! lines.isDeleted( idx ) ) {
+				return idx;
+			}
+		}
+	}
+
+	private static LineCollection square()
+	{
+		final LineCollection lines = new LineCollection();
+		lines.addLine( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) );
+		lines.addLine( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) );
+		lines.addLine( new Vector2( 10 , 10 ) , new Vector2( 0 , 10 ) );
+		lines.addLine( new Vector2( 0 , 10 ) , new Vector2( 0 , 0 ) );
+		return lines;
+	}
+
+	private static int findLine(LineCollection lines,float x0,float y0,float x1,float y1)
+	{
+		for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+		{
+			if ( lines.startX( i ) == x0 && lines.startY( i ) == y0 && lines.endX( i ) == x1 && lines.endY( i ) == y1 ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// lines on a small grid so that they often share end points
+	private static void addGridLine(LineCollection lines,Random rnd,int gridSize)
+	{
+		final Vector2 start = new Vector2( rnd.nextInt( gridSize ) , rnd.nextInt( gridSize ) );
+		final Vector2 end = new Vector2( rnd.nextInt( gridSize ) , rnd.nextInt( gridSize ) );
+		if ( ! start.equals( end ) ) {
+			lines.addLine( start , end );
+		}
+	}
+
+	/**
+	 * Checks topology information against values calculated from the lines.
+	 */
+	private static void assertTopology(LineCollection lines,String message)
+	{
+		final int slots = lines.getPointSlotCount();
+		final int[] degrees = new int[ slots ];
+		final int[] parent = new int[ slots ];
+		for ( int i = 0 ; i < slots ; i++ ) {
+			parent[i] = i;
+		}
+		for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+		{
+			final int start = lines.startIndex( i );
+			final int end = lines.endIndex( i );
+			degrees[ start ]++;
+			degrees[ end ]++;
+			parent[ find( parent , start ) ] = find( parent , end );
+		}
+
+		int dangling = 0;
+		boolean allEven = true;
+		final Map<Integer,Boolean> components = new HashMap<>(); // root -> closed
+		for ( int i = 0 ; i < slots ; i++ )
+		{
+			if ( degrees[i] == 0 ) {
+				continue;
+			}
+			if ( degrees[i] == 1 ) {
+				dangling++;
+			}
+			allEven &= ( degrees[i] & 1 ) == 0;
+			final int root = find( parent , i );
+			final Boolean closed = components.get( root );
+			components.put( root , ( closed == null || closed ) && ( degrees[i] & 1 ) == 0 );
+		}
+		int loops = 0;
+		for ( boolean closed : components.values() ) {
+			loops += closed ? 1 : 0;
+		}
+
+		assertEquals( message+": dangling points" , dangling , lines.getDanglingPointCount() );
+		assertEquals( message+": closed" , lines.getLineCount() >= 3 && allEven , lines.isClosedOutline() );
+		assertEquals( message+": components" , components.size() , lines.getComponentCount() );
+		assertEquals( message+": loops" , loops , lines.getLoopCount() );
+	}
+
+	private static int find(int[] parent,int idx)
+	{
+		while ( parent[idx] != idx ) {
+			idx = parent[idx];
+		}
+		return idx;
+	}
+
+	private static String lineToString(LineCollection lines,int lineIdx) {
+		return lines.start( lineIdx )+" -> "+lines.end( lineIdx );
+	}
+
+	// checks that exactly the points used by lines are alive
+	private static void assertPointsInUse(LineCollection lines,String message)
+	{
+		final boolean[] used = new boolean[ lines.getPointSlotCount() ];
+		for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+		{
+			used[ lines.startIndex( i ) ] = true;
+			used[ lines.endIndex( i ) ] = true;
+		}
+		int count = 0;
+		for ( int i = 0 ; i < used.length ; i++ )
+		{
+			assertEquals( message+": point #"+i , ! used[i] , lines.isDeleted( i ) );
+			count += used[i] ? 1 : 0;
+		}
+		assertEquals( message , count , lines.getPointCount() );
+	}
+
+	private static String quantize(float x,float y,float tolerance)
+	{
+		if ( tolerance > 0 ) {
+			return Math.round( x / tolerance )+","+Math.round( y / tolerance );
+		}
+		return ( x + 0.0f )+","+( y + 0.0f );
+	}
+
+	private static void addRandomLine(LineCollection lines,Random rnd)
+	{
+		final float x0 = rnd.nextInt( 300 ) - 150;
+		final float y0 = rnd.nextInt( 300 ) - 150;
+		final float x1 = x0 + rnd.nextInt( 60 ) - 30;
+		final float y1 = y0 + rnd.nextInt( 60 ) - 30;
+		final float tolerance = lines.getMergeTolerance();
+		if ( ! quantize( x0 , y0 , tolerance ).equals( quantize( x1 , y1 , tolerance ) ) ) {
+			lines.addLine( new Vector2( x0 , y0 ) , new Vector2( x1 , y1 ) );
+		}
+	}
+
+	private static float nearestPointDistance2(LineCollection lines,float x,float y,float radius)
+	{
+		final float[] result = { radius * radius };
+		lines.visitLines( line ->
+		{
+			result[0] = Math.min( result[0] , line.start.dst2( x , y ) );
+			result[0] = Math.min( result[0] , line.end.dst2( x , y ) );
+		});
+		return result[0] < radius * radius ? result[0] : -1;
+	}
+
+	private static float nearestLineDistance2(LineCollection lines,float x,float y,float radius)
+	{
+		final float[] result = { radius * radius };
+		lines.visitLines( line -> result[0] = Math.min( result[0] , distance2( line.start , line.end , x , y ) ) );
+		return result[0] < radius * radius ? result[0] : -1;
+	}
+
+	private static float distance2(Vector2 start,Vector2 end,float x,float y) {
+		return MathUtils.distanceSquared( x , y , start.x , start.y , end.x , end.y );
+	}
+}
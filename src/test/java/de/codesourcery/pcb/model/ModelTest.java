@@ -0,0 +1,73 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ModelTest
+{
+	@Test
+	public void testFindOverlapsMatchesAllPairs()
+	{
+		for ( int seed = 0 ; seed < 20 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Model model = randomModel( rnd , 30 );
+			final List<PartInstance> parts = model.getParts();
+
+			final Set<String> expected = new HashSet<>();
+			for ( int i = 0 ; i < parts.size() ; i++ )
+			{
+				for ( int j = i + 1 ; j < parts.size() ; j++ )
+				{
+					if ( TransformedOutlineTest.overlapsBruteForce( parts.get( i ).getOutline() , parts.get( j ).getOutline() ) ) {
+						expected.add( pair( parts , parts.get( i ) , parts.get( j ) ) );
+					}
+				}
+			}
+
+			final Set<String> actual = new HashSet<>();
+			model.findOverlaps( (a,b) -> assertTrue( "reported twice" , actual.add( pair( parts , a , b ) ) ) );
+			assertEquals( "seed "+seed , expected , actual );
+
+			// overlaps with a single instance
+			for ( PartInstance instance : parts )
+			{
+				final Set<String> single = new HashSet<>();
+				model.findOverlaps( instance , other -> single.add( pair( parts , instance , other ) ) );
+				for ( String pair : expected )
+				{
+					final String[] indices = pair.split( "-" );
+					final String idx = Integer.toString( parts.indexOf( instance ) );
+					assertEquals( "seed "+seed+", pair "+pair , indices[0].equals( idx ) || indices[1].equals( idx ) , single.contains( pair ) );
+				}
+			}
+		}
+	}
+
+	private static Model randomModel(Random rnd,int instances)
+	{
+		final Model model = new Model();
+		for ( int i = 0 ; i < instances ; i++ )
+		{
+			final PartInstance instance = TransformedOutlineTest.randomInstance( rnd );
+			// spread parts out, so that only some of them overlap
+			instance.translate( rnd.nextFloat() * 600 , rnd.nextFloat() * 600 );
+			model.getParts().add( instance );
+		}
+		return model;
+	}
+
+	private static String pair(List<PartInstance> parts,PartInstance a,PartInstance b)
+	{
+		final int i = parts.indexOf( a );
+		final int j = parts.indexOf( b );
+		return Math.min( i , j )+"-"+Math.max( i , j );
+	}
+}
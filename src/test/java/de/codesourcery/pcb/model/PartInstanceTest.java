@@ -0,0 +1,140 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+public class PartInstanceTest
+{
+	private static final float EPSILON = 0.001f;
+
+	@Test
+	public void testRotatesAroundPartOrigin()
+	{
+		final PartInstance instance = newInstance();
+		instance.setPosition( 100 , 50 );
+		instance.setRotation( 90 );
+
+		final Vector2 result = instance.toBoard( new Vector2( 10 , 0 ) , new Vector2() );
+		assertEquals( 100 , result.x , EPSILON );
+		assertEquals( 60 , result.y , EPSILON );
+		instance.toBoard( new Vector2( 0 , 0 ) , result );
+		assertEquals( 100 , result.x , EPSILON );
+		assertEquals( 50 , result.y , EPSILON );
+	}
+
+	@Test
+	public void testToBoardMatchesMatrix()
+	{
+		final Random rnd = new Random( 42 );
+		final PartInstance instance = newInstance();
+		final Vector2 expected = new Vector2();
+		final Vector2 actual = new Vector2();
+		for ( int i = 0 ; i < 1000 ; i++ )
+		{
+			if ( rnd.nextBoolean() ) {
+				instance.translate( rnd.nextFloat() * 20 - 10 , rnd.nextFloat() * 20 - 10 );
+			} else {
+				instance.setRotation( rnd.nextFloat() * 720 - 360 );
+			}
+			final Vector2 p = new Vector2( rnd.nextFloat() * 100 - 50 , rnd.nextFloat() * 100 - 50 );
+			expected.set( p ).mul( instance.getTransform() );
+			instance.toBoard( p , actual );
+			assertEquals( "step "+i , expected.x , actual.x , EPSILON );
+			assertEquals( "step "+i , expected.y , actual.y , EPSILON );
+		}
+	}
+
+	@Test
+	public void testBoardCoordinatesAreOnlyUpdatedWhenNeeded()
+	{
+		final PartInstance instance = newInstance();
+		final Port port = new Port();
+		port.center.set( 5 , 5 );
+		instance.part.addPort( port );
+
+		assertTrue( instance.isDirty() );
+		assertTrue( instance.updateBoardCoordinates() );
+		assertFalse( instance.isDirty() );
+		assertFalse( instance.updateBoardCoordinates() );
+		assertEquals( 1 , instance.getPortCount() );
+		assertEquals( 5 , instance.portX( 0 ) , EPSILON );
+
+		instance.translate( 10 , 0 );
+		assertTrue( instance.updateBoardCoordinates() );
+		assertEquals( 15 , instance.portX( 0 ) , EPSILON );
+
+		instance.part.movePort( port , 0 , 1 );
+		assertTrue( instance.isDirty() );
+		assertTrue( instance.updateBoardCoordinates() );
+		assertEquals( 6 , instance.portY( 0 ) , EPSILON );
+
+		instance.part.outline.translatePoint( 0 , 1 , 1 );
+		assertTrue( instance.updateBoardCoordinates() );
+		assertFalse( instance.updateBoardCoordinates() );
+	}
+
+	@Test
+	public void testModelUpdatesOnlyDirtyInstances()
+	{
+		final Model model = new Model();
+		final Part part = newInstance().part;
+		for ( int i = 0 ; i < 10 ; i++ )
+		{
+			final PartInstance instance = new PartInstance();
+			instance.part = part;
+			instance.setPosition( i * 20 , 0 );
+			model.getParts().add( instance );
+		}
+		assertEquals( 10 , model.updateTransforms() );
+		assertEquals( 0 , model.updateTransforms() );
+
+		Model.translate( model.getParts().subList( 0 , 3 ) , 0 , 5 );
+		assertEquals( 3 , model.updateTransforms() );
+		assertEquals( 5 , model.getParts().get( 2 ).position.y , EPSILON );
+
+		// changing the shared part affects all instances
+		part.outline.translatePoint( 0 , 1 , 0 );
+		assertEquals( 10 , model.updateTransforms() );
+	}
+
+	@Test
+	public void testRotateGroupAroundPivot()
+	{
+		final PartInstance a = newInstance();
+		final PartInstance b = newInstance();
+		a.setPosition( 10 , 0 );
+		b.setPosition( 20 , 0 );
+
+		Model.rotate( Arrays.asList( a , b ) , 90 , 10 , 0 );
+		assertEquals( 10 , a.position.x , EPSILON );
+		assertEquals( 0 , a.position.y , EPSILON );
+		assertEquals( 10 , b.position.x , EPSILON );
+		assertEquals( 10 , b.position.y , EPSILON );
+		assertEquals( 90 , a.rotation , EPSILON );
+		assertEquals( 90 , b.rotation , EPSILON );
+
+		// points of the parts move along with the group
+		final Vector2 rotated = a.toBoard( new Vector2( 10 , 0 ) , new Vector2() );
+		assertEquals( 10 , rotated.x , EPSILON );
+		assertEquals( 10 , rotated.y , EPSILON );
+	}
+
+	private static PartInstance newInstance()
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = new Part();
+		final Outline outline = instance.part.outline;
+		outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 0 ) ) );
+		return instance;
+	}
+}
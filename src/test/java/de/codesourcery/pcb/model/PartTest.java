@@ -0,0 +1,101 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+public class PartTest
+{
+	@Test
+	public void testCommitKeepsChanges()
+	{
+		final Part part = newPart();
+		try ( Part.Transaction tx = part.beginTransaction() )
+		{
+			assertFalse( tx.isModified() );
+			part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 5 , 5 ) ) );
+			assertTrue( tx.isModified() );
+			tx.commit();
+			assertTrue( tx.isDone() );
+		}
+		assertEquals( 4 , part.outline.lines().getLineCount() );
+		assertFalse( part.outline.lines().isInBatch() );
+	}
+
+	@Test
+	public void testCloseWithoutCommitRollsBack()
+	{
+		final Part part = newPart();
+		final Port port = new Port();
+		port.center.set( 2 , 1 );
+		part.addPort( port );
+
+		try ( Part.Transaction tx = part.beginTransaction() )
+		{
+			part.outline.translatePoint( 0 , 1 , 1 );
+			part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 5 , 5 ) ) );
+			part.visitPorts( p -> part.movePort( p , 1 , 0 ) );
+			assertTrue( tx.isModified() );
+		}
+
+		assertEquals( 3 , part.outline.lines().getLineCount() );
+		assertEquals( 0 , part.outline.lines().x( 0 ) , 0 );
+		assertEquals( 0 , part.outline.lines().y( 0 ) , 0 );
+		part.visitPorts( p -> assertEquals( 2 , p.center.x , 0 ) );
+		assertFalse( part.outline.lines().isInBatch() );
+	}
+
+	@Test
+	public void testRollbackWithoutChangesKeepsModificationCount()
+	{
+		final Part part = newPart();
+		final int modCount = part.getModificationCount();
+		try ( Part.Transaction tx = part.beginTransaction() ) {
+			assertFalse( tx.isModified() );
+		}
+		assertEquals( modCount , part.getModificationCount() );
+	}
+
+	@Test
+	public void testNestedTransactions()
+	{
+		final Part part = newPart();
+		try ( Part.Transaction outer = part.beginTransaction() )
+		{
+			part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 5 , 5 ) ) );
+			try ( Part.Transaction inner = part.beginTransaction() )
+			{
+				part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 5 , 0 ) ) );
+				assertTrue( inner.isModified() );
+				// closed without commit
+			}
+			assertEquals( 4 , part.outline.lines().getLineCount() );
+			assertTrue( part.outline.lines().isInBatch() );
+			outer.commit();
+		}
+		assertEquals( 4 , part.outline.lines().getLineCount() );
+		assertFalse( part.outline.lines().isInBatch() );
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testCommitTwice()
+	{
+		final Part part = newPart();
+		final Part.Transaction tx = part.beginTransaction();
+		tx.commit();
+		tx.commit();
+	}
+
+	private static Part newPart()
+	{
+		final Part part = new Part();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 0 ) ) );
+		return part;
+	}
+}
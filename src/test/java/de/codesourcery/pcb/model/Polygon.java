@@ -0,0 +1,185 @@
+package de.codesourcery.pcb.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Random outline for tests, possibly consisting of several (self-intersecting, nested) loops,
+ * along with a naive point-in-polygon test to check the real implementation against.
+ *
+ * Like {@link LineCollection}, lines of length 0 and duplicate lines are skipped.
+ */
+final class Polygon
+{
+	public float[] xs = new float[16];
+	public float[] ys = new float[16];
+	public int[] startPoints = new int[16];
+	public int[] endPoints = new int[16];
+	public int pointCount;
+	public int lineCount;
+	public float minX = Float.POSITIVE_INFINITY;
+	public float minY = Float.POSITIVE_INFINITY;
+	public float maxX = Float.NEGATIVE_INFINITY;
+	public float maxY = Float.NEGATIVE_INFINITY;
+
+	private final Set<String> lines = new HashSet<>();
+
+	public Polygon(Random rnd)
+	{
+		this( rnd , 1 + rnd.nextInt( 4 ) , rnd.nextBoolean() ? 10 : 300 , 40 );
+	}
+
+	/**
+	 * @param rnd
+	 * @param loops number of loops
+	 * @param maxSize maximum number of points per loop
+	 * @param maxRadius maximum (approximate) radius of a loop
+	 */
+	public Polygon(Random rnd,int loops,int maxSize,int maxRadius)
+	{
+		for ( int loop = 0 ; loop < loops ; loop++ )
+		{
+			// small integer coordinates, so that query points often share their y coordinate with vertices
+			final int first = pointCount;
+			final int size = 3 + rnd.nextInt( maxSize );
+			final int cx = rnd.nextInt( 64 );
+			final int cy = rnd.nextInt( 64 );
+			final int radius = 2 + rnd.nextInt( maxRadius );
+			for ( int i = 0 ; i < size ; i++ )
+			{
+				final double angle = rnd.nextInt( 8 ) == 0 ? rnd.nextDouble() * 2 * Math.PI : 2 * Math.PI * i / size;
+				final double r = radius * ( 0.2 + rnd.nextDouble() );
+				addPoint( Math.round( cx + r * Math.cos( angle ) ) , Math.round( cy + r * Math.sin( angle ) ) );
+			}
+			for ( int i = 0 ; i < size ; i++ ) {
+				addLine( first + i , first + ( i + 1 ) % size );
+			}
+		}
+	}
+
+	public void addPoint(float x,float y)
+	{
+		if ( pointCount == xs.length )
+		{
+			xs = Arrays.copyOf( xs , xs.length * 2 );
+			ys = Arrays.copyOf( ys , ys.length * 2 );
+		}
+		xs[ pointCount ] = x;
+		ys[ pointCount++ ] = y;
+		minX = Math.min( minX , x );
+		minY = Math.min( minY , y );
+		maxX = Math.max( maxX , x );
+		maxY = Math.max( maxY , y );
+	}
+
+	public void addLine(int start,int end)
+	{
+		if ( ( xs[start] == xs[end] && ys[start] == ys[end] ) ||
+			! lines.add( xs[start]+","+ys[start]+" -> "+xs[end]+","+ys[end] ) )
+		{
+			return;
+		}
+		if ( lineCount == startPoints.length )
+		{
+			startPoints = Arrays.copyOf( startPoints , startPoints.length * 2 );
+			endPoints = Arrays.copyOf( endPoints , endPoints.length * 2 );
+		}
+		startPoints[ lineCount ] = start;
+		endPoints[ lineCount++ ] = end;
+	}
+
+	public boolean contains(float px,float py) {
+		return contains( px , py , xs , ys , startPoints , endPoints , lineCount );
+	}
+
+	/**
+	 * Naive point-in-polygon test, using the even-odd rule against all lines.
+	 *
+	 * Lines are half-open in y, so a ray through a shared vertex crosses only one of the lines.
+	 */
+	public static boolean contains(float px,float py,float[] xs,float[] ys,int[] startPoints,int[] endPoints,int lineCount)
+	{
+		boolean inside = false;
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			final float xa = xs[ startPoints[i] ];
+			final float ya = ys[ startPoints[i] ];
+			final float xb = xs[ endPoints[i] ];
+			final float yb = ys[ endPoints[i] ];
+			if ( ( ya > py ) != ( yb > py ) && px < xa + ( py - ya ) * ( xb - xa ) / ( yb - ya ) ) {
+				inside = ! inside;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Naive point-in-polygon test against the current lines of a collection.
+	 */
+	public static boolean contains(LineCollection lines,float px,float py)
+	{
+		final float[] xs = new float[ lines.getPointSlotCount() ];
+		final float[] ys = new float[ xs.length ];
+		for ( int i = 0 ; i < xs.length ; i++ )
+		{
+			if ( ! lines.isDeleted( i ) )
+			{
+				xs[i] = lines.x( i );
+				ys[i] = lines.y( i );
+			}
+		}
+		final int[] startPoints = new int[ lines.getLineCount() ];
+		final int[] endPoints = new int[ startPoints.length ];
+		for ( int i = 0 ; i < startPoints.length ; i++ )
+		{
+			startPoints[i] = lines.startIndex( i );
+			endPoints[i] = lines.endIndex( i );
+		}
+		return contains( px , py , xs , ys , startPoints , endPoints , startPoints.length );
+	}
+
+	public ContainmentIndex index() {
+		return new ContainmentIndex( xs , ys , startPoints , endPoints , lineCount );
+	}
+
+	public Outline toOutline()
+	{
+		final Outline outline = new Outline();
+		addTo( outline );
+		return outline;
+	}
+
+	public void addTo(Outline outline)
+	{
+		for ( int i = 0 ; i < lineCount ; i++ )
+		{
+			final int start = startPoints[i];
+			final int end = endPoints[i];
+			outline.addLine( new Line( new Vector2( xs[start] , ys[start] ) , new Vector2( xs[end] , ys[end] ) ) );
+		}
+	}
+
+	// random location around the polygon, hitting vertex coordinates exactly every now and then
+	public void randomPoint(Random rnd,float[] result)
+	{
+		switch( rnd.nextInt( 4 ) )
+		{
+			case 0:
+				final int point = rnd.nextInt( pointCount );
+				result[0] = xs[ point ];
+				result[1] = ys[ point ];
+				break;
+			case 1:
+				result[0] = minX - 2 + rnd.nextInt( (int) ( maxX - minX ) + 5 ) + 0.5f;
+				result[1] = minY - 2 + rnd.nextInt( (int) ( maxY - minY ) + 5 );
+				break;
+			default:
+				result[0] = minX - 2 + rnd.nextFloat() * ( maxX - minX + 4 );
+				result[1] = minY - 2 + rnd.nextFloat() * ( maxY - minY + 4 );
+		}
+	}
+}
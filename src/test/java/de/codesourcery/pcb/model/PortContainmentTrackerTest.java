@@ -0,0 +1,97 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+public class PortContainmentTrackerTest
+{
+	private static final int SEEDS = 300;
+	private static final int MOVES_PER_SEED = 200;
+
+	@Test
+	public void testRandomMovesAgainstRayCast()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Polygon polygon = new Polygon( rnd , 1 , rnd.nextBoolean() ? 8 : 100 , 30 );
+			final Part part = new Part();
+			polygon.addTo( part.outline );
+			final LineCollection lines = part.outline.lines();
+			for ( int i = 0 , len = 1 + rnd.nextInt( 40 ) ; i < len ; i++ )
+			{
+				// whole numbers share their y coordinate with vertices
+				final Port port = new Port();
+				port.center.set( polygon.minX + rnd.nextInt( (int) ( polygon.maxX - polygon.minX ) + 1 ) + ( rnd.nextBoolean() ? 0 : 0.5f ) ,
+						polygon.minY + rnd.nextInt( (int) ( polygon.maxY - polygon.minY ) + 1 ) + ( rnd.nextBoolean() ? 0 : rnd.nextFloat() ) );
+				part.addPort( port );
+			}
+
+			final int lineIdx = rnd.nextInt( lines.getLineCount() );
+			final int[] moved;
+			if ( rnd.nextBoolean() ) {
+				moved = new int[] { lines.startIndex( lineIdx ) };
+			} else {
+				// both ends of a line, like when dragging a line
+				moved = new int[] { lines.startIndex( lineIdx ) , lines.endIndex( lineIdx ) };
+			}
+
+			final PortContainmentTracker tracker = new PortContainmentTracker( part , moved );
+			assertEquals( "seed "+seed+", initial state" , allPortsInside( part ) , tracker.isAllPortsInside() );
+			for ( int i = 0 ; i < MOVES_PER_SEED ; i++ )
+			{
+				final float dx = rnd.nextInt( 7 ) - 3;
+				final float dy = rnd.nextInt( 7 ) - 3;
+				for ( int pointIdx : moved ) {
+					part.outline.translatePoint( pointIdx , dx , dy );
+				}
+				final String message = "seed "+seed+", move "+i;
+				final boolean expected = allPortsInside( part );
+				assertEquals( message , expected , tracker.update() );
+				assertEquals( message , expected , tracker.isAllPortsInside() );
+				assertEquals( message , expected , part.allPortsWithinOutline() );
+			}
+		}
+	}
+
+	@Test
+	public void testMovingCornerAcrossPort()
+	{
+		final Part part = new Part();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 10 ) ) );
+		part.outline.addLine( new Line( new Vector2( 0 , 10 ) , new Vector2( 0 , 0 ) ) );
+		final Port port = new Port();
+		port.center.set( 8 , 8 );
+		part.addPort( port );
+
+		final int corner = part.outline.endIndex( 1 );
+		final PortContainmentTracker tracker = new PortContainmentTracker( part , corner );
+		assertTrue( tracker.isAllPortsInside() );
+
+		// pull the top right corner inwards, past the port
+		part.outline.translatePoint( corner , -5 , -5 );
+		assertFalse( tracker.update() );
+		assertFalse( tracker.isAllPortsInside() );
+
+		// and back again
+		part.outline.translatePoint( corner , 5 , 5 );
+		assertTrue( tracker.update() );
+		assertTrue( tracker.isAllPortsInside() );
+	}
+
+	private static boolean allPortsInside(Part part)
+	{
+		final boolean[] result = { true };
+		part.visitPorts( port -> result[0] &= Polygon.contains( part.outline.lines() , port.center.x , port.center.y ) );
+		return result[0];
+	}
+}
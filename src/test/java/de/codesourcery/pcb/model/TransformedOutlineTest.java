@@ -0,0 +1,264 @@
+package de.codesourcery.pcb.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.utils.MathUtils;
+
+public class TransformedOutlineTest
+{
+	private static final float EPSILON = 0.001f;
+
+	@Test
+	public void testCoordinatesMatchTransformedCopy()
+	{
+		for ( int seed = 0 ; seed < 50 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final PartInstance instance = new PartInstance();
+			instance.part = new Part();
+			new Polygon( rnd ).addTo( instance.part.outline );
+			instance.position.set( rnd.nextFloat() * 100 - 50 , rnd.nextFloat() * 100 - 50 );
+			instance.rotation = rnd.nextInt( 360 );
+			instance.updateTransform();
+
+			assertMatchesCopy( instance , "seed "+seed );
+		}
+	}
+
+	@Test
+	public void testSeesChangesOfPartAndInstance()
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = new Part();
+		final Outline outline = instance.part.outline;
+		outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 0 ) ) );
+		instance.position.set( 100 , 0 );
+		instance.updateTransform();
+
+		// first access of a fresh view
+		final TransformedOutline view = instance.getOutline();
+		assertEquals( 110 , view.endX( 0 ) , EPSILON );
+		assertSame( view , instance.getOutline() );
+
+		// the view shares the part's geometry
+		outline.translatePoint( outline.endIndex( 0 ) , 5 , 0 );
+		assertEquals( 115 , view.endX( 0 ) , EPSILON );
+		assertEquals( 115 , view.getMaxX() , EPSILON );
+		outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 50 , 50 ) ) );
+		assertEquals( 4 , view.getLineCount() );
+		assertEquals( 150 , view.getMaxX() , EPSILON );
+
+		instance.position.set( 0 , 200 );
+		instance.updateTransform();
+		assertEquals( 0 , view.getMinX() , EPSILON );
+		assertEquals( 200 , view.getMinY() , EPSILON );
+		assertMatchesCopy( instance , "moved" );
+	}
+
+	@Test
+	public void testContains()
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = new Part();
+		final Outline outline = instance.part.outline;
+		outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 10 ) ) );
+		outline.addLine( new Line( new Vector2( 0 , 10 ) , new Vector2( 0 , 0 ) ) );
+		instance.position.set( 100 , 100 );
+		instance.rotation = 90;
+		instance.updateTransform();
+
+		final TransformedOutline view = instance.getOutline();
+		final Vector2 inside = instance.toBoard( new Vector2( 2 , 8 ) , new Vector2() );
+		final Vector2 outside = instance.toBoard( new Vector2( 12 , 8 ) , new Vector2() );
+		assertTrue( view.contains( inside.x , inside.y ) );
+		assertFalse( view.contains( outside.x , outside.y ) );
+		assertFalse( view.contains( 2 , 8 ) );
+	}
+
+	@Test
+	public void testOverlapsMatchesAllPairs()
+	{
+		final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+		int overlapping = 0;
+		for ( int seed = 0 ; seed < 300 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final PartInstance a = randomInstance( rnd );
+			// every now and then, two instances of the same part
+			final PartInstance b = rnd.nextInt( 5 ) == 0 ? randomInstance( rnd , a.part ) : randomInstance( rnd );
+
+			final boolean expected = overlapsBruteForce( a.getOutline() , b.getOutline() );
+			final String message = "seed "+seed;
+			assertEquals( message , expected , a.getOutline().overlaps( b.getOutline() , scratch ) );
+			assertEquals( message , expected , b.getOutline().overlaps( a.getOutline() ) );
+			overlapping += expected ? 1 : 0;
+		}
+		// make sure both cases actually got tested
+		assertTrue( overlapping > 30 && overlapping < 270 );
+	}
+
+	@Test
+	public void testIsWithinDistanceMatchesAllPairs()
+	{
+		final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+		int close = 0;
+		for ( int seed = 0 ; seed < 300 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final PartInstance a = randomInstance( rnd );
+			final PartInstance b = rnd.nextInt( 5 ) == 0 ? randomInstance( rnd , a.part ) : randomInstance( rnd );
+			b.translate( 60 , 0 );
+			final float distance = rnd.nextFloat() * 20;
+
+			final boolean expected = isWithinDistanceBruteForce( a.getOutline() , b.getOutline() , distance );
+			final String message = "seed "+seed+", distance "+distance;
+			assertEquals( message , expected , a.getOutline().isWithinDistance( b.getOutline() , distance , scratch ) );
+			assertEquals( message , expected , b.getOutline().isWithinDistance( a.getOutline() , distance , scratch ) );
+			close += expected ? 1 : 0;
+		}
+		assertTrue( close > 30 && close < 270 );
+	}
+
+	@Test
+	public void testIsWithinDistanceOfParallelLines()
+	{
+		final PartInstance outer = circle( 100 , 1000 );
+		final PartInstance inner = circle( 97 , 1000 );
+		final TransformedOutline.Scratch scratch = new TransformedOutline.Scratch();
+		assertTrue( outer.getOutline().isWithinDistance( inner.getOutline() , 3.5f , scratch ) );
+		assertFalse( outer.getOutline().isWithinDistance( inner.getOutline() , 2.5f , scratch ) );
+	}
+
+	@Test
+	public void testNestedOutlinesOverlap()
+	{
+		final PartInstance outer = circle( 100 , 1000 );
+		final PartInstance inner = circle( 50 , 1000 );
+		final PartInstance far = circle( 50 , 1000 );
+		far.setPosition( 500 , 0 );
+		assertTrue( outer.getOutline().overlaps( inner.getOutline() ) );
+		assertTrue( inner.getOutline().overlaps( outer.getOutline() ) );
+		assertFalse( outer.getOutline().overlaps( far.getOutline() ) );
+
+		// touching counts as overlapping
+		far.setPosition( 150 , 0 );
+		assertTrue( outer.getOutline().overlaps( far.getOutline() ) );
+	}
+
+	static PartInstance randomInstance(Random rnd) {
+		return randomInstance( rnd , new Part() );
+	}
+
+	static PartInstance randomInstance(Random rnd,Part part)
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = part;
+		if ( part.outline.getModificationCount() == 0 ) {
+			new Polygon( rnd , 1 + rnd.nextInt( 2 ) , rnd.nextBoolean() ? 10 : 200 , 40 ).addTo( part.outline );
+		}
+		instance.setPosition( rnd.nextFloat() * 120 - 60 , rnd.nextFloat() * 120 - 60 );
+		instance.setRotation( rnd.nextBoolean() ? 90 * rnd.nextInt( 4 ) : rnd.nextFloat() * 360 );
+		return instance;
+	}
+
+	// regular polygon around the origin
+	static PartInstance circle(float radius,int segments)
+	{
+		final PartInstance instance = new PartInstance();
+		instance.part = new Part();
+		final Polygon polygon = new Polygon( new Random( 0 ) , 0 , 0 , 0 );
+		for ( int i = 0 ; i < segments ; i++ )
+		{
+			final double angle = 2 * Math.PI * i / segments;
+			polygon.addPoint( (float) ( radius * Math.cos( angle ) ) , (float) ( radius * Math.sin( angle ) ) );
+		}
+		for ( int i = 0 ; i < segments ; i++ ) {
+			polygon.addLine( i , ( i + 1 ) % segments );
+		}
+		polygon.addTo( instance.part.outline );
+		return instance;
+	}
+
+	/**
+	 * Tests all pairs of lines against each other.
+	 */
+	static boolean overlapsBruteForce(TransformedOutline a,TransformedOutline b)
+	{
+		for ( int i = 0 ; i < a.getLineCount() ; i++ )
+		{
+			for ( int j = 0 ; j < b.getLineCount() ; j++ )
+			{
+				if ( MathUtils.intersect( a.startX( i ) , a.startY( i ) , a.endX( i ) , a.endY( i ) ,
+						b.startX( j ) , b.startY( j ) , b.endX( j ) , b.endY( j ) ) )
+				{
+					return true;
+				}
+			}
+		}
+		return b.contains( a.startX( 0 ) , a.startY( 0 ) ) || a.contains( b.startX( 0 ) , b.startY( 0 ) );
+	}
+
+	private static boolean isWithinDistanceBruteForce(TransformedOutline a,TransformedOutline b,float distance)
+	{
+		final float maxDist2 = distance * distance;
+		for ( int i = 0 ; i < a.getLineCount() ; i++ )
+		{
+			final float ax0 = a.startX( i );
+			final float ay0 = a.startY( i );
+			final float ax1 = a.endX( i );
+			final float ay1 = a.endY( i );
+			for ( int j = 0 ; j < b.getLineCount() ; j++ )
+			{
+				final float bx0 = b.startX( j );
+				final float by0 = b.startY( j );
+				final float bx1 = b.endX( j );
+				final float by1 = b.endY( j );
+				if ( MathUtils.intersect( ax0 , ay0 , ax1 , ay1 , bx0 , by0 , bx1 , by1 ) ||
+					 MathUtils.distanceSquared( ax0 , ay0 , bx0 , by0 , bx1 , by1 ) < maxDist2 ||
+					 MathUtils.distanceSquared( ax1 , ay1 , bx0 , by0 , bx1 , by1 ) < maxDist2 ||
+					 MathUtils.distanceSquared( bx0 , by0 , ax0 , ay0 , ax1 , ay1 ) < maxDist2 ||
+					 MathUtils.distanceSquared( bx1 , by1 , ax0 , ay0 , ax1 , ay1 ) < maxDist2 )
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void assertMatchesCopy(PartInstance instance,String message)
+	{
+		final Outline copy = instance.part.outline.copy();
+		copy.transform( instance.getTransform() );
+		final TransformedOutline view = instance.getOutline();
+		final LineCollection lines = copy.lines();
+
+		assertEquals( message , lines.getLineCount() , view.getLineCount() );
+		float minX = Float.POSITIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for ( int i = 0 ; i < lines.getLineCount() ; i++ )
+		{
+			assertEquals( message , lines.startX( i ) , view.startX( i ) , EPSILON );
+			assertEquals( message , lines.startY( i ) , view.startY( i ) , EPSILON );
+			assertEquals( message , lines.endX( i ) , view.endX( i ) , EPSILON );
+			assertEquals( message , lines.endY( i ) , view.endY( i ) , EPSILON );
+			minX = Math.min( minX , Math.min( lines.startX( i ) , lines.endX( i ) ) );
+			maxY = Math.max( maxY , Math.max( lines.startY( i ) , lines.endY( i ) ) );
+		}
+		assertEquals( message , minX , view.getMinX() , EPSILON );
+		assertEquals( message , maxY , view.getMaxY() , EPSILON );
+	}
+}
@@ -0,0 +1,116 @@
+package de.codesourcery.pcb.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.model.Line;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.model.Port;
+
+public class HitTesterTest
+{
+	private static final int ALL = HitTester.Query.POINTS | HitTester.Query.LINES | HitTester.Query.PORTS | HitTester.Query.INSIDE;
+
+	@Test
+	public void testFindsPointsBeforeLinesBeforePorts()
+	{
+		final Part part = square();
+		final HitTester.Query query = new HitTester.Query();
+		final HitTester.Hit hit = new HitTester.Hit();
+
+		HitTester.test( part , query.set( 0.5f , 0.5f , 1 , ALL , -1 , 5 , 5 ) , hit );
+		assertEquals( HitTester.Hit.POINT , hit.type );
+		assertEquals( part.outline.findNearestPoint( 0 , 0 , 1 , -1 ) , hit.index );
+		assertTrue( hit.inside );
+
+		// same location, but the point is ignored
+		HitTester.test( part , query.set( 0.5f , 0.5f , 1 , ALL , hit.index , 20 , 20 ) , hit );
+		assertEquals( HitTester.Hit.LINE , hit.type );
+		assertFalse( hit.inside );
+
+		HitTester.test( part , query.set( 5 , 4.5f , 1 , ALL , -1 , 5 , 5 ) , hit );
+		assertEquals( HitTester.Hit.PORT , hit.type );
+		assertEquals( 0 , hit.index );
+
+		HitTester.test( part , query.set( 5 , 4.5f , 1 , HitTester.Query.POINTS , -1 , 5 , 5 ) , hit );
+		assertEquals( HitTester.Hit.NONE , hit.type );
+		assertEquals( -1 , hit.index );
+	}
+
+	@Test
+	public void testBackgroundQueries() throws Exception
+	{
+		final Part part = square();
+		final HitTester tester = new HitTester( part );
+		final HitTester.Query query = new HitTester.Query();
+		final List<String> results = new ArrayList<>();
+		try
+		{
+			SwingUtilities.invokeAndWait( () -> tester.submit( query.set( 10 , 10 , 1 , ALL , -1 , 5 , 5 ) , hit -> results.add( hit.type+" "+hit.index ) ) );
+			assertEquals( HitTester.Hit.POINT+" "+part.outline.findNearestPoint( 10 , 10 , 1 , -1 ) , awaitResult( results ) );
+
+			// changes made after submitting make the result stale
+			SwingUtilities.invokeAndWait( () ->
+			{
+				tester.submit( query.set( 5 , 4.5f , 1 , ALL , -1 , 5 , 5 ) , hit -> results.add( "stale" ) );
+				part.outline.translatePoint( 0 , 1 , 0 );
+			});
+			SwingUtilities.invokeAndWait( () -> tester.submit( query.set( 5 , 4.5f , 1 , ALL , -1 , 5 , 5 ) , hit -> results.add( hit.type+" "+hit.index ) ) );
+			assertEquals( HitTester.Hit.PORT+" 0" , awaitResult( results ) );
+
+			// a disposed tester starts a new thread for the next query
+			SwingUtilities.invokeAndWait( () ->
+			{
+				tester.submit( query , hit -> results.add( "cancelled" ) );
+				tester.dispose();
+				tester.submit( query.set( 5 , 0 , 1 , HitTester.Query.LINES , -1 , 0 , 0 ) , hit -> results.add( hit.type+" "+hit.index ) );
+			});
+			assertEquals( HitTester.Hit.LINE+" "+part.outline.findNearestLine( 5 , 0 , 1 ) , awaitResult( results ) );
+		}
+		finally {
+			tester.dispose();
+		}
+	}
+
+	private static String awaitResult(List<String> results) throws Exception
+	{
+		final long deadline = System.currentTimeMillis() + 10000;
+		final String[] result = new String[1];
+		while ( result[0] == null && System.currentTimeMillis() < deadline )
+		{
+			SwingUtilities.invokeAndWait( () ->
+			{
+				if ( ! results.isEmpty() ) {
+					result[0] = results.remove( 0 );
+				}
+			});
+			if ( result[0] == null ) {
+				Thread.sleep( 10 );
+			}
+		}
+		return result[0];
+	}
+
+	private static Part square()
+	{
+		final Part part = new Part();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 10 , 0 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 0 ) , new Vector2( 10 , 10 ) ) );
+		part.outline.addLine( new Line( new Vector2( 10 , 10 ) , new Vector2( 0 , 10 ) ) );
+		part.outline.addLine( new Line( new Vector2( 0 , 10 ) , new Vector2( 0 , 0 ) ) );
+		final Port port = new Port();
+		port.center.set( 5 , 5 );
+		part.addPort( port );
+		return part;
+	}
+}
@@ -0,0 +1,103 @@
+package de.codesourcery.pcb.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.math.Vector2;
+
+import de.codesourcery.pcb.model.Line;
+import de.codesourcery.pcb.model.Part;
+import de.codesourcery.pcb.utils.IntList;
+
+public class LevelOfDetailTest
+{
+	private static final float SCALE = 1/16f;
+
+	@Test
+	public void testPartItselfIsRenderedAtLargeScales() {
+		assertNull( new LevelOfDetail( new Part() ).getLevel( 1 ) );
+	}
+
+	@Test
+	public void testUpdateMatchesRebuild()
+	{
+		for ( int seed = 0 ; seed < 10 ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final Part part = new Part();
+			for ( int i = 0 ; i < 2000 ; i++ )
+			{
+				final Vector2 start = new Vector2( rnd.nextInt( 1000 ) , rnd.nextInt( 1000 ) );
+				final Vector2 end = start.cpy().add( rnd.nextInt( 81 ) - 40 , rnd.nextInt( 81 ) - 40 );
+				if ( ! start.equals( end ) ) {
+					part.outline.addLine( new Line( start , end ) );
+				}
+			}
+			final LevelOfDetail lod = new LevelOfDetail( part );
+			final LevelOfDetail.Level level = lod.getLevel( SCALE );
+
+			for ( int step = 0 ; step < 50 ; step++ )
+			{
+				// drag a point, reporting the area around its old and new position
+				final int pointIdx = part.outline.startIndex( rnd.nextInt( part.outline.getLineCount() ) );
+				final int modCount = part.getModificationCount();
+				final float x = part.outline.x( pointIdx );
+				final float y = part.outline.y( pointIdx );
+				final float dx = rnd.nextInt( 41 ) - 20;
+				final float dy = rnd.nextInt( 41 ) - 20;
+				part.outline.translatePoint( pointIdx , dx , dy );
+				lod.update( modCount , Math.min( x , x + dx ) - 50 , Math.min( y , y + dy ) - 50 , Math.max( x , x + dx ) + 50 , Math.max( y , y + dy ) + 50 );
+
+				assertSame( level , lod.getLevel( SCALE ) );
+				assertEquals( "seed "+seed+", step "+step , lines( new LevelOfDetail( part ).getLevel( SCALE ) ) , lines( level ) );
+			}
+		}
+	}
+
+	@Test
+	public void testOtherChangesDiscardLevels()
+	{
+		final Part part = new Part();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 100 , 0 ) ) );
+		final LevelOfDetail lod = new LevelOfDetail( part );
+		final LevelOfDetail.Level level = lod.getLevel( SCALE );
+
+		// adding a line changes line indices
+		final int modCount = part.getModificationCount();
+		part.outline.addLine( new Line( new Vector2( 0 , 0 ) , new Vector2( 0 , 100 ) ) );
+		lod.update( modCount , 0 , 0 , 100 , 100 );
+		final LevelOfDetail.Level rebuilt = lod.getLevel( SCALE );
+		assertTrue( level != rebuilt );
+		assertEquals( 2 , lines( rebuilt ).size() );
+
+		// changes that have not been reported
+		part.outline.translatePoint( 0 , 50 , 50 );
+		assertTrue( rebuilt != lod.getLevel( SCALE ) );
+	}
+
+	private static List<String> lines(LevelOfDetail.Level level)
+	{
+		final IntList indices = new IntList();
+		level.findLines( -1e6f , -1e6f , 1e6f , 1e6f , indices );
+		final List<String> result = new ArrayList<>();
+		for ( int i = 0 ; i < indices.size() ; i++ )
+		{
+			final int idx = indices.get( i );
+			final String start = level.startX( idx )+","+level.startY( idx );
+			final String end = level.endX( idx )+","+level.endY( idx );
+			// merged lines keep the direction of whichever line came first
+			result.add( start.compareTo( end ) < 0 ? start+" -> "+end : end+" -> "+start );
+		}
+		Collections.sort( result );
+		return result;
+	}
+}
@@ -0,0 +1,167 @@
+package de.codesourcery.pcb.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SpatialGridTest
+{
+	private static final int SEEDS = 100;
+	private static final int ITEMS_PER_SEED = 300;
+	private static final int QUERIES_PER_SEED = 200;
+
+	// queries must report everything at least this far inside of the query rectangle
+	private static final float EPSILON = 0.001f;
+
+	@Test
+	public void testQueryReportsAllItemsInRectangle()
+	{
+		for ( int seed = 0 ; seed < SEEDS ; seed++ )
+		{
+			final Random rnd = new Random( seed );
+			final SpatialGrid grid = new SpatialGrid( 1 + rnd.nextInt( 32 ) );
+			final float[][] items = new float[ ITEMS_PER_SEED ][];
+			for ( int i = 0 ; i < ITEMS_PER_SEED ; i++ )
+			{
+				items[i] = randomItem( rnd );
+				add( grid , i , items[i] );
+			}
+			// remove every third item again
+			for ( int i = 0 ; i < ITEMS_PER_SEED ; i += 3 )
+			{
+				remove( grid , i , items[i] );
+				items[i] = null;
+			}
+
+			final IntList result = new IntList();
+			for ( int q = 0 ; q < QUERIES_PER_SEED ; q++ )
+			{
+				final float minX = rnd.nextInt( 300 ) - 150 + rnd.nextFloat();
+				final float minY = rnd.nextInt( 300 ) - 150 + rnd.nextFloat();
+				final float maxX = minX + rnd.nextInt( 40 ) + rnd.nextFloat();
+				final float maxY = minY + rnd.nextInt( 40 ) + rnd.nextFloat();
+
+				result.clear();
+				grid.query( minX , minY , maxX , maxY , result );
+				final Set<Integer> reported = new HashSet<>();
+				for ( int i = 0 ; i < result.size() ; i++ ) {
+					reported.add( result.get( i ) );
+				}
+
+				for ( int i = 0 ; i < ITEMS_PER_SEED ; i++ )
+				{
+					final String message = "seed "+seed+", query "+q+", item "+i;
+					if ( items[i] == null ) {
+						assertFalse( message , reported.contains( i ) );
+					}
+					else if ( intersects( items[i] , minX + EPSILON , minY + EPSILON , maxX - EPSILON , maxY - EPSILON ) ) {
+						assertTrue( message , reported.contains( i ) );
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testClear()
+	{
+		final SpatialGrid grid = new SpatialGrid( 10 );
+		grid.add( 1 , 5 , 5 );
+		grid.add( 2 , 0 , 0 , 100 , 100 );
+		grid.clear();
+
+		final IntList result = new IntList();
+		grid.query( -1000 , -1000 , 1000 , 1000 , result );
+		assertTrue( result.isEmpty() );
+	}
+
+	@Test
+	public void testHugeCoordinates()
+	{
+		final SpatialGrid grid = new SpatialGrid( 1 );
+		grid.add( 1 , 1e20f , -1e20f );
+		grid.add( 2 , -1e20f , 1e20f );
+
+		final IntList result = new IntList();
+		grid.query( 1e20f , -1e20f , 1e20f , -1e20f , result );
+		assertEquals( 1 , result.size() );
+		assertEquals( 1 , result.get( 0 ) );
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidCellSize() {
+		new SpatialGrid( 0 );
+	}
+
+	// either a point (x,y) or a line segment (x0,y0,x1,y1)
+	private static float[] randomItem(Random rnd)
+	{
+		final float x0 = rnd.nextInt( 300 ) - 150;
+		final float y0 = rnd.nextInt( 300 ) - 150;
+		if ( rnd.nextInt( 3 ) == 0 ) {
+			return new float[] { x0 , y0 };
+		}
+		// mostly short segments, some of them axis-parallel
+		final int maxLength = rnd.nextInt( 10 ) == 0 ? 200 : 30;
+		final float x1 = rnd.nextInt( 4 ) == 0 ? x0 : x0 + rnd.nextInt( maxLength ) - maxLength / 2;
+		final float y1 = rnd.nextInt( 4 ) == 0 ? y0 : y0 + rnd.nextInt( maxLength ) - maxLength / 2;
+		return new float[] { x0 , y0 , x1 , y1 };
+	}
+
+	private static void add(SpatialGrid grid,int id,float[] item)
+	{
+		if ( item.length == 2 ) {
+			grid.add( id , item[0] , item[1] );
+		} else {
+			grid.add( id , item[0] , item[1] , item[2] , item[3] );
+		}
+	}
+
+	private static void remove(SpatialGrid grid,int id,float[] item)
+	{
+		if ( item.length == 2 ) {
+			grid.remove( id , item[0] , item[1] );
+		} else {
+			grid.remove( id , item[0] , item[1] , item[2] , item[3] );
+		}
+	}
+
+	private static boolean intersects(float[] item,float minX,float minY,float maxX,float maxY)
+	{
+		if ( item.length == 2 ) {
+			return item[0] >= minX && item[0] <= maxX && item[1] >= minY && item[1] <= maxY;
+		}
+		// clip the segment against the rectangle (Liang-Barsky)
+		final double dx = item[2] - item[0];
+		final double dy = item[3] - item[1];
+		final double[] p = { -dx , dx , -dy , dy };
+		final double[] q = { item[0] - minX , maxX - item[0] , item[1] - minY , maxY - item[1] };
+		double t0 = 0;
+		double t1 = 1;
+		for ( int i = 0 ; i < 4 ; i++ )
+		{
+			if ( p[i] == 0 )
+			{
+				if ( q[i] < 0 ) {
+					return false;
+				}
+			}
+			else
+			{
+				final double t = q[i] / p[i];
+				if ( p[i] < 0 ) {
+					t0 = Math.max( t0 , t );
+				} else {
+					t1 = Math.min( t1 , t );
+				}
+			}
+		}
+		return t0 <= t1;
+	}
+}